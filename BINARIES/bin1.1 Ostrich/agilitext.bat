@@ -0,0 +1,39 @@
+@echo off
+rem agilitext: Launches Agilitext Text Editor, using a class data sharing archive when one has
+rem been trained. Needs Java 13 or later to train an archive.
+rem
+rem   agilitext [file...]            start the editor, with the archive if there is one
+rem   agilitext --train              start the editor, open and close its windows, write the archive
+rem   agilitext --no-cds [file...]   start the editor without the archive
+
+setlocal
+set "JAR=%~dp0AgilitextTextEditor.jar"
+set "JAVA=javaw"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\javaw"
+if defined AGILITEXT_CDS (set "JSA=%AGILITEXT_CDS%") else (set "JSA=%USERPROFILE%\.agilitext\agilitext.jsa")
+
+if "%~1"=="--train" (
+	if not exist "%USERPROFILE%\.agilitext" mkdir "%USERPROFILE%\.agilitext"
+	if exist "%JSA%" del "%JSA%"
+	"%JAVA:javaw=java%" -XX:ArchiveClassesAtExit="%JSA%" -jar "%JAR%" --train
+	echo Class data sharing archive written to %JSA%
+	goto :eof
+)
+if "%~1"=="--no-cds" goto plain
+if exist "%JSA%" (
+	start "" "%JAVA%" -XX:SharedArchiveFile="%JSA%" -Xshare:auto -jar "%JAR%" %*
+	goto :eof
+)
+start "" "%JAVA%" -jar "%JAR%" %*
+goto :eof
+
+rem collect arguments after --no-cds, as %* does not follow shift
+:plain
+set ARGS=
+:next
+shift
+if "%~1"=="" goto run
+set ARGS=%ARGS% "%~1"
+goto next
+:run
+start "" "%JAVA%" -jar "%JAR%" %ARGS%
@@ -0,0 +1,490 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * AgilitextBatch: Command line mode counting, replacing and computing statistics over files
+ * without opening any windows
+ *
+ * Files are read as a stream through a fixed size buffer, so memory does not grow with file
+ * size, and several files are processed at once, one per core by default. Matches are found and
+ * counted as find next and the find/replace window count them, and words and lines are counted
+ * as the document statistics and line index count them. Files that are not valid text in the
+ * charset, eg. binary files, are reported as errors and never rewritten.
+ *
+ * Usage: AgilitextClient --batch COMMAND [options] ARGUMENTS PATH...
+ *
+ *   count QUERY PATH...                 count occurrences of QUERY
+ *   replace QUERY REPLACEMENT PATH...   replace every occurrence of QUERY, rewriting changed files
+ *   stats PATH...                       count lines, words, chars and chars other than spaces
+ *
+ *   --ignore-case     match regardless of case
+ *   --dry-run         count what replace would replace without writing files
+ *   --charset NAME    file encoding, the platform default if not given
+ *   --threads N       number of files processed at once
+ *
+ * Directories are searched for files recursively. Each file prints one tab separated line, in
+ * the order files were given, followed by a line of totals:
+ *
+ *   count    PATH  MATCHES
+ *   replace  PATH  REPLACEMENTS
+ *   stats    PATH  LINES  WORDS  CHARS  NON_SPACE_CHARS
+ *   error    PATH  MESSAGE
+ *   total    FILES ...
+ *
+ * The exit status is 0 if every file was processed, 1 if any failed and 2 for bad arguments.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextBatch
+{
+	//flag that starts batch mode
+	public static final String FLAG="--batch";
+
+	//chars read at a time from each file
+	private static final int BUFFER_CHARS=65536;
+
+	//private objects
+
+	//command, its query and replacement
+	private String command;
+	private AgilitextFinder finder;
+	private String replacement;
+
+	//options
+	private Charset charset=Charset.defaultCharset();
+	private boolean dryRun;
+	private int threads=Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * run: Runs batch mode with the arguments following the batch flag
+	 * @param args: Command line arguments, starting with the batch flag
+	 * @return: Exit status
+	 */
+	public static int run(String[] args)
+	{
+		AgilitextBatch batch=new AgilitextBatch();
+		List<String> paths=new ArrayList<String>();
+		try
+		{
+			paths=batch.parse(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			//if arguments are invalid, print usage
+			System.err.println(e.getMessage());
+			System.err.println("Usage: "+FLAG+" count|replace|stats [--ignore-case] [--dry-run] [--charset NAME] [--threads N] [QUERY [REPLACEMENT]] PATH...");
+			return 2;
+		}
+		return batch.process(paths);
+	}
+
+	/**
+	 * parse: Reads the command, options and arguments
+	 * @param args: Command line arguments, starting with the batch flag
+	 * @return: Paths to process
+	 */
+	private List<String> parse(String[] args)
+	{
+		boolean ignoreCase=false;
+		List<String> operands=new ArrayList<String>();
+		for(int i=1;i<args.length;i++)
+		{
+			String arg=args[i];
+			if(arg.equals("--ignore-case"))
+			{
+				ignoreCase=true;
+			}
+			else if(arg.equals("--dry-run"))
+			{
+				dryRun=true;
+			}
+			else if(arg.equals("--charset")&&i+1<args.length)
+			{
+				try
+				{
+					charset=Charset.forName(args[++i]);
+				}
+				catch(RuntimeException e)
+				{
+					throw new IllegalArgumentException("Unknown charset: "+args[i]);
+				}
+			}
+			else if(arg.equals("--threads")&&i+1<args.length)
+			{
+				try
+				{
+					threads=Math.max(1, Integer.parseInt(args[++i]));
+				}
+				catch(NumberFormatException e)
+				{
+					throw new IllegalArgumentException("Invalid thread count: "+args[i]);
+				}
+			}
+			//other flags, such as timing flags, do not concern batch mode
+			else if(!arg.startsWith("--"))
+			{
+				operands.add(arg);
+			}
+		}
+
+		//first operand is the command, followed by its query and replacement
+		if(operands.isEmpty())
+		{
+			throw new IllegalArgumentException("No command given.");
+		}
+		command=operands.remove(0);
+		int queries=command.equals("count")? 1 : command.equals("replace")? 2 : command.equals("stats")? 0 : -1;
+		if(queries<0)
+		{
+			throw new IllegalArgumentException("Unknown command: "+command);
+		}
+		if(operands.size()<=queries)
+		{
+			throw new IllegalArgumentException("Missing "+(operands.size()<queries? "query" : "paths")+" for "+command+".");
+		}
+		if(queries>0)
+		{
+			finder=new AgilitextFinder(operands.remove(0), ignoreCase);
+			if(finder.length()==0)
+			{
+				throw new IllegalArgumentException("Query is empty.");
+			}
+		}
+		if(queries>1)
+		{
+			replacement=operands.remove(0);
+		}
+		return operands;
+	}
+
+	/**
+	 * process: Processes every file in parallel, printing results in order
+	 * @param paths: Files and directories to process
+	 * @return: Exit status
+	 */
+	private int process(List<String> paths)
+	{
+		//expand directories into the files inside them
+		List<File> files=new ArrayList<File>();
+		boolean failed=false;
+		for(String path : paths)
+		{
+			File file=new File(path);
+			if(file.isDirectory())
+			{
+				try(Stream<Path> walk=Files.walk(file.toPath()))
+				{
+					List<Path> found=new ArrayList<Path>();
+					Iterator<Path> it=walk.iterator();
+					while(it.hasNext())
+					{
+						Path p=it.next();
+						if(Files.isRegularFile(p))
+						{
+							found.add(p);
+						}
+					}
+					Collections.sort(found);
+					for(Path p : found)
+					{
+						files.add(p.toFile());
+					}
+				}
+				catch(IOException e)
+				{
+					failed=true;
+					print("error", file, e.getMessage());
+				}
+			}
+			else
+			{
+				files.add(file);
+			}
+		}
+
+		//queue every file, results are printed in the order files were listed
+		ExecutorService pool=Executors.newFixedThreadPool(Math.min(threads, Math.max(files.size(), 1)));
+		List<Future<long[]>> results=new ArrayList<Future<long[]>>(files.size());
+		for(final File file : files)
+		{
+			results.add(pool.submit(new Callable<long[]>()
+			{
+				public long[] call() throws IOException
+				{
+					try
+					{
+						return command.equals("stats")? stats(file) : command.equals("count")? count(file, null) : replace(file);
+					}
+					catch(CharacterCodingException e)
+					{
+						throw new IOException("Not valid "+charset.name()+" text", e);
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+
+		long[] totals=new long[command.equals("stats")? 4 : 1];
+		int processed=0;
+		for(int i=0;i<files.size();i++)
+		{
+			try
+			{
+				long[] result=results.get(i).get();
+				for(int j=0;j<result.length;j++)
+				{
+					totals[j]+=result[j];
+				}
+				processed++;
+				print(command, files.get(i), join(result));
+			}
+			catch(ExecutionException e)
+			{
+				failed=true;
+				print("error", files.get(i), e.getCause().toString());
+			}
+			catch(InterruptedException e)
+			{
+				//batch was interrupted, stop printing
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+		}
+		System.out.println("total\t"+processed+"\t"+join(totals));
+		System.out.flush();
+		return failed? 1 : 0;
+	}
+
+	/**
+	 * count: Counts occurrences in a file, copying it with each one replaced if a writer is passed
+	 * @param file: File to read
+	 * @param out: Writer receiving the replaced text, or null to only count
+	 * @return: Number of occurrences
+	 */
+	private long[] count(File file, Writer out) throws IOException
+	{
+		int m=finder.length();
+		//window holds a buffer of text and the chars before it that could start a match
+		char[] window=new char[BUFFER_CHARS+m];
+		CharBuffer text=CharBuffer.wrap(window);
+		long count=0;
+		try(Reader in=open(file))
+		{
+			int len=0;
+			int from=0;
+			while(true)
+			{
+				int n=in.read(window, len, window.length-len);
+				if(n>0)
+				{
+					len+=n;
+				}
+
+				//take matches one after another, as find next would
+				int written=0;
+				int index;
+				while((index=finder.indexOf(text, from, len))!=-1)
+				{
+					count++;
+					if(out!=null)
+					{
+						out.write(window, written, index-written);
+						out.write(replacement);
+					}
+					from=index+m;
+					written=from;
+				}
+
+				//if file is done, write what is left and stop
+				if(n<0)
+				{
+					if(out!=null)
+					{
+						out.write(window, written, len-written);
+					}
+					break;
+				}
+
+				//keep chars that may begin a match ending in the next buffer, but none already matched
+				int keep=Math.max(from, len-(m-1));
+				if(out!=null)
+				{
+					out.write(window, written, keep-written);
+				}
+				System.arraycopy(window, keep, window, 0, len-keep);
+				len-=keep;
+				from=0;
+			}
+		}
+		return new long[]{count};
+	}
+
+	/**
+	 * replace: Replaces every occurrence in a file, writing a copy and moving it over the file if anything changed
+	 * @param file: File to rewrite
+	 * @return: Number of replacements
+	 */
+	private long[] replace(final File file) throws IOException
+	{
+		//if only counting, there is nothing to replace, or file is not text, leave file alone
+		long[] count=count(file, null);
+		if(dryRun||count[0]==0)
+		{
+			return count;
+		}
+
+		//write replaced copy beside the file, or the file it links to, and move it over that file
+		//as a save does, keeping its permissions
+		final long[] replaced=new long[1];
+		AgilitextFileSaver.replace(AgilitextFileSaver.resolve(file), new AgilitextFileSaver.Contents()
+		{
+			public long write(FileChannel channel) throws IOException
+			{
+				//if replacement cannot be encoded, fail rather than write substitutes, the file having decoded cleanly
+				Writer out=new OutputStreamWriter(Channels.newOutputStream(channel), charset.newEncoder());
+				try
+				{
+					replaced[0]=count(file, out)[0];
+					out.flush();
+				}
+				catch(CharacterCodingException e)
+				{
+					throw new IOException("Replacement cannot be written as "+charset.name()+" text", e);
+				}
+				return channel.position();
+			}
+		});
+		count[0]=replaced[0];
+		return count;
+	}
+
+	/**
+	 * stats: Counts lines, words, chars and chars other than spaces, tabs and newlines in a file
+	 * @param file: File to read
+	 * @return: Line, word, char and non-space counts
+	 */
+	private long[] stats(File file) throws IOException
+	{
+		char[] buffer=new char[BUFFER_CHARS];
+		long lines=1;
+		long words=0;
+		long chars=0;
+		long nonSpace=0;
+		//a word starts at a char other than a delimiter following a delimiter, or at the start of the file
+		boolean delimited=true;
+		try(Reader in=open(file))
+		{
+			int n;
+			while((n=in.read(buffer))!=-1)
+			{
+				chars+=n;
+				for(int i=0;i<n;i++)
+				{
+					char c=buffer[i];
+					boolean delimiter=AgilitextStats.isDelimiter(c);
+					if(!delimiter)
+					{
+						nonSpace++;
+						if(delimited)
+						{
+							words++;
+						}
+					}
+					//a line starts after each LF, as in the line index
+					if(c=='\n')
+					{
+						lines++;
+					}
+					delimited=delimiter;
+				}
+			}
+		}
+		return new long[]{lines, words, chars, nonSpace};
+	}
+
+	/**
+	 * open: Opens a file for reading text, failing on bytes that are not valid in the charset
+	 * rather than replacing them
+	 * @param file: File to read
+	 * @return: Reader of file
+	 * @throws IOException: If the file cannot be opened
+	 */
+	private Reader open(File file) throws IOException
+	{
+		return new InputStreamReader(new FileInputStream(file), charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT));
+	}
+
+	/**
+	 * print: Prints a result line
+	 * @param kind: Kind of result
+	 * @param file: File the result is for
+	 * @param values: Tab separated values
+	 */
+	private static void print(String kind, File file, String values)
+	{
+		//keep one result per line, whatever the path or message holds
+		System.out.println(kind+"\t"+file.getPath().replace('\t', ' ').replace('\n', ' ')+"\t"+values.replace('\n', ' '));
+	}
+
+	/**
+	 * join: Used to join counts with tabs
+	 * @param values: Counts
+	 * @return: Tab separated counts
+	 */
+	private static String join(long[] values)
+	{
+		StringBuilder s=new StringBuilder();
+		for(int i=0;i<values.length;i++)
+		{
+			s.append(i>0? "\t" : "").append(values[i]);
+		}
+		return s.toString();
+	}
+}
@@ -19,6 +19,13 @@
 import javax.swing.JFrame;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * AgilitextClient: Class used to construct the frame to hold the main GUI
@@ -27,27 +34,65 @@ import java.awt.Dimension;
  * @version 1.1
  * 
  * Date Created: 06/06/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextClient extends JFrame
 {
 	//private objects
 	private AgilitextGui gui;
+	private boolean primary;
+	private boolean recovering;
 	private Container c;
 	private Dimension workingDim;
 	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
+	//true if run only to load the classes a session uses, for a class data sharing archive
+	private static boolean training;
+	
+	//number of open windows, and the offset of each window from the one opened before it
+	private static int windows;
+	private static final int CASCADE=24;
+	
 	/**
 	 * AgilitextClient: Constructor
 	 */
 	public AgilitextClient()
 	{
+		this(null);
+	}
+	
+	/**
+	 * AgilitextClient: Constructor, opening a file
+	 * @param file: The file to open, or null to restore the last session in the first window
+	 */
+	public AgilitextClient(File file)
+	{
+		this(file, null);
+	}
+	
+	/**
+	 * AgilitextClient: Constructor, opening a file or recovering a window of the last session
+	 * @param file: The file to open, or null
+	 * @param journal: The open window journal to recover, or null for a new journal of its own
+	 */
+	private AgilitextClient(File file, AgilitextJournal journal)
+	{
+		//first window restores and journals the session, later ones journal their own edits
+		primary=(windows++==0);
+		if(primary)
+		{
+			journal=new AgilitextJournal(Appsistant.getSettingsFile(AgilitextJournal.SESSION));
+		}
+		recovering=!primary&&journal!=null;
+		
 		//assign container
 	    c = getContentPane();
 	    //initialize GUI
-	    gui = new AgilitextGui();
+	    long start=AgilitextTimeline.begin();
+	    gui = new AgilitextGui(journal);
+	    AgilitextTimeline.end("GUI construction", start);
 	    //add GUI to container
 	    c.add(gui);
 	    //add window listener
@@ -65,8 +110,25 @@ public class AgilitextClient extends JFrame
         
         //add window dressing
 	    setTitle("Agilitext Text Editor");
-	    setDefaultCloseOperation(EXIT_ON_CLOSE);
+	    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 	    setLocationRelativeTo(null);
+	    setLocation(getX()+CASCADE*(windows-1), getY()+CASCADE*(windows-1));
+	    
+	    //exit once the last window is closed
+	    addWindowListener(new WindowAdapter()
+	    {
+	    	/**
+	    	 * windowClosed: Called to handle GUI window closed events
+	    	 * @param e: GUI window event
+	    	 */
+	    	public void windowClosed(WindowEvent e)
+	    	{
+	    		if(--windows==0)
+	    		{
+	    			System.exit(0);
+	    		}
+	    	}
+	    });
         
         try
         {
@@ -79,15 +141,161 @@ public class AgilitextClient extends JFrame
         }
         
         //set frame to visible
+	    start=AgilitextTimeline.begin();
 	    setVisible(true);
+	    AgilitextTimeline.end("frame shown", start);
+	    
+	    //if a file was passed, open it
+	    if(file!=null)
+	    {
+	    	gui.textArea.openFile(file);
+	    }
 	}
 	
 	/**
-	 * main: Main method used to instantiate a new instance of the client GUI
-	 * @param args: String of arguments passed on application launch
+	 * isPrimary: Used to determine if this is the first window, which owns the last session
+	 * @return: true if first window opened
+	 */
+	public boolean isPrimary()
+	{
+		return primary;
+	}
+	
+	/**
+	 * isRecovering: Used to determine if this window restores a window left with unsaved changes by the last session
+	 * @return: true if opened on a window journal left behind
+	 */
+	public boolean isRecovering()
+	{
+		return recovering;
+	}
+	
+	/**
+	 * recoverWindows: Opens a window for each window journal left by the last session, on the event thread
+	 */
+	protected static void recoverWindows()
+	{
+		for(File file : AgilitextJournal.listWindows(Appsistant.getSettingsDir()))
+		{
+			//journals held by open windows of this or another instance are skipped
+			AgilitextJournal journal=new AgilitextJournal(file);
+			if(!journal.open())
+			{
+				continue;
+			}
+			
+			//if journal has no records, there is nothing to restore
+			if(journal.isEmpty())
+			{
+				journal.discard();
+			}
+			else
+			{
+				new AgilitextClient(null, journal);
+			}
+		}
+	}
+	
+	/**
+	 * openFiles: Opens each file in a new window, or brings a window forward if there are none, on the event thread
+	 * @param files: Files to open
+	 */
+	protected static void openFiles(List<File> files)
+	{
+		for(File file : files)
+		{
+			new AgilitextClient(file);
+		}
+		
+		//if launch had no files, show an open window instead
+		if(files.isEmpty())
+		{
+			for(Frame frame : Frame.getFrames())
+			{
+				if(frame instanceof AgilitextClient&&frame.isDisplayable())
+				{
+					frame.setState(Frame.NORMAL);
+					frame.toFront();
+					frame.requestFocus();
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * isTraining: Used to determine if this is a training run, which opens the application's
+	 * windows and closes itself so the classes they load can be archived
+	 * @return: true if run with --train
+	 */
+	public static boolean isTraining()
+	{
+		return training;
+	}
+	
+	/**
+	 * isUnattended: Used to determine if the application closes itself once started, with nobody to answer dialogs
+	 * @return: true if training or run with --exit-after-startup
+	 */
+	public static boolean isUnattended()
+	{
+		return training||AgilitextTimeline.isExitAfterStartup();
+	}
+	
+	/**
+	 * main: Main method used to instantiate a new instance of the client GUI, or to hand files to one already running
+	 * @param args: Files to open, and flags such as --new-instance to start a separate instance,
+	 * or --batch followed by a batch command
 	 */
 	public static void main(String[] args)
 	{
+		//if batch mode is asked for, run it without any windows and exit with its status
+		if(args.length>0&&args[0].equals(AgilitextBatch.FLAG))
+		{
+			System.setProperty("java.awt.headless", "true");
+			System.exit(AgilitextBatch.run(args));
+		}
+		
+		//apply startup flags before anything else is timed
+		AgilitextTimeline.parseFlags(args);
+		AgilitextWatchdog.parseFlags(args);
+		training=Arrays.asList(args).contains("--train");
+		AgilitextTimeline.mark("main entered");
+		
+		//arguments other than flags are files to open
+		List<File> files=new ArrayList<File>();
+		for(String arg : args)
+		{
+			if(!arg.startsWith("--"))
+			{
+				files.add(new File(arg));
+			}
+		}
+		
+		//unless a separate instance is asked for, hand files to a running instance and exit
+		boolean single=!isUnattended()&&!Arrays.asList(args).contains("--new-instance");
+		if(single&&AgilitextInstance.handOff(files))
+		{
+			return;
+		}
+		
+		//if asked for, monitor the event thread from before the first window is built
+		AgilitextWatchdog.start();
+		
+		//discover font families in the background while the window is built
+		long start=AgilitextTimeline.begin();
+		Appsistant.getFontCatalog().start();
+		AgilitextTimeline.end("Appsistant init and font catalog start", start);
 	    new AgilitextClient();
+	    for(File file : files)
+	    {
+	    	new AgilitextClient(file);
+	    }
+	    
+	    //once windows are open, become the instance later launches hand files to
+	    if(single)
+	    {
+	    	AgilitextInstance.listen();
+	    }
 	}
 }
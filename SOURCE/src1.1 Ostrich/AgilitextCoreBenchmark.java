@@ -0,0 +1,256 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AgilitextCoreBenchmark: Times the editor core without a display, loading, saving, finding,
+ * replacing, counting and gathering statistics over generated files of several sizes
+ *
+ * Each file holds lines of words drawn at random from a small vocabulary, with a word found
+ * only at its very end, so that finding it reads the whole text. Every operation runs a number
+ * of warm-up iterations before the measured ones, and the median and 95th percentile of the
+ * measured ones are reported with the throughput at the median. Replacing edits the buffer,
+ * so each replace iteration loads the file again before it is timed.
+ *
+ * Larger files need a larger heap, replacing every occurrence in a 1024 MB file splits its
+ * pieces at each occurrence, so run with -Xmx8g or give smaller sizes.
+ *
+ * Usage: java AgilitextCoreBenchmark [iterations] [warm-up iterations] [sizes in MB...]
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextCoreBenchmark
+{
+	//default number of measured and warm-up iterations, and default file sizes in MB
+	private static final int DEFAULT_ITERATIONS=5;
+	private static final int DEFAULT_WARMUP=2;
+	private static final int[] DEFAULT_SIZES={1, 100, 1024};
+
+	//charset of generated files
+	private static final Charset CHARSET=StandardCharsets.UTF_8;
+
+	//words making up generated text, and words per line
+	private static final String[] VOCABULARY={"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do", "eiusmod", "tempor"};
+	private static final int LINE_WORDS=12;
+
+	//word found once at the end of the text, word counted and word replaced
+	private static final String NEEDLE="zygomorphic";
+	private static final String COUNTED="dolor";
+	private static final String REPLACED="ipsum";
+	private static final String REPLACEMENT="IPSUM!";
+
+	//sum of every result, printed so that no timed work can be skipped as unused
+	private static long sink;
+
+	/**
+	 * main: Runs the benchmark and prints its report
+	 * @param args: Optional number of iterations, number of warm-up iterations, then file sizes in MB
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int iterations=(args.length>0)? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		int warmup=(args.length>1)? Integer.parseInt(args[1]) : DEFAULT_WARMUP;
+		int[] sizes=DEFAULT_SIZES;
+		if(args.length>2)
+		{
+			sizes=new int[args.length-2];
+			for(int i=2;i<args.length;i++)
+			{
+				sizes[i-2]=Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println(String.format("%d iterations after %d warm-up iterations, %d threads, max heap %d MB", iterations, warmup,
+				Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory()>>20));
+		System.out.println(String.format("%8s %-12s %10s %10s %10s", "size MB", "operation", "p50 ms", "p95 ms", "MB/s"));
+		for(int size : sizes)
+		{
+			File source=File.createTempFile("agilitext-bench", ".txt");
+			File target=File.createTempFile("agilitext-bench", ".out");
+			try
+			{
+				generate(source, (long)size<<20);
+				run(source, target, size, iterations, warmup);
+			}
+			finally
+			{
+				source.delete();
+				target.delete();
+			}
+		}
+		System.out.println("(checksum "+sink+")");
+	}
+
+	/**
+	 * run: Times every operation over one file
+	 * @param source: Generated file
+	 * @param target: File saved to
+	 * @param size: Size of file in MB
+	 * @param iterations: Number of measured iterations
+	 * @param warmup: Number of iterations discarded before them
+	 */
+	private static void run(File source, File target, int size, int iterations, int warmup) throws IOException
+	{
+		//keep one loaded buffer for the operations that leave it unchanged
+		AgilitextTextBuffer buffer=AgilitextTextBuffer.load(source, CHARSET);
+		AgilitextFileSaver saver=new AgilitextFileSaver(CHARSET);
+		String[] operations={"load", "save", "find", "replace-all", "count", "stats"};
+		for(String operation : operations)
+		{
+			List<Long> times=new ArrayList<Long>();
+			try
+			{
+				for(int i=0;i<warmup+iterations;i++)
+				{
+					long time=measure(operation, source, target, buffer, saver);
+					//if iteration is a warm-up, discard it
+					if(i>=warmup)
+					{
+						times.add(time);
+					}
+				}
+			}
+			catch(OutOfMemoryError e)
+			{
+				//if heap is too small for this size, report it and go on with the next operation
+				System.out.println(String.format("%8d %-12s %10s", size, operation, "out of memory"));
+				continue;
+			}
+			double p50=percentile(times, 50);
+			System.out.println(String.format("%8d %-12s %10.1f %10.1f %10.1f", size, operation, p50, percentile(times, 95), size/(p50/1000)));
+		}
+	}
+
+	/**
+	 * measure: Runs an operation once
+	 * @param operation: Name of the operation
+	 * @param source: Generated file
+	 * @param target: File saved to
+	 * @param buffer: Buffer holding the generated file
+	 * @param saver: Reused saver
+	 * @return: Time the operation took in nanoseconds
+	 */
+	private static long measure(String operation, File source, File target, AgilitextTextBuffer buffer, AgilitextFileSaver saver) throws IOException
+	{
+		//replacing changes the buffer, so replace in a buffer of its own loaded before timing starts
+		AgilitextTextBuffer edited=operation.equals("replace-all")? AgilitextTextBuffer.load(source, CHARSET) : null;
+
+		long start=System.nanoTime();
+		if(operation.equals("load"))
+		{
+			sink+=AgilitextTextBuffer.load(source, CHARSET).length();
+		}
+		else if(operation.equals("save"))
+		{
+			sink+=saver.save(buffer.snapshot(), target);
+		}
+		else if(operation.equals("find"))
+		{
+			sink+=new AgilitextSearchEngine(NEEDLE, true).find(buffer, 0);
+		}
+		else if(operation.equals("replace-all"))
+		{
+			sink+=new AgilitextSearchEngine(REPLACED, true).replaceAll(edited, REPLACEMENT);
+		}
+		else if(operation.equals("count"))
+		{
+			sink+=new AgilitextSearchEngine(COUNTED, true).count(buffer.snapshot());
+		}
+		else
+		{
+			//count the whole text again, as loading and every edit do for their ranges
+			sink+=new AgilitextStats(buffer).getWordCount();
+		}
+		return System.nanoTime()-start;
+	}
+
+	/**
+	 * generate: Writes a file of random words ending with the word to find
+	 * @param file: File to write
+	 * @param size: Size of file in bytes
+	 */
+	private static void generate(File file, long size) throws IOException
+	{
+		//seed by size, so every run of a size reads the same text
+		Random random=new Random(size);
+		String end=NEEDLE+"\n";
+		long written=0;
+		Writer out=new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CHARSET), 1<<16);
+		try
+		{
+			//write lines while a whole line and the ending still fit
+			StringBuilder line=new StringBuilder();
+			while(true)
+			{
+				line.setLength(0);
+				for(int i=0;i<LINE_WORDS;i++)
+				{
+					line.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+					line.append(i<LINE_WORDS-1? ' ' : '\n');
+				}
+				if(written+line.length()+end.length()>size)
+				{
+					break;
+				}
+				out.append(line);
+				written+=line.length();
+			}
+
+			//pad with spaces so the file is exactly the size asked for
+			for(long i=written+end.length();i<size;i++)
+			{
+				out.write(' ');
+			}
+			out.write(end);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * percentile: Used to get a percentile of nanosecond values by nearest rank
+	 * @param values: Values
+	 * @param p: Percentile, from 1 to 100
+	 * @return: Percentile in milliseconds
+	 */
+	private static double percentile(List<Long> values, int p)
+	{
+		List<Long> sorted=new ArrayList<Long>(values);
+		Collections.sort(sorted);
+		int rank=(int)Math.ceil(p/100.0*sorted.size());
+		return sorted.get(Math.max(rank, 1)-1)/1e6;
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingWorker;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * AgilitextCounter: Counts occurrences of a query in a snapshot of a document off the event
+ * thread, reporting the progress of the search engine's parallel count as its own
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextCounter extends SwingWorker<Integer, Void>
+{
+	//private objects
+
+	//manager notified when count finishes
+	private AgilitextFindReplaceManager manager;
+
+	//searched text and query
+	private AgilitextTextBuffer.Snapshot snapshot;
+	private AgilitextSearchEngine engine;
+
+	/**
+	 * AgilitextCounter: Constructor
+	 * @param manager: The find/replace window notified with the result
+	 * @param snapshot: Snapshot of the text to search
+	 * @param engine: Search engine for the query to count
+	 */
+	public AgilitextCounter(AgilitextFindReplaceManager manager, AgilitextTextBuffer.Snapshot snapshot, AgilitextSearchEngine engine)
+	{
+		this.manager=manager;
+		this.snapshot=snapshot;
+		this.engine=engine;
+	}
+
+	/**
+	 * getEngine: Used to get the search engine being counted
+	 * @return: Search engine
+	 */
+	public AgilitextSearchEngine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * doInBackground: Counts the snapshot, passing progress and cancellation between worker and engine
+	 * @return: Number of occurrences
+	 */
+	protected Integer doInBackground()
+	{
+		//record count for flight recordings, if the recorder has started
+		AgilitextEvents.Count event=AgilitextEvents.isRecording()? new AgilitextEvents.Count() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
+		int matches=engine.count(snapshot, new AgilitextMonitor()
+		{
+			public boolean isCancelled()
+			{
+				return AgilitextCounter.this.isCancelled();
+			}
+
+			public void setProgress(int percent)
+			{
+				AgilitextCounter.this.setProgress(percent);
+			}
+		});
+		if(event!=null)
+		{
+			event.query=engine.getQuery();
+			event.matches=matches;
+			event.completed=!isCancelled();
+			event.commit();
+		}
+		return matches;
+	}
+
+	/**
+	 * done: Hands result to manager on the event thread
+	 */
+	protected void done()
+	{
+		boolean completed=false;
+		try
+		{
+			//if not cancelled, check for errors raised by the counting threads
+			if(!isCancelled())
+			{
+				get();
+				completed=true;
+			}
+		}
+		catch(InterruptedException e)
+		{
+			//count was interrupted, treat as cancelled
+		}
+		catch(ExecutionException e)
+		{
+			//if an error occurs, display error
+			System.err.println(e.getCause().getMessage());
+		}
+		manager.countFinished(this, completed);
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * AgilitextDocument: PlainDocument backed by an AgilitextPieceTable
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextDocument extends PlainDocument
+{
+	//private objects
+	private AgilitextPieceTable pieceTable;
+
+	//pieces of the remove being made, kept until its undoable edit has been fired
+	private AgilitextTextBuffer.Pieces removedPieces;
+
+	//initialize serialization long
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * AgilitextDocument: Constructor
+	 */
+	public AgilitextDocument()
+	{
+		this(new AgilitextPieceTable());
+	}
+
+	/**
+	 * AgilitextDocument: Constructor
+	 * @param pieceTable: The content to use, possibly holding a mapped file
+	 */
+	public AgilitextDocument(AgilitextPieceTable pieceTable)
+	{
+		super(pieceTable);
+		this.pieceTable=pieceTable;
+
+		//if content was preloaded, build line elements over it
+		if(pieceTable.length()>1)
+		{
+			buildLines();
+		}
+	}
+
+	/**
+	 * AgilitextDocument: Constructor
+	 * @param file: The file to map as original content
+	 * @param charset: The charset used to decode the file
+	 * @throws IOException: If the file cannot be mapped
+	 */
+	public AgilitextDocument(File file, Charset charset) throws IOException
+	{
+		this(new AgilitextPieceTable(index(new AgilitextMappedBuffer(file, charset))));
+	}
+
+	/**
+	 * index: Indexes a whole mapped buffer before it is used as content
+	 * @param original: The mapped buffer
+	 * @return: The indexed mapped buffer
+	 */
+	private static AgilitextMappedBuffer index(AgilitextMappedBuffer original)
+	{
+		original.index();
+		return original;
+	}
+
+	/**
+	 * getPieceTable: Used to get the piece table content of the document
+	 * @return: Document content
+	 */
+	public AgilitextPieceTable getPieceTable()
+	{
+		return pieceTable;
+	}
+
+	/**
+	 * snapshot: Captures an immutable version of the text, without the trailing newline, in
+	 * constant time and without taking the document lock, for reading on any thread while
+	 * the document keeps being edited
+	 * @return: Snapshot of current text
+	 */
+	public AgilitextTextBuffer.Snapshot snapshot()
+	{
+		return pieceTable.snapshot();
+	}
+
+	/**
+	 * getRemovedPieces: Used by undoable edit listeners to get the pieces of the remove being notified,
+	 * which hold the removed text without copying it
+	 * @return: Removed pieces, or null if no remove is being notified
+	 */
+	public AgilitextTextBuffer.Pieces getRemovedPieces()
+	{
+		return removedPieces;
+	}
+
+	/**
+	 * removeUpdate: Captures the pieces about to be removed, before content drops them
+	 * @param chng: Change event of the remove
+	 */
+	protected void removeUpdate(DefaultDocumentEvent chng)
+	{
+		removedPieces=pieceTable.savePieces(chng.getOffset(), chng.getLength());
+		super.removeUpdate(chng);
+	}
+
+	/**
+	 * insertPieces: Inserts pieces captured from this document, eg. to undo a remove, notifying
+	 * listeners as an insert of their text
+	 * @param offset: Offset to insert at
+	 * @param pieces: Pieces to insert
+	 * @throws BadLocationException: If offset is not valid
+	 */
+	public void insertPieces(int offset, AgilitextTextBuffer.Pieces pieces) throws BadLocationException
+	{
+		//if nothing is inserted, do nothing
+		if(pieces.length()==0)
+		{
+			return;
+		}
+		writeLock();
+		try
+		{
+			//if offset is outside of text
+			if(offset<0||offset>getLength())
+			{
+				throw new BadLocationException("Invalid insert", offset);
+			}
+			pieceTable.restorePieces(offset, pieces);
+
+			//update lines and notify listeners as an insert would
+			DefaultDocumentEvent chng=new DefaultDocumentEvent(offset, pieces.length(), DocumentEvent.EventType.INSERT);
+			insertUpdate(chng, null);
+			chng.end();
+			fireInsertUpdate(chng);
+			fireUndoableEditUpdate(new UndoableEditEvent(this, chng));
+		}
+		finally
+		{
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * fireUndoableEditUpdate: Notifies undoable edit listeners, then releases any removed pieces
+	 * @param e: Undoable edit event
+	 */
+	protected void fireUndoableEditUpdate(UndoableEditEvent e)
+	{
+		try
+		{
+			super.fireUndoableEditUpdate(e);
+		}
+		finally
+		{
+			removedPieces=null;
+		}
+	}
+
+	/**
+	 * replaceAll: Replaces every match of a planned replacement under a single write lock, so that
+	 * no other thread sees the text part way through
+	 * @param plan: Replacement planned for the current text
+	 * @return: Offset just after the last replacement
+	 * @throws BadLocationException: If a match is outside of the text
+	 */
+	public int replaceAll(AgilitextSearchEngine.Replacement plan) throws BadLocationException
+	{
+		writeLock();
+		try
+		{
+			//replace matches in order, each one moved by the replacements before it
+			int where=0;
+			for(int i=0;i<plan.count;i++)
+			{
+				where=plan.getOffset(i);
+				remove(where, plan.length);
+				insertString(where, plan.text, null);
+				where+=plan.text.length();
+			}
+			return where;
+		}
+		finally
+		{
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * appendOriginal: Appends a batch of newly indexed original chars, notifying listeners
+	 * with a single insert event
+	 * @param originalLength: Number of original chars now covered by the document
+	 * @param lineEnds: Offsets just after each newline in the batch
+	 * @param lineCount: Number of valid entries in lineEnds
+	 */
+	public void appendOriginal(int originalLength, int[] lineEnds, int lineCount)
+	{
+		writeLock();
+		try
+		{
+			//capture lines touching the end of text before positions shift
+			BranchElement root=(BranchElement)getDefaultRootElement();
+			int where=getLength();
+			int index=root.getElementIndex(Math.max(where-1, 0));
+			int lineStart=root.getElement(index).getStartOffset();
+			//if that line is already closed by a newline, it must be closed again
+			boolean closed=root.getElement(index).getEndOffset()==where;
+			Element[] removed=new Element[root.getElementCount()-index];
+			for(int i=0;i<removed.length;i++)
+			{
+				removed[i]=root.getElement(index+i);
+			}
+
+			//extend content
+			pieceTable.appendOriginal(originalLength);
+			int n=getLength()-where;
+			//if nothing was appended, do nothing
+			if(n==0)
+			{
+				return;
+			}
+
+			//rebuild lines from the first touched line to the end of content
+			ArrayList<Element> lines=new ArrayList<Element>(lineCount+2);
+			if(closed)
+			{
+				lines.add(createLeafElement(root, null, lineStart, where));
+				lineStart=where;
+			}
+			for(int i=0;i<lineCount;i++)
+			{
+				lines.add(createLeafElement(root, null, lineStart, lineEnds[i]));
+				lineStart=lineEnds[i];
+			}
+			lines.add(createLeafElement(root, null, lineStart, getLength()+1));
+			Element[] added=lines.toArray(new Element[lines.size()]);
+			root.replace(index, removed.length, added);
+
+			//notify listeners and views of the appended range
+			DefaultDocumentEvent chng=new DefaultDocumentEvent(where, n, DocumentEvent.EventType.INSERT);
+			chng.addEdit(new ElementEdit(root, index, removed, added));
+			chng.end();
+			fireInsertUpdate(chng);
+		}
+		finally
+		{
+			writeUnlock();
+		}
+	}
+
+	/**
+	 * buildLines: Replaces the root's children with one element per line of content
+	 */
+	private void buildLines()
+	{
+		writeLock();
+		try
+		{
+			//initialize line list and root element
+			ArrayList<Element> lines=new ArrayList<Element>();
+			BranchElement root=(BranchElement)getDefaultRootElement();
+
+			//scan content in partial segments, closing a line after each newline
+			Segment s=new Segment();
+			s.setPartialReturn(true);
+			int length=pieceTable.length();
+			int lineStart=0;
+			int offset=0;
+			while(offset<length)
+			{
+				pieceTable.getChars(offset, length-offset, s);
+				for(int i=0;i<s.count;i++)
+				{
+					if(s.array[s.offset+i]=='\n')
+					{
+						int lineEnd=offset+i+1;
+						lines.add(createLeafElement(root, null, lineStart, lineEnd));
+						lineStart=lineEnd;
+					}
+				}
+				offset+=s.count;
+			}
+
+			//replace existing line elements
+			root.replace(0, root.getElementCount(), lines.toArray(new Element[lines.size()]));
+		}
+		catch(BadLocationException e)
+		{
+			//content ranges come from content length, if an error occurs print stack trace
+			e.printStackTrace();
+		}
+		finally
+		{
+			writeUnlock();
+		}
+	}
+}
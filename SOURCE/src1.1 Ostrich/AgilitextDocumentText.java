@@ -0,0 +1,193 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+/**
+ * AgilitextDocumentText: CharSequence view of a text buffer or of a snapshot of one that
+ * reads it through a small reused window instead of copying the whole text
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextDocumentText implements CharSequence
+{
+	//size of reused window
+	private static final int WINDOW_SIZE=16384;
+
+	//chars kept before a requested offset, so that matching a query backwards stays inside the window
+	private static final int BACK_MARGIN=256;
+
+	//private objects
+
+	//viewed buffer, or null if a snapshot is viewed
+	private AgilitextTextBuffer buffer;
+	private int length;
+
+	//viewed snapshot, or null if a buffer is viewed
+	private AgilitextTextBuffer.Snapshot snapshot;
+
+	//reused window of chars from windowStart to windowEnd
+	private char[] window;
+	private int windowStart;
+	private int windowEnd;
+
+	/**
+	 * AgilitextDocumentText: Constructor
+	 */
+	public AgilitextDocumentText()
+	{
+		window=new char[WINDOW_SIZE];
+	}
+
+	/**
+	 * AgilitextDocumentText: Constructor
+	 * @param buffer: The buffer to view, read by the thread that edits it
+	 */
+	public AgilitextDocumentText(AgilitextTextBuffer buffer)
+	{
+		this();
+		setBuffer(buffer);
+	}
+
+	/**
+	 * AgilitextDocumentText: Constructor
+	 * @param snapshot: The snapshot to view, read only by the thread using this view
+	 */
+	public AgilitextDocumentText(AgilitextTextBuffer.Snapshot snapshot)
+	{
+		this();
+		setSnapshot(snapshot);
+	}
+
+	/**
+	 * setBuffer: Views a buffer, discarding any window read before it last changed
+	 * @param buffer: The buffer to view
+	 */
+	public void setBuffer(AgilitextTextBuffer buffer)
+	{
+		this.buffer=buffer;
+		snapshot=null;
+		//leave out implied newline
+		length=buffer.length()-1;
+		windowStart=0;
+		windowEnd=0;
+	}
+
+	/**
+	 * setSnapshot: Views a snapshot of a buffer, which can be read while the buffer is edited
+	 * @param snapshot: The snapshot to view
+	 */
+	public void setSnapshot(AgilitextTextBuffer.Snapshot snapshot)
+	{
+		this.snapshot=snapshot;
+		buffer=null;
+		length=snapshot.length();
+		windowStart=0;
+		windowEnd=0;
+	}
+
+	/**
+	 * length: Used to get the length of the text
+	 * @return: Text length
+	 */
+	public int length()
+	{
+		return length;
+	}
+
+	/**
+	 * charAt: Used to get a char, reading a new window when it lies outside the current one
+	 * @param index: Text offset
+	 * @return: Char at offset
+	 */
+	public char charAt(int index)
+	{
+		//if index is outside current window, read window around it
+		if(index<windowStart||index>=windowEnd)
+		{
+			fill(index);
+		}
+		return window[index-windowStart];
+	}
+
+	/**
+	 * subSequence: Used to copy a range of the text
+	 * @param start: Starting offset
+	 * @param end: Ending offset
+	 * @return: Copied chars
+	 */
+	public CharSequence subSequence(int start, int end)
+	{
+		//if range is outside of text, throw exception
+		if(start<0||end<start||end>length)
+		{
+			throw new IndexOutOfBoundsException("Range "+start+" to "+end+" of "+length);
+		}
+		char[] chars=new char[end-start];
+		read(start, end-start, chars);
+		return new String(chars);
+	}
+
+	/**
+	 * toString: Used to copy the whole text
+	 * @return: Text
+	 */
+	public String toString()
+	{
+		return subSequence(0, length).toString();
+	}
+
+	/**
+	 * fill: Reads the window containing an offset
+	 * @param index: Text offset
+	 */
+	private void fill(int index)
+	{
+		//if index is outside text, throw exception
+		if(index<0||index>=length)
+		{
+			throw new IndexOutOfBoundsException("Index "+index+" of "+length);
+		}
+		//read window starting a little before index, so that matching backwards stays inside it
+		int start=Math.max(0, index-BACK_MARGIN);
+		int count=Math.min(WINDOW_SIZE, length-start);
+		read(start, count, window);
+		windowStart=start;
+		windowEnd=start+count;
+	}
+
+	/**
+	 * read: Copies a range of the viewed buffer or snapshot into an array
+	 * @param start: Starting offset
+	 * @param count: Number of chars
+	 * @param dest: Destination array
+	 */
+	private void read(int start, int count, char[] dest)
+	{
+		if(snapshot!=null)
+		{
+			snapshot.getChars(start, count, dest, 0);
+		}
+		else
+		{
+			buffer.getChars(start, count, dest, 0);
+		}
+	}
+}
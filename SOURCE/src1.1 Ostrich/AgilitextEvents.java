@@ -0,0 +1,240 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * AgilitextEvents: Flight recorder events of editor operations, shown under Agilitext next to
+ * GC and allocation events in recordings started with -XX:StartFlightRecording or jcmd JFR.start
+ *
+ * Loading an event class starts the recorder's event machinery, which takes a noticeable part of
+ * startup, so an event is only created once isRecording() is true. Callers hold the event in a
+ * variable of its own class, which may be null, so that no event class is loaded before then:
+ *
+ * AgilitextEvents.Paint event=AgilitextEvents.isRecording()? new AgilitextEvents.Paint() : null;
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextEvents
+{
+	/**
+	 * isRecording: Used to determine if the flight recorder has been started, by a command line
+	 * option or later by jcmd, after which events are created and committed
+	 * @return: true if events may be recorded
+	 */
+	public static boolean isRecording()
+	{
+		return FlightRecorder.isInitialized();
+	}
+
+	/**
+	 * Load: A file loaded into a text area, from the start of reading until its document is shown
+	 */
+	@Name("agilitext.FileLoad")
+	@Label("File Load")
+	@Category("Agilitext")
+	@Description("File read into the editor, until the whole document is shown")
+	public static class Load extends Event
+	{
+		@Label("Path")
+		protected String path;
+
+		@Label("Bytes")
+		@DataAmount
+		protected long bytes;
+
+		@Label("Chars")
+		protected long chars;
+
+		@Label("Mapped")
+		@Description("File was memory-mapped rather than streamed")
+		protected boolean mapped;
+
+		@Label("Completed")
+		protected boolean completed;
+	}
+
+	/**
+	 * Save: A snapshot of a document written to a file
+	 */
+	@Name("agilitext.FileSave")
+	@Label("File Save")
+	@Category("Agilitext")
+	@Description("Document written to a temporary file and moved over the target")
+	public static class Save extends Event
+	{
+		@Label("Path")
+		protected String path;
+
+		@Label("Bytes")
+		@DataAmount
+		protected long bytes;
+
+		@Label("Chars")
+		protected long chars;
+
+		@Label("Completed")
+		protected boolean completed;
+	}
+
+	/**
+	 * Find: A search for the next occurrence of a query
+	 */
+	@Name("agilitext.Find")
+	@Label("Find")
+	@Category("Agilitext")
+	@Description("Search for the next occurrence of the find text")
+	public static class Find extends Event
+	{
+		@Label("Query")
+		protected String query;
+
+		@Label("Offset")
+		@Description("Offset of the occurrence found, -1 if there is none")
+		protected int offset;
+	}
+
+	/**
+	 * Count: A count of every occurrence of a query
+	 */
+	@Name("agilitext.Count")
+	@Label("Count")
+	@Category("Agilitext")
+	@Description("Count of every occurrence of the find text, run in the background")
+	public static class Count extends Event
+	{
+		@Label("Query")
+		protected String query;
+
+		@Label("Matches")
+		protected int matches;
+
+		@Label("Completed")
+		protected boolean completed;
+	}
+
+	/**
+	 * ReplacePlan: The planning of a replace all, which finds every occurrence in the background
+	 */
+	@Name("agilitext.ReplacePlan")
+	@Label("Replace Plan")
+	@Category("Agilitext")
+	@Description("Search for every occurrence to replace, run in the background")
+	public static class ReplacePlan extends Event
+	{
+		@Label("Query")
+		protected String query;
+
+		@Label("Matches")
+		protected int matches;
+
+		@Label("Completed")
+		protected boolean completed;
+	}
+
+	/**
+	 * Replace: The edit replacing one occurrence or every planned occurrence of a query
+	 */
+	@Name("agilitext.Replace")
+	@Label("Replace")
+	@Category("Agilitext")
+	@Description("Edit replacing the selected occurrence or every occurrence of the find text")
+	public static class Replace extends Event
+	{
+		@Label("Query")
+		protected String query;
+
+		@Label("Matches")
+		protected int matches;
+
+		@Label("Replaced Chars")
+		@Description("Number of chars replaced over every occurrence")
+		protected int replacedChars;
+	}
+
+	/**
+	 * Undo: An undo or redo of a step of the undo history
+	 */
+	@Name("agilitext.Undo")
+	@Label("Undo")
+	@Category("Agilitext")
+	@Description("Undo or redo of one step of the edit history")
+	public static class Undo extends Event
+	{
+		@Label("Redo")
+		protected boolean redo;
+
+		@Label("Applied")
+		@Description("A step was undone or redone, false if there was none")
+		protected boolean applied;
+	}
+
+	/**
+	 * FontChange: A change of the text area's font, including the layout it invalidates
+	 */
+	@Name("agilitext.FontChange")
+	@Label("Font Change")
+	@Category("Agilitext")
+	@Description("Font of the text area replaced")
+	public static class FontChange extends Event
+	{
+		@Label("Family")
+		protected String family;
+
+		@Label("Style")
+		@Description("Font style flags, 1 for bold and 2 for italic")
+		protected int style;
+
+		@Label("Size")
+		protected float size;
+	}
+
+	/**
+	 * Paint: A paint pass of the text area, without stack traces as there are many
+	 */
+	@Name("agilitext.Paint")
+	@Label("Paint")
+	@Category("Agilitext")
+	@Description("Paint pass of the text area over its clip")
+	@StackTrace(false)
+	public static class Paint extends Event
+	{
+		@Label("X")
+		protected int x;
+
+		@Label("Y")
+		protected int y;
+
+		@Label("Width")
+		protected int width;
+
+		@Label("Height")
+		protected int height;
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * AgilitextFileLoader: Loads a file into a new document off the event thread, publishing
+ * it in batches so that the first screen of text appears while the rest is still read
+ *
+ * Line terminators are kept in the content as they are in the file, so that saving writes them
+ * back unchanged. A line ends after each LF, as the document's line elements and the line index
+ * end it, so a CR before an LF stays at the end of its line and a lone CR does not end one.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFileLoader extends SwingWorker<Void, AgilitextFileLoader.Batch>
+{
+	//size of first batch, roughly a screen of text, and of later batches
+	private static final int FIRST_BATCH_CHARS=16384;
+	private static final int BATCH_CHARS=1<<20;
+
+	//size and number of pooled buffers used when a file cannot be mapped
+	private static final int BUFFER_SIZE=65536;
+	private static final int POOL_SIZE=4;
+
+	//private objects
+
+	//target text area and file
+	private AgilitextTextArea textArea;
+	private File file;
+	private Charset charset;
+
+	//document being loaded and its mapped original buffer, or null if file is streamed
+	private AgilitextDocument document;
+	private AgilitextMappedBuffer original;
+
+	//pooled char buffers passed between loader thread and event thread
+	private ArrayBlockingQueue<CharBuffer> pool;
+
+	//flight recorder event of the load, or null if the recorder has not started
+	private AgilitextEvents.Load event;
+
+	/**
+	 * AgilitextFileLoader: Constructor
+	 * @param textArea: The text area receiving the document
+	 * @param file: The file to load
+	 * @param charset: The charset used to decode the file
+	 * @throws IOException: If the file cannot be opened
+	 */
+	public AgilitextFileLoader(AgilitextTextArea textArea, File file, Charset charset) throws IOException
+	{
+		this.textArea=textArea;
+		this.file=file;
+		this.charset=charset;
+
+		//if file can be mapped, index it into an empty piece table, otherwise stream it through pooled buffers
+		if(AgilitextMappedBuffer.isMappable(charset)&&file.length()<=Integer.MAX_VALUE)
+		{
+			original=new AgilitextMappedBuffer(file, charset);
+		}
+		else
+		{
+			pool=new ArrayBlockingQueue<CharBuffer>(POOL_SIZE);
+			for(int i=0;i<POOL_SIZE;i++)
+			{
+				pool.add(CharBuffer.allocate(BUFFER_SIZE));
+			}
+		}
+		document=new AgilitextDocument(new AgilitextPieceTable(original));
+		document.putProperty(AgilitextDocument.StreamDescriptionProperty, file);
+	}
+
+	/**
+	 * getDocument: Used to get the document being loaded
+	 * @return: Loaded document
+	 */
+	public AgilitextDocument getDocument()
+	{
+		return document;
+	}
+
+	/**
+	 * getFile: Used to get the file being loaded
+	 * @return: Loaded file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * doInBackground: Reads the file on a worker thread
+	 * @return: Nothing
+	 * @throws Exception: If the file cannot be read
+	 */
+	protected Void doInBackground() throws Exception
+	{
+		//record load for flight recordings until its document is shown, if the recorder has started
+		event=AgilitextEvents.isRecording()? new AgilitextEvents.Load() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
+		//if file is mapped, index it, otherwise stream it
+		if(original!=null)
+		{
+			indexMapped();
+		}
+		else
+		{
+			stream();
+		}
+		return null;
+	}
+
+	/**
+	 * indexMapped: Indexes the mapped file chunk by chunk, publishing line ends in batches
+	 */
+	private void indexMapped()
+	{
+		//initialize reused decode buffer and line end batch
+		CharBuffer buffer=CharBuffer.allocate(AgilitextMappedBuffer.CHUNK_CHARS);
+		int[] lineEnds=new int[1024];
+		int lineCount=0;
+		int offset=0;
+		int batchStart=0;
+		int batchChars=FIRST_BATCH_CHARS;
+		int n;
+
+		//decode chunks until file is indexed or load is cancelled
+		while(!isCancelled()&&(n=original.decodeNext(buffer))>=0)
+		{
+			//record offset after each newline, keeping every terminator in the content
+			for(int i=0;i<n;i++)
+			{
+				if(buffer.get(i)=='\n')
+				{
+					if(lineCount==lineEnds.length)
+					{
+						lineEnds=Arrays.copyOf(lineEnds, lineCount*2);
+					}
+					lineEnds[lineCount++]=offset+i+1;
+				}
+			}
+			offset+=n;
+
+			//if batch is full or file is done, hand it to the event thread
+			if(offset-batchStart>=batchChars||original.isIndexed())
+			{
+				publish(new Batch(offset, Arrays.copyOf(lineEnds, lineCount), null));
+				lineCount=0;
+				batchStart=offset;
+				batchChars=BATCH_CHARS;
+				setProgress((int)(100L*original.getIndexedBytes()/Math.max(1, original.getByteLength())));
+			}
+		}
+	}
+
+	/**
+	 * stream: Decodes the file into pooled buffers that are inserted on the event thread
+	 * @throws IOException: If the file cannot be read
+	 * @throws InterruptedException: If the load is cancelled while waiting for a buffer
+	 */
+	private void stream() throws IOException, InterruptedException
+	{
+		//initialize reused decoder and byte buffer
+		CharsetDecoder decoder=charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes=ByteBuffer.allocateDirect(BUFFER_SIZE);
+		FileInputStream in=new FileInputStream(file);
+		try
+		{
+			FileChannel channel=in.getChannel();
+			long size=Math.max(1, channel.size());
+			boolean eof=false;
+			while(!eof&&!isCancelled())
+			{
+				//read next block of bytes
+				eof=channel.read(bytes)==-1;
+				bytes.flip();
+
+				//take a pooled buffer, waiting while the event thread catches up
+				CharBuffer chars=pool.take();
+				chars.clear();
+				decoder.decode(bytes, chars, eof);
+				if(eof)
+				{
+					decoder.flush(chars);
+				}
+				chars.flip();
+				bytes.compact();
+
+				publish(new Batch(0, null, chars));
+				setProgress((int)(100L*channel.position()/size));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * process: Applies published batches to the document on the event thread
+	 * @param batches: Batches published since the last call
+	 */
+	protected void process(List<Batch> batches)
+	{
+		for(Batch batch : batches)
+		{
+			//if batch holds decoded chars, insert them and return buffer to pool
+			if(batch.chars!=null)
+			{
+				try
+				{
+					document.insertString(document.getLength(), batch.chars.toString(), null);
+				}
+				catch(BadLocationException e)
+				{
+					//inserts always target document end, if an error occurs print stack trace
+					e.printStackTrace();
+				}
+				pool.offer(batch.chars);
+			}
+			//otherwise extend document over newly indexed original chars
+			else
+			{
+				document.appendOriginal(batch.originalLength, batch.lineEnds, batch.lineEnds.length);
+			}
+		}
+	}
+
+	/**
+	 * done: Hands result to text area on the event thread
+	 */
+	protected void done()
+	{
+		boolean completed=false;
+		try
+		{
+			//if not cancelled, check for errors raised by the loader thread
+			if(!isCancelled())
+			{
+				get();
+				completed=true;
+			}
+		}
+		catch(InterruptedException e)
+		{
+			//load was interrupted, treat as cancelled
+		}
+		catch(ExecutionException e)
+		{
+			//if an error occurs, display error
+			System.err.println(e.getCause().getMessage());
+		}
+		textArea.loadFinished(this, completed);
+		if(event!=null)
+		{
+			event.path=file.getPath();
+			event.bytes=file.length();
+			event.chars=document.getLength();
+			event.mapped=original!=null;
+			event.completed=completed;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Batch: Chunk of loaded text handed from loader thread to event thread
+	 */
+	protected static class Batch
+	{
+		private int originalLength;
+		private int[] lineEnds;
+		private CharBuffer chars;
+
+		private Batch(int originalLength, int[] lineEnds, CharBuffer chars)
+		{
+			this.originalLength=originalLength;
+			this.lineEnds=lineEnds;
+			this.chars=chars;
+		}
+	}
+}
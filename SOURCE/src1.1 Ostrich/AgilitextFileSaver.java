@@ -0,0 +1,464 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * AgilitextFileSaver: Saves a snapshot of a text buffer by streaming it through a reused
+ * encoder into a temporary file that atomically replaces the target
+ *
+ * The temporary file is created with the default permissions, so that a new file gets the ones
+ * the umask gives it, and takes those of an existing target. A target that is a link is resolved
+ * so that the file it points to is replaced rather than the link. Other writers of whole files,
+ * such as batch replace, replace them the same way through resolve and replace.
+ *
+ * On POSIX systems a file can be replaced while it is mapped, as the original text of an open
+ * document is, and the old mapping keeps reading the old contents. Windows refuses to replace a
+ * mapped file but lets it be renamed, so when replacing fails the target is first moved aside to
+ * a hidden name in its directory, which is not atomic. The moved file is deleted, or left for
+ * deletion on exit if its mapping still holds it.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFileSaver
+{
+	//size of reused output buffer, and of reused char buffer read from the snapshot
+	private static final int BUFFER_SIZE=65536;
+	private static final int CHARS_SIZE=16384;
+
+	//private objects
+	private CharsetEncoder encoder;
+	private ByteBuffer buffer;
+	private char[] chars;
+
+	/**
+	 * AgilitextFileSaver: Constructor
+	 * @param charset: The charset used to encode saved files
+	 */
+	public AgilitextFileSaver(Charset charset)
+	{
+		//initialize reused encoder, output buffer and char buffer
+		encoder=charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		buffer=ByteBuffer.allocateDirect(BUFFER_SIZE);
+		chars=new char[CHARS_SIZE];
+	}
+
+	/**
+	 * save: Writes a snapshot to a file, replacing it only once the new contents are on disk
+	 * @param snapshot: Snapshot of the text to save
+	 * @param target: The file to write
+	 * @return: Number of bytes written
+	 * @throws IOException: If the file cannot be written, leaving any existing target untouched
+	 */
+	public long save(AgilitextTextBuffer.Snapshot snapshot, File target) throws IOException
+	{
+		return save(snapshot, target, AgilitextMonitor.UNMONITORED);
+	}
+
+	/**
+	 * save: Writes a snapshot to a file, replacing it only once the new contents are on disk
+	 * @param snapshot: Snapshot of the text to save
+	 * @param target: The file to write
+	 * @param monitor: Monitor told of progress and asked whether to stop
+	 * @return: Number of bytes written
+	 * @throws IOException: If the file cannot be written or the save is cancelled, leaving any existing target untouched
+	 */
+	public long save(final AgilitextTextBuffer.Snapshot snapshot, File target, final AgilitextMonitor monitor) throws IOException
+	{
+		//record save for flight recordings, if the recorder has started
+		AgilitextEvents.Save event=AgilitextEvents.isRecording()? new AgilitextEvents.Save() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
+
+		Path targetPath=resolve(target);
+		long written=0;
+		boolean moved=false;
+		try
+		{
+			written=replace(targetPath, new Contents()
+			{
+				public long write(FileChannel channel) throws IOException
+				{
+					return AgilitextFileSaver.this.write(snapshot, channel, monitor);
+				}
+			});
+			moved=true;
+		}
+		finally
+		{
+			if(event!=null)
+			{
+				event.path=targetPath.toString();
+				event.bytes=written;
+				event.chars=snapshot.length();
+				event.completed=moved;
+				event.commit();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * resolve: Used to get the file that saving to a target replaces
+	 * @param target: The file to write
+	 * @return: Absolute path of target, or of the file it links to if it exists
+	 * @throws IOException: If an existing target cannot be resolved
+	 */
+	public static Path resolve(File target) throws IOException
+	{
+		//if target exists, replace the file it is, or that it links to
+		Path path=target.getAbsoluteFile().toPath();
+		if(Files.exists(path))
+		{
+			path=path.toRealPath();
+		}
+		return path;
+	}
+
+	/**
+	 * replace: Writes new contents of a file to a temporary file beside it, which takes the
+	 * permissions of the file and replaces it once the contents are on disk
+	 * @param target: The file to replace, as returned by resolve
+	 * @param contents: Writer of the new contents
+	 * @return: Number of bytes written
+	 * @throws IOException: If the contents cannot be written or the file cannot be replaced, leaving it untouched
+	 */
+	public static long replace(Path target, Contents contents) throws IOException
+	{
+		//create temporary file in target's directory so that it can be moved over the target
+		Path dir=target.getParent();
+		Path temp=createTemp(dir, target.getFileName().toString());
+		long written;
+		boolean moved=false;
+		try
+		{
+			//keep permissions of an existing target
+			copyPermissions(target, temp);
+
+			//write contents and force them to disk
+			FileChannel channel=FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			try
+			{
+				written=contents.write(channel);
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+
+			replace(temp, target);
+			moved=true;
+			syncDirectory(dir);
+		}
+		finally
+		{
+			//if target was not replaced, remove partial temporary file
+			if(!moved)
+			{
+				Files.deleteIfExists(temp);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * write: Encodes a snapshot through the reused buffers and writes it to a channel
+	 * @param snapshot: Snapshot of the text to write
+	 * @param channel: The channel to write to
+	 * @param monitor: Monitor told of progress and asked whether to stop
+	 * @return: Number of bytes written
+	 * @throws IOException: If the channel cannot be written or the save is cancelled
+	 */
+	private long write(AgilitextTextBuffer.Snapshot snapshot, FileChannel channel, AgilitextMonitor monitor) throws IOException
+	{
+		long written=0;
+		int length=snapshot.length();
+		int offset=0;
+		encoder.reset();
+		buffer.clear();
+
+		//walk text one reused char buffer at a time
+		while(offset<length)
+		{
+			//if save is cancelled, stop before the target is replaced
+			if(monitor.isCancelled())
+			{
+				throw new InterruptedIOException("Save cancelled");
+			}
+			int count=Math.min(CHARS_SIZE, length-offset);
+			snapshot.getChars(offset, count, chars, 0);
+			//if chars end between the two halves of a surrogate pair, leave high half for next read
+			if(count>1&&offset+count<length&&Character.isHighSurrogate(chars[count-1]))
+			{
+				count--;
+			}
+			written+=encode(CharBuffer.wrap(chars, 0, count), channel, false);
+			offset+=count;
+			monitor.setProgress((int)(100L*offset/length));
+		}
+
+		//finish encoding and write remaining bytes
+		written+=encode(CharBuffer.allocate(0), channel, true);
+		while(encoder.flush(buffer)==CoderResult.OVERFLOW)
+		{
+			written+=drain(channel);
+		}
+		written+=drain(channel);
+		return written;
+	}
+
+	/**
+	 * encode: Encodes chars into the buffer, draining it to the channel whenever it fills
+	 * @param chars: Chars to encode
+	 * @param channel: The channel to write to
+	 * @param endOfInput: true if no more chars follow
+	 * @return: Number of bytes written
+	 * @throws IOException: If the channel cannot be written
+	 */
+	private long encode(CharBuffer chars, FileChannel channel, boolean endOfInput) throws IOException
+	{
+		long written=0;
+		while(encoder.encode(chars, buffer, endOfInput)==CoderResult.OVERFLOW)
+		{
+			written+=drain(channel);
+		}
+		return written;
+	}
+
+	/**
+	 * drain: Writes buffered bytes to a channel and clears the buffer
+	 * @param channel: The channel to write to
+	 * @return: Number of bytes written
+	 * @throws IOException: If the channel cannot be written
+	 */
+	private long drain(FileChannel channel) throws IOException
+	{
+		long written=0;
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			written+=channel.write(buffer);
+		}
+		buffer.clear();
+		return written;
+	}
+
+	/**
+	 * createTemp: Creates an empty hidden file next to the target with default permissions, unlike
+	 * Files.createTempFile, which makes it readable by its owner only
+	 * @param dir: Directory of the target
+	 * @param name: File name of the target
+	 * @return: Path of new file
+	 * @throws IOException: If the file cannot be created
+	 */
+	private static Path createTemp(Path dir, String name) throws IOException
+	{
+		//retry with another name while one is taken
+		while(true)
+		{
+			try
+			{
+				return Files.createFile(dir.resolve(hiddenName(name, ".tmp")));
+			}
+			catch(FileAlreadyExistsException e)
+			{
+				//name is taken, try another
+			}
+		}
+	}
+
+	/**
+	 * hiddenName: Used to name a file kept next to the target while saving
+	 * @param name: File name of the target
+	 * @param suffix: Suffix of the name, eg. ".tmp"
+	 * @return: Random hidden name
+	 */
+	private static String hiddenName(String name, String suffix)
+	{
+		return "."+name+"."+Long.toHexString(ThreadLocalRandom.current().nextLong())+suffix;
+	}
+
+	/**
+	 * replace: Moves the written temporary file over the target in a single step where possible
+	 * @param temp: The temporary file
+	 * @param target: The target, which may not exist
+	 * @throws IOException: If the target cannot be replaced, leaving it as it was
+	 */
+	private static void replace(Path temp, Path target) throws IOException
+	{
+		try
+		{
+			move(temp, target);
+		}
+		catch(FileSystemException e)
+		{
+			//if no existing target is in the way, it is not the cause of the failure
+			if(!Files.exists(target))
+			{
+				throw e;
+			}
+
+			//a mapped target cannot be replaced on Windows, but can be renamed, so move it aside first
+			Path aside;
+			while(true)
+			{
+				aside=target.resolveSibling(hiddenName(target.getFileName().toString(), ".old"));
+				try
+				{
+					Files.move(target, aside);
+					break;
+				}
+				catch(FileAlreadyExistsException taken)
+				{
+					//name is taken, try another
+				}
+				catch(IOException notMoved)
+				{
+					//if target cannot be moved either, report the original failure
+					throw e;
+				}
+			}
+			try
+			{
+				Files.move(temp, target);
+			}
+			catch(IOException notReplaced)
+			{
+				//put target back as it was
+				Files.move(aside, target);
+				throw notReplaced;
+			}
+			try
+			{
+				Files.delete(aside);
+			}
+			catch(IOException stillMapped)
+			{
+				//old file is held by its mapping until the document using it is gone
+				aside.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * move: Moves a file over another in a single step, falling back to a plain replace where unsupported
+	 * @param from: The file to move
+	 * @param to: The file to replace
+	 * @throws IOException: If the file cannot be moved
+	 */
+	private static void move(Path from, Path to) throws IOException
+	{
+		try
+		{
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(AtomicMoveNotSupportedException e)
+		{
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * copyPermissions: Copies POSIX permissions of an existing file, where supported
+	 * @param from: The existing file
+	 * @param to: The file receiving its permissions
+	 */
+	private static void copyPermissions(Path from, Path to)
+	{
+		try
+		{
+			//if file exists, copy its permissions
+			if(Files.exists(from))
+			{
+				Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+			}
+		}
+		catch(UnsupportedOperationException e)
+		{
+			//file system has no POSIX permissions, keep defaults
+		}
+		catch(IOException e)
+		{
+			//permissions could not be copied, keep defaults
+		}
+	}
+
+	/**
+	 * syncDirectory: Forces a directory entry change to disk, where supported
+	 * @param dir: The directory to sync
+	 */
+	private static void syncDirectory(Path dir)
+	{
+		try
+		{
+			FileChannel channel=FileChannel.open(dir, StandardOpenOption.READ);
+			try
+			{
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+		catch(IOException e)
+		{
+			//directories cannot be opened on every platform, rename is already complete
+		}
+	}
+
+	/**
+	 * Contents: Writer of the new contents of a replaced file
+	 */
+	public interface Contents
+	{
+		/**
+		 * write: Writes the contents, leaving the channel open to be forced to disk
+		 * @param channel: Channel of the temporary file
+		 * @return: Number of bytes written
+		 * @throws IOException: If the contents cannot be written
+		 */
+		public long write(FileChannel channel) throws IOException;
+	}
+}
@@ -31,7 +31,7 @@ import java.awt.GridLayout;
  * @version 1.1
  * 
  * Date Created: 08/05/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextFindReplaceManager extends JDialog
 {
@@ -62,12 +62,18 @@ public class AgilitextFindReplaceManager extends JDialog
 	private Container c;
 	
 	//text area target
-	private JTextArea textArea;
+	private AgilitextTextArea textArea;
 	
-	//last find and last index
-	private String lastFind;
+	//search engine for last find and last index
+	private AgilitextSearchEngine engine;
 	private int lastIndex;
 	
+	//running counter, or null
+	private AgilitextCounter counter;
+	
+	//running replace all, or null
+	private AgilitextReplacer replacer;
+	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
@@ -76,7 +82,7 @@ public class AgilitextFindReplaceManager extends JDialog
 	 * @param parent: The parent JFrame used to set position of window
 	 * @param textArea: The target text area
 	 */
-	public AgilitextFindReplaceManager(JFrame parent, JTextArea textArea)
+	public AgilitextFindReplaceManager(JFrame parent, AgilitextTextArea textArea)
 	{
 		//call super constructor using parent JFrame with no modal window priority
 		super(parent, false);
@@ -87,7 +93,7 @@ public class AgilitextFindReplaceManager extends JDialog
 		
 		//set last index and find to default values
 		lastIndex=0;
-		lastFind="";
+		engine=null;
 		//set textArea to passed textArea
 		this.textArea=textArea;
 		
@@ -191,53 +197,37 @@ public class AgilitextFindReplaceManager extends JDialog
 	{
 		//initialize exists to false
 		boolean exists=false;
-		//declare index, text, and find
+		//declare index and find
 		int index;
-		String text;
-		String find;
+		String find=findField.getText();
 		
 		//if findField contains text
-		if(!findField.getText().isEmpty())
+		if(!find.isEmpty())
 		{
-			//capture lowercase text from target text area 
-			//and capture lowercase text from find field
-			text=textArea.getText().toLowerCase();
-			find=findField.getText().toLowerCase();
-			
-			try
+			long start=System.nanoTime();
+			//record find for flight recordings, if the recorder has started
+			AgilitextEvents.Find event=AgilitextEvents.isRecording()? new AgilitextEvents.Find() : null;
+			if(event!=null)
 			{
-				//if textArea selected text does not equal find
-				//(if text has already been highlighted by the user and is irrelevant)
-				if(!textArea.getSelectedText().equals(find))
-				{
-					//set lastIndex to 0
-					lastIndex=0;
-				}
+				event.begin();
 			}
-			catch(NullPointerException e)
+			
+			//if find has changed, build a new search engine and start from the top
+			if(engine==null||!engine.getQuery().equals(find))
 			{
-				//if an error occurs
-				//(if no text is selected), set lastIndex to 0 anyway
+				engine=new AgilitextSearchEngine(find, true);
 				lastIndex=0;
 			}
 			
-			//if lastFind does not equal find
-			if((!lastFind.equals(find)))
+			//if selection is not the last match
+			//(if text has been highlighted by the user or the caret has moved), start from the top
+			if(textArea.getSelectionEnd()!=lastIndex||textArea.getSelectionEnd()-textArea.getSelectionStart()!=engine.length())
 			{
-				//set lastIndex to 0
 				lastIndex=0;
 			}
 			
-			//set index to be the index of find from lastIndex in text
-			index=text.indexOf(find, lastIndex);
-			
-			//if index is -1
-			//(if index of find from lastIndex does not exist in text)
-			if(index==-1)
-			{
-				//set index to index of find in all of text
-				index=text.indexOf(find);
-			}
+			//set index to be the index of find from lastIndex in text, wrapping around to the top
+			index=engine.find(textArea.getBuffer(), lastIndex);
 			
 			//if index is not -1
 			//(if find exists within text)
@@ -246,11 +236,16 @@ public class AgilitextFindReplaceManager extends JDialog
 				//set exists to true
 				exists=true;
 				//select index to the end of find's length
-				textArea.select(index,index+find.length());
-				//set lastFind to find
-				lastFind=find;
-				//set lastFind to find + find's length
-				lastIndex=index+find.length();
+				textArea.select(index,index+engine.length());
+				//set lastIndex to index + find's length
+				lastIndex=index+engine.length();
+			}
+			textArea.getMetrics().record(AgilitextMetrics.FIND, System.nanoTime()-start);
+			if(event!=null)
+			{
+				event.query=find;
+				event.offset=index;
+				event.commit();
 			}
 		}
 		
@@ -263,103 +258,151 @@ public class AgilitextFindReplaceManager extends JDialog
 	 */
 	public boolean replaceText()
 	{
-		//Initialize success to false and selected to null
+		//Initialize success to false
 		boolean success=false;
-		String selected=null;
 		
-		try
-		{
-			//attempt to assign selected the selected lowercase text of textArea
-			selected=textArea.getSelectedText().toLowerCase();
-			//set success to true temporarily
-			success=true;
-		}
-		catch(NullPointerException e)
+		//if selected text is a match for the last find
+		//(if the selected text is acceptable to replace)
+		if(engine!=null&&engine.getQuery().equals(findField.getText())&&engine.matches(textArea.getSelectedText()))
 		{
-			//if an error occurs
-			//(if there was no selected text), call findText
-			findText();
-		}
-		
-		//if obtaining selected text was successful
-		if(success)
-		{
-			//if selected text equals lastFind
-			//(if the selected text is acceptable to replace)
-			if(selected.equals(lastFind))
+			//record replace for flight recordings, if the recorder has started
+			AgilitextEvents.Replace event=AgilitextEvents.isRecording()? new AgilitextEvents.Replace() : null;
+			if(event!=null)
 			{
-				//replace selection with replaceField text
-				textArea.replaceSelection(replaceField.getText());
-				//call findText again to move to another occurrence
-				findText();
+				event.begin();
 			}
-			else
+			//replace selection with replaceField text
+			textArea.replaceSelection(replaceField.getText());
+			if(event!=null)
 			{
-				//set success to false
-				success=false;
-				//call findText
-				findText();
+				event.query=engine.getQuery();
+				event.matches=1;
+				event.replacedChars=engine.length();
+				event.commit();
 			}
+			//set success to true
+			success=true;
 		}
+		//call findText to move to another occurrence
+		findText();
 		
 		return success;
 	}
 	
 	/**
-	 * replaceAll: Used to replace all occurrences of find text
+	 * replaceAll: Used to replace all occurrences of find text in a single pass and a single undoable edit,
+	 * planned in the background
 	 */
 	public void replaceAll()
 	{
-		do
+		//if findField contains text, replace it with replaceField's text
+		if(!findField.getText().isEmpty())
+		{
+			replaceAll(findField.getText(), replaceField.getText());
+		}
+	}
+	
+	/**
+	 * replaceAll: Plans the replacement of every occurrence of a query, ignoring case, in a snapshot of current text
+	 * @param find: Text to replace
+	 * @param replacement: Text replacing each occurrence
+	 */
+	private void replaceAll(String find, String replacement)
+	{
+		//plan in the background, superseding any plan for older text
+		replacer=new AgilitextReplacer(this, textArea.getBuffer(), new AgilitextSearchEngine(find, true), replacement);
+		textArea.getScheduler().submit("replace", "Replacing \""+find+"\"", replacer, true);
+	}
+	
+	/**
+	 * replaceFinished: Called by a replacer on the event thread once its plan is ready or it has been cancelled
+	 * @param finished: The replacer that finished
+	 * @param plan: Planned replacement, or null if there is nothing to replace or replacing was cancelled
+	 */
+	protected void replaceFinished(AgilitextReplacer finished, AgilitextSearchEngine.Replacement plan)
+	{
+		//if replacer has been replaced by a newer one, ignore it
+		if(finished!=replacer)
 		{
-			//call replaceText
-			replaceText();
+			return;
+		}
+		replacer=null;
+		
+		//if find exists within text
+		if(plan!=null)
+		{
+			//if text has changed while planning, plan again for current text
+			if(!finished.isCurrent(textArea.getBuffer()))
+			{
+				replaceAll(finished.getEngine().getQuery(), finished.getReplacement());
+				return;
+			}
+			//record replace for flight recordings, if the recorder has started
+			AgilitextEvents.Replace event=AgilitextEvents.isRecording()? new AgilitextEvents.Replace() : null;
+			if(event!=null)
+			{
+				event.begin();
+			}
+			//replace each occurrence in one transaction
+			textArea.replaceAsSingleEdit(plan);
+			if(event!=null)
+			{
+				event.query=finished.getEngine().getQuery();
+				event.matches=plan.count;
+				event.replacedChars=plan.count*plan.length;
+				event.commit();
+			}
+			//next find starts from the top
+			lastIndex=0;
 		}
-		//as long as lastIndex is not 0
-		while(lastIndex!=0);
 	}
 	
 	/**
-	 * count: Used to count all occurrences of find text
+	 * count: Used to count all occurrences of find text in the background
 	 */
 	public void count()
 	{
-		//declare i and lastIndex
-		int i;
-		int lastIndex;
-		//initialize text to target textArea's text
-		String text=textArea.getText();
 		//initialize find to findField's text
 		String find=findField.getText();
+		AgilitextTextBuffer buffer=textArea.getBuffer();
 		
 		//if text and find are not empty
-		if((!(text.isEmpty())&&(!(find.isEmpty()))))
+		if(buffer.length()>1&&!find.isEmpty())
 		{
-			//set i and lastIndex to 0
-			i=0;
-			lastIndex=0;
-			//set text and find to their lowercase equivalents
-			text=text.toLowerCase();
-			find=find.toLowerCase();
-			
-			//while lastIndex is not -1
-			while(lastIndex!=-1)
+			//count a snapshot of current text, ignoring case, while editing continues, superseding any running count
+			counter=new AgilitextCounter(this, textArea.snapshot(), new AgilitextSearchEngine(find, true));
+			textArea.getScheduler().submit("count", "Counting \""+find+"\"", counter, true);
+		}
+	}
+	
+	/**
+	 * countFinished: Called by a counter on the event thread once it has completed or been cancelled
+	 * @param finished: The counter that finished
+	 * @param completed: true if the count completed
+	 */
+	protected void countFinished(AgilitextCounter finished, boolean completed)
+	{
+		//if counter has been replaced by a newer one, ignore it
+		if(finished!=counter)
+		{
+			return;
+		}
+		counter=null;
+		
+		//if count completed, display a JOptionPane with count result
+		if(completed)
+		{
+			try
 			{
-				//set lastIndex to index of find from itself
-			    lastIndex=text.indexOf(find,lastIndex);
-			    
-			    //if lastIndex does not equal -1
-			    if(lastIndex!=-1)
-			    {
-			    	//increment i
-			        i++;
-			        //set lastIndex to itself plus find's length
-			        lastIndex+=find.length();
-			    }
+				int i=finished.get();
+				String find=finished.getEngine().getQuery();
+				JOptionPane.showMessageDialog(null, "\""+find+"\" occurs in document "+i+" time"+((i!=1)? "s":""), "About", JOptionPane.INFORMATION_MESSAGE);
+			}
+			catch(Exception e)
+			{
+				//counter has completed, if an error occurs print stack trace
+				e.printStackTrace();
 			}
-			
-			//display a JOptionPane with count result
-			JOptionPane.showMessageDialog(null, "\""+find+"\" occurs in document "+i+" time"+((i!=1)? "s":""), "About", JOptionPane.INFORMATION_MESSAGE);
 		}
 	}
 }
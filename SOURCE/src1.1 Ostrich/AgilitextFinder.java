@@ -0,0 +1,179 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+/**
+ * AgilitextFinder: Boyer-Moore-Horspool matcher for a single query, folding case one
+ * char at a time so that text never has to be copied or lowercased
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFinder
+{
+	//size of skip table, chars are hashed by their low bits
+	private static final int TABLE_SIZE=256;
+
+	//private objects
+	private String query;
+	private char[] pattern;
+	private boolean ignoreCase;
+	private int[] skip;
+
+	/**
+	 * AgilitextFinder: Constructor
+	 * @param query: The text to find
+	 * @param ignoreCase: true to match regardless of case
+	 */
+	public AgilitextFinder(String query, boolean ignoreCase)
+	{
+		this.query=query;
+		this.ignoreCase=ignoreCase;
+
+		//fold pattern once
+		int m=query.length();
+		pattern=new char[m];
+		for(int i=0;i<m;i++)
+		{
+			pattern[i]=fold(query.charAt(i));
+		}
+
+		//shift by pattern length unless a char of the pattern, other than its last, shares the hash
+		skip=new int[TABLE_SIZE];
+		for(int i=0;i<TABLE_SIZE;i++)
+		{
+			skip[i]=Math.max(m, 1);
+		}
+		for(int i=0;i<m-1;i++)
+		{
+			skip[pattern[i]&(TABLE_SIZE-1)]=m-1-i;
+		}
+	}
+
+	/**
+	 * getQuery: Used to get the text being found
+	 * @return: Query text
+	 */
+	public String getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * length: Used to get the length of a match
+	 * @return: Query length
+	 */
+	public int length()
+	{
+		return pattern.length;
+	}
+
+	/**
+	 * indexOf: Finds the first match at or after an offset
+	 * @param text: The text to search
+	 * @param from: Offset to start from
+	 * @return: Offset of match, or -1 if there is none
+	 */
+	public int indexOf(CharSequence text, int from)
+	{
+		return indexOf(text, from, text.length());
+	}
+
+	/**
+	 * indexOf: Finds the first match starting at or after an offset and ending at or before a limit
+	 * @param text: The text to search
+	 * @param from: Offset to start from
+	 * @param to: Offset matches must end by
+	 * @return: Offset of match, or -1 if there is none
+	 */
+	public int indexOf(CharSequence text, int from, int to)
+	{
+		int m=pattern.length;
+		//if query is empty, there is nothing to find
+		if(m==0)
+		{
+			return -1;
+		}
+		char last=pattern[m-1];
+		int end=Math.min(to, text.length())-m;
+
+		//compare last char first, then the rest backwards, shifting by the char under the last position
+		for(int i=Math.max(from, 0);i<=end;)
+		{
+			char c=fold(text.charAt(i+m-1));
+			if(c==last)
+			{
+				int j=m-2;
+				while(j>=0&&fold(text.charAt(i+j))==pattern[j])
+				{
+					j--;
+				}
+				if(j<0)
+				{
+					return i;
+				}
+			}
+			i+=skip[c&(TABLE_SIZE-1)];
+		}
+		return -1;
+	}
+
+	/**
+	 * matches: Used to determine if a String is a match for the query
+	 * @param s: String to check, eg. selected text
+	 * @return: true if String matches
+	 */
+	public boolean matches(String s)
+	{
+		//if lengths differ, String cannot match
+		if(s==null||s.length()!=pattern.length)
+		{
+			return false;
+		}
+		for(int i=0;i<pattern.length;i++)
+		{
+			if(fold(s.charAt(i))!=pattern[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * fold: Folds case of a char when ignoring case
+	 * @param c: Char to fold
+	 * @return: Folded char
+	 */
+	private char fold(char c)
+	{
+		//if case matters, use char as is
+		if(!ignoreCase)
+		{
+			return c;
+		}
+		//fold ASCII directly, other chars through their upper and lower case forms
+		if(c<128)
+		{
+			return (c>='A'&&c<='Z')? (char)(c+32) : c;
+		}
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
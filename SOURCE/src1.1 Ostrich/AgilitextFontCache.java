@@ -0,0 +1,252 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AgilitextFontCache: File holding the font family names found by the last enumeration,
+ * along with the modification times of the font directories they were found in
+ *
+ * Adding or removing a font file changes the modification time of the directory holding it,
+ * so the cached names are used only while every directory in the font directory trees has the
+ * time it had when the names were written. Where fonts are found through fontconfig, its
+ * configuration files and cache directories are checked too, as they change when fonts are
+ * installed elsewhere or the font configuration is edited. Checking them takes a file system call
+ * per directory, where enumerating fonts opens every font file.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFontCache
+{
+	//cache file identifier
+	private static final int MAGIC=0x41474632;
+
+	//deepest directory level walked inside a font directory, bounding symbolic link loops
+	private static final int MAX_DEPTH=8;
+
+	//private objects
+
+	//cache file
+	private File file;
+
+	/**
+	 * AgilitextFontCache: Constructor
+	 * @param file: The cache file
+	 */
+	public AgilitextFontCache(File file)
+	{
+		this.file=file;
+	}
+
+	/**
+	 * load: Reads cached family names if fonts have not changed since they were written
+	 * @return: Family names in list order, or null if cache is missing or stale
+	 */
+	public String[] load()
+	{
+		//if there is no cache yet, fonts must be enumerated
+		if(!file.isFile())
+		{
+			return null;
+		}
+		try(DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if(in.readInt()!=MAGIC||!in.readUTF().equals(System.getProperty("java.home")))
+			{
+				return null;
+			}
+
+			//if any directory or configuration file was added, removed or modified, cache is stale
+			List<File> dirs=getWatchedFiles();
+			if(in.readInt()!=dirs.size())
+			{
+				return null;
+			}
+			for(File dir : dirs)
+			{
+				if(!in.readUTF().equals(dir.getPath())||in.readLong()!=dir.lastModified())
+				{
+					return null;
+				}
+			}
+
+			String[] names=new String[in.readInt()];
+			for(int i=0;i<names.length;i++)
+			{
+				names[i]=in.readUTF();
+			}
+			return names;
+		}
+		catch(IOException e)
+		{
+			//if cache is unreadable, print error and enumerate fonts instead
+			System.err.println("Font cache could not be read: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * save: Writes family names along with the current state of the font directories
+	 * @param names: Family names in list order
+	 */
+	public void save(String[] names)
+	{
+		//write a temporary file of its own and move it over the cache, so a partly written cache is
+		//never read and instances saving at once do not write the same file
+		Path temp=null;
+		try
+		{
+			temp=Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+			try(DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()))))
+			{
+				out.writeInt(MAGIC);
+				out.writeUTF(System.getProperty("java.home"));
+				List<File> dirs=getWatchedFiles();
+				out.writeInt(dirs.size());
+				for(File dir : dirs)
+				{
+					out.writeUTF(dir.getPath());
+					out.writeLong(dir.lastModified());
+				}
+				out.writeInt(names.length);
+				for(String name : names)
+				{
+					out.writeUTF(name);
+				}
+			}
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error, fonts are enumerated again next time
+			System.err.println("Font cache could not be written: "+e.getMessage());
+			if(temp!=null)
+			{
+				temp.toFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * getWatchedFiles: Used to list the font directory trees of this platform, along with the
+	 * fontconfig configuration files and cache directories where fonts are found through fontconfig
+	 * @return: Existing files and directories, in a stable order
+	 */
+	private static List<File> getWatchedFiles()
+	{
+		String home=System.getProperty("user.home");
+		String os=System.getProperty("os.name", "").toLowerCase();
+		List<File> roots=new ArrayList<File>();
+		List<File> config=new ArrayList<File>();
+		roots.add(new File(System.getProperty("java.home"), "lib"+File.separator+"fonts"));
+		if(os.startsWith("windows"))
+		{
+			roots.add(new File(System.getenv("WINDIR")==null? "C:\\Windows" : System.getenv("WINDIR"), "Fonts"));
+			if(System.getenv("LOCALAPPDATA")!=null)
+			{
+				roots.add(new File(System.getenv("LOCALAPPDATA"), "Microsoft\\Windows\\Fonts"));
+			}
+		}
+		else if(os.startsWith("mac"))
+		{
+			roots.add(new File("/System/Library/Fonts"));
+			roots.add(new File("/Library/Fonts"));
+			roots.add(new File(home, "Library/Fonts"));
+		}
+		else
+		{
+			roots.add(new File("/usr/share/fonts"));
+			roots.add(new File("/usr/local/share/fonts"));
+			roots.add(new File(home, ".fonts"));
+			roots.add(new File(home, ".local/share/fonts"));
+
+			//fontconfig configuration, naming further font directories, and its caches,
+			//rebuilt whenever fonts are installed
+			String configHome=System.getenv("XDG_CONFIG_HOME")==null? home+"/.config" : System.getenv("XDG_CONFIG_HOME");
+			String cacheHome=System.getenv("XDG_CACHE_HOME")==null? home+"/.cache" : System.getenv("XDG_CACHE_HOME");
+			config.add(new File("/etc/fonts/fonts.conf"));
+			config.add(new File("/etc/fonts/local.conf"));
+			config.add(new File("/etc/fonts/conf.d"));
+			config.add(new File(configHome, "fontconfig/fonts.conf"));
+			config.add(new File(configHome, "fontconfig/conf.d"));
+			config.add(new File(home, ".fonts.conf"));
+			config.add(new File("/var/cache/fontconfig"));
+			config.add(new File(cacheHome, "fontconfig"));
+		}
+
+		List<File> files=new ArrayList<File>();
+		for(File root : roots)
+		{
+			//skip directories this system does not have
+			if(root.isDirectory())
+			{
+				addTree(root, files, 0);
+			}
+		}
+		for(File entry : config)
+		{
+			//skip configuration this system does not have
+			if(entry.exists())
+			{
+				files.add(entry);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * addTree: Adds a directory and every directory inside it, parents before their children
+	 * @param dir: The directory to add
+	 * @param dirs: List the directories are added to
+	 * @param depth: Level of the directory below its font directory
+	 */
+	private static void addTree(File dir, List<File> dirs, int depth)
+	{
+		dirs.add(dir);
+		File[] children=dir.listFiles();
+		if(children==null||depth==MAX_DEPTH)
+		{
+			return;
+		}
+		Arrays.sort(children);
+		for(File child : children)
+		{
+			if(child.isDirectory())
+			{
+				addTree(child, dirs, depth+1);
+			}
+		}
+	}
+}
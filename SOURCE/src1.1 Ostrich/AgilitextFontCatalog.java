@@ -0,0 +1,178 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.DefaultListModel;
+import javax.swing.SwingWorker;
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AgilitextFontCatalog: List of font family names discovered off the event thread, filling a
+ * list model in batches so that font lists show families as soon as they are found
+ *
+ * Names are read from a cache file while the fonts installed have not changed, and fonts are
+ * only enumerated, and the cache rewritten, when they have.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFontCatalog extends SwingWorker<Void, String>
+{
+	//private objects
+
+	//graphics environment the families come from, and cache of its last enumeration
+	private GraphicsEnvironment graphics;
+	private AgilitextFontCache cache;
+
+	//families registered by the application, which are not cached
+	private Set<String> registered;
+
+	//family names in list order, and the same names for lookup, used on the event thread
+	private DefaultListModel<String> model;
+	private HashSet<String> families;
+
+	//list index the next enumerated family is inserted at or after
+	private int next;
+
+	/**
+	 * AgilitextFontCatalog: Constructor
+	 * @param graphics: The graphics environment to enumerate
+	 * @param cache: The cache of family names
+	 */
+	public AgilitextFontCatalog(GraphicsEnvironment graphics, AgilitextFontCache cache)
+	{
+		this.graphics=graphics;
+		this.cache=cache;
+		registered=ConcurrentHashMap.newKeySet();
+		model=new DefaultListModel<String>();
+		families=new HashSet<String>();
+	}
+
+	/**
+	 * getModel: Used to get the list model filled with family names
+	 * @return: Family name list model
+	 */
+	public DefaultListModel<String> getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * contains: Used to determine if a family has been discovered, on the event thread
+	 * @param family: Family name
+	 * @return: true if family is listed
+	 */
+	public boolean contains(String family)
+	{
+		return families.contains(family);
+	}
+
+	/**
+	 * start: Begins enumerating families in the background, once
+	 */
+	public void start()
+	{
+		if(getState()==StateValue.PENDING)
+		{
+			execute();
+		}
+	}
+
+	/**
+	 * add: Lists a family registered by the application, keeping list sorted, on the event thread
+	 * @param family: Family name
+	 */
+	public void add(String family)
+	{
+		registered.add(family);
+		//if family is already listed, do nothing
+		if(!families.add(family))
+		{
+			return;
+		}
+		int i=0;
+		while(i<model.getSize()&&model.get(i).compareToIgnoreCase(family)<0)
+		{
+			i++;
+		}
+		model.add(i, family);
+		//if family lands before the merge point, the merge point moves with it
+		if(i<next)
+		{
+			next++;
+		}
+	}
+
+	/**
+	 * doInBackground: Reads family names from the cache, or enumerates them if fonts have changed
+	 * @return: Nothing
+	 */
+	protected Void doInBackground()
+	{
+		String[] names=cache.load();
+		//if cache is missing or stale, enumerate families and cache those not registered by the application
+		if(names==null)
+		{
+			names=graphics.getAvailableFontFamilyNames();
+			List<String> installed=new ArrayList<String>(names.length);
+			for(String name : names)
+			{
+				if(!registered.contains(name))
+				{
+					installed.add(name);
+				}
+			}
+			cache.save(installed.toArray(new String[installed.size()]));
+		}
+
+		//family names are sorted, publish them in order
+		for(int i=0;i<names.length&&!isCancelled();i++)
+		{
+			publish(names[i]);
+		}
+		return null;
+	}
+
+	/**
+	 * process: Merges published families into the list model on the event thread
+	 * @param names: Families published since the last call
+	 */
+	protected void process(List<String> names)
+	{
+		for(String name : names)
+		{
+			//a family registered by the application may already be listed
+			if(families.add(name))
+			{
+				//step over registered families sorting before this one
+				while(next<model.getSize()&&model.get(next).compareToIgnoreCase(name)<0)
+				{
+					next++;
+				}
+				model.add(next++, name);
+			}
+		}
+	}
+}
@@ -24,7 +24,8 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.util.Vector;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * AgilitextFindReplace: Class used to construct a find replace String window
@@ -33,7 +34,7 @@ import java.util.Vector;
  * @version 1.1
  * 
  * Date Created: 08/09/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextFontManager extends JDialog
 {
@@ -69,23 +70,29 @@ public class AgilitextFontManager extends JDialog
 	//target component
 	private JComponent target;
 	
-	//vectors
-	private Vector<String> fonts;
+	//font family catalog, filled in the background
+	private AgilitextFontCatalog catalog;
+	
+	//recently derived fonts by family, style and size, least recently used first
+	private LinkedHashMap<String, Font> derived;
 	
 	//fonts
-	private Font[] systemFonts;
 	private Font targetFont;
 	private Font defaultFont;
 	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
+	//most derived fonts kept
+	private static final int MAX_DERIVED=32;
+	
 	/**
 	 * AgilitextFontManager: Constructor
 	 * @param parent: The parent JFrame used to set position of window
 	 * @param target: The target JComponent to set selected fonts
+	 * @param defaultFont: The Font object reset restores
 	 */
-	public AgilitextFontManager(JFrame parent, JComponent target)
+	public AgilitextFontManager(JFrame parent, JComponent target, Font defaultFont)
 	{
 		//call super constructor using parent JFrame with no modal window priority
 		super(parent, false);
@@ -98,11 +105,23 @@ public class AgilitextFontManager extends JDialog
 		this.target=target;
 		//set targetFont to current target font
 		targetFont=target.getFont();
-		//set defaultFont to current targetFont
-		defaultFont=targetFont;
+		//set defaultFont to passed default font
+		this.defaultFont=defaultFont;
+		
+		//initialize derived font cache, dropping least recently used font when full
+		derived=new LinkedHashMap<String, Font>(MAX_DERIVED*2, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			protected boolean removeEldestEntry(Map.Entry<String, Font> eldest)
+			{
+				return size()>MAX_DERIVED;
+			}
+		};
 		
-		//get and initialize system fonts from Appsistant
-		getSystemFont();
+		//get font family catalog from Appsistant, listing families found so far
+		catalog=Appsistant.getFontCatalog();
+		catalog.start();
 		
 		//build panels
 		buildFontPanel();
@@ -130,25 +149,6 @@ public class AgilitextFontManager extends JDialog
 	    fontScroll.requestFocus();
 	}
 	
-	/**
-	 * getSystemFonts: Used to obtain system font array and build fonts name Vector
-	 */
-	private void getSystemFont()
-	{
-		//set systemFonts to Appsistant's systemFont array
-		systemFonts=Appsistant.getSystemFonts();
-		
-		//initialize fonts name Vector
-		fonts=new Vector<String>();
-		
-		//iterate through systemFonts
-		for(int i=0;i<systemFonts.length;i++)
-		{
-			//add each font name to fonts Vector
-			fonts.add(systemFonts[i].getName());
-		}
-	}
-	
 	/**
 	 * buildFontPanel: Initializes and constructs font panel
 	 */
@@ -161,8 +161,10 @@ public class AgilitextFontManager extends JDialog
 		//set font panel border
 		fontPanel.setBorder(BorderFactory.createEmptyBorder(10,5,10,5));
 		
-		//initialize fontList
-		fontList=new JList<String>(fonts);
+		//initialize fontList on catalog's model, which grows as families are found
+		fontList=new JList<String>(catalog.getModel());
+		//show each family in its own face, drawn in the background
+		new AgilitextFontRenderer(fontList);
 		//inital fontScroll and set blank corner button
 		fontScroll=new JScrollPane(fontList);
 		fontScroll.setCorner(ScrollPaneConstants.LOWER_RIGHT_CORNER,new JButton()); 
@@ -232,16 +234,22 @@ public class AgilitextFontManager extends JDialog
 	 */
 	public void getTargetFont()
 	{
-		//if fonts name Vector contains targetFont's name
-		if(fonts.contains(targetFont.getName()))
+		//if catalog lists targetFont's name
+		if(catalog.contains(targetFont.getName()))
 		{
 			//set fontList's selected value to targetFont's name
 			fontList.setSelectedValue(targetFont.getName(),true);
 		}
+		//if catalog lists targetFont's family
+		else if(catalog.contains(targetFont.getFamily()))
+		{
+			//set fontList's selected value to targetFont's family
+			fontList.setSelectedValue(targetFont.getFamily(),true);
+		}
 		else
 		{
-			//if name is not present in list, set selected value to original dialog font
-			fontList.setSelectedValue("Dialog.plain",true);
+			//if neither is present in list, set selected value to original dialog font
+			fontList.setSelectedValue(Font.DIALOG,true);
 		}
 		
 		//make sure selection is visible in scrollable list
@@ -265,8 +273,9 @@ public class AgilitextFontManager extends JDialog
 		//(if size was returned as a valid number)
 		if(size!=-1)
 		{
-			//set f to fontList's selected index of systemFonts array resized to specified size
-			f=systemFonts[fontList.getSelectedIndex()].deriveFont(size);
+			//set f to the selected family resized to specified size, keeping targetFont's face
+			//if its family is selected or nothing is
+			f=derive(selectedFont(targetFont), size);
 			//set targetFont to f
 			targetFont=f;
 			//set target's font to f
@@ -283,12 +292,47 @@ public class AgilitextFontManager extends JDialog
 	 */
 	public void setSampleFont()
 	{
-		//set saampleField font to be fontList's selected index of systemFonts array resized to 16.0
-		sampleField.setFont(systemFonts[fontList.getSelectedIndex()].deriveFont(16f));
+		//set sampleField font to be fontList's selected family resized to 16.0
+		sampleField.setFont(derive(selectedFont(sampleField.getFont()), 16f));
 		//reset text in sample field to default
 		sampleField.setText("Test");
 	}
 	
+	/**
+	 * selectedFont: Used to get a Font object of the family selected in fontList
+	 * @param current: Font object returned if its family or name is selected, or nothing is
+	 * @return: Font object of selected family
+	 */
+	private Font selectedFont(Font current)
+	{
+		String selected=fontList.getSelectedValue();
+		//if nothing is selected, or current font is, keep current font
+		if(selected==null||selected.equals(current.getFamily())||selected.equals(current.getName()))
+		{
+			return current;
+		}
+		return new Font(selected, Font.PLAIN, 1);
+	}
+	
+	/**
+	 * derive: Used to get a Font object resized, reusing one derived before if it is cached
+	 * @param base: Font object to resize
+	 * @param size: Font size
+	 * @return: Resized Font object
+	 */
+	private Font derive(Font base, float size)
+	{
+		String key=base.getName()+"/"+base.getStyle()+"/"+size;
+		Font f=derived.get(key);
+		//if font was not derived recently, derive and cache it
+		if(f==null)
+		{
+			f=base.deriveFont(size);
+			derived.put(key, f);
+		}
+		return f;
+	}
+	
 	/**
 	 * setVisible: Used to display or hide window
 	 * @param vis: True if set to visible and false if set to invisible
@@ -319,31 +363,18 @@ public class AgilitextFontManager extends JDialog
 	}
 	
 	/**
-	 * setLastFont: Used to assign last used Font object to target text area
+	 * getLastFont: Used to obtain the last used Font object, without building a font window
+	 * @return: Last used Font object, or null if none was saved
 	 */
-	public void setLastFont()
+	public static Font getLastFont()
 	{
-		
 	    //if last font name and last font size are valid values
 	    if(Appsistant.LAST_FONT_NAME!=null&&Appsistant.LAST_FONT_SIZE!=-1)
 	    {
-	    	try
-	    	{
-	    		//attempt to set targetFont to be the index of last font name in fonts name Vector in 
-	    		//systemFonts array resized using last font size
-		    	targetFont=systemFonts[fonts.indexOf(Appsistant.LAST_FONT_NAME)].deriveFont(Appsistant.LAST_FONT_SIZE);
-	    	}
-	    	catch(ArrayIndexOutOfBoundsException e)
-	    	{
-	    		//if an error occurs, call resetTargetFont
-	    		resetTargetFont();
-	    		//set targetFont to itself resized with last font size
-	    		targetFont=targetFont.deriveFont(Appsistant.LAST_FONT_SIZE);
-	    	}
-	    	//load target targetFont into GUI and assign it to target text area 
-	    	getTargetFont();
-	    	setTargetFont();
+	    	//create last font name resized using last font size, which does not wait for
+	    	//fonts to be enumerated, unknown names fall back to the dialog font
+	    	return new Font(Appsistant.LAST_FONT_NAME, Font.PLAIN, 1).deriveFont(Appsistant.LAST_FONT_SIZE);
 	    }
-	    
+	    return null;
 	}
 }
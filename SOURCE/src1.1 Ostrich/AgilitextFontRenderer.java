@@ -0,0 +1,429 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.Icon;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * AgilitextFontRenderer: List cell renderer showing each font family name in its own face
+ *
+ * Names are drawn into small image tiles on a background thread and kept in a cache of recently
+ * shown tiles. A row whose tile is not ready shows its name in the list's font until the tile
+ * is drawn and the row repainted. Rows have a fixed size, so the list only asks for the rows
+ * in view, and only those rows and the rows a page either side of them are drawn ahead.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextFontRenderer extends DefaultListCellRenderer
+{
+	//initialize serialization long
+	private static final long serialVersionUID = 1L;
+
+	//most tiles kept
+	private static final int MAX_TILES=256;
+
+	//rows either side of the view drawn ahead of scrolling
+	private static final int PREFETCH=24;
+
+	//name used to size rows, and space around tile text
+	private static final String PROTOTYPE="Preview Font Family Name";
+	private static final int PAD=2;
+
+	//private objects
+
+	//list being rendered
+	private JList<String> list;
+
+	//drawn tiles by name, size and color, least recently used first, guarded by itself
+	private LinkedHashMap<String, BufferedImage> tiles;
+
+	//requests waiting to be drawn, newest first, and their keys, guarded by queue
+	private ArrayDeque<Request> queue;
+	private HashSet<String> queued;
+	private boolean draining;
+
+	//size of tiles, filling a row inside its border
+	private int tileWidth;
+	private int tileHeight;
+
+	//rows in view when last painted, read by the drawing thread
+	private volatile int first=-1;
+	private volatile int last=-1;
+
+	//thread drawing tiles
+	private ExecutorService painter;
+
+	//icon showing the tile of the row being rendered
+	private TileIcon icon;
+
+	/**
+	 * AgilitextFontRenderer: Constructor, installing itself on a list
+	 * @param list: The list of family names to render
+	 */
+	public AgilitextFontRenderer(JList<String> list)
+	{
+		this.list=list;
+		tiles=new LinkedHashMap<String, BufferedImage>(MAX_TILES*2, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest)
+			{
+				return size()>MAX_TILES;
+			}
+		};
+		queue=new ArrayDeque<Request>();
+		queued=new HashSet<String>();
+		icon=new TileIcon();
+
+		//initialize daemon painter thread
+		painter=Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t=new Thread(r, "Agilitext Font Preview");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		//size rows now and whenever list's font changes
+		updateCellSize();
+		list.addPropertyChangeListener("font", new PropertyChangeListener()
+		{
+			/**
+			 * propertyChange: Called to handle list font changes
+			 * @param e: Property change event
+			 */
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				updateCellSize();
+			}
+		});
+		list.setCellRenderer(this);
+	}
+
+	/**
+	 * getListCellRendererComponent: Used to configure renderer for a row
+	 * @param list: The list being painted
+	 * @param value: Family name of the row
+	 * @param index: Row index
+	 * @param isSelected: true if row is selected
+	 * @param cellHasFocus: true if row has focus
+	 * @return: This renderer
+	 */
+	public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus)
+	{
+		super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+		//if row is not a listed family, render it as plain text
+		if(!(value instanceof String)||index<0)
+		{
+			return this;
+		}
+
+		//if rows in view changed, draw rows around them ahead of scrolling
+		int firstVisible=list.getFirstVisibleIndex();
+		int lastVisible=list.getLastVisibleIndex();
+		if(firstVisible!=first||lastVisible!=last)
+		{
+			first=firstVisible;
+			last=lastVisible;
+			prefetch();
+		}
+
+		//if row's tile is drawn, show it, otherwise show plain name until it is
+		String name=(String)value;
+		BufferedImage tile=getTile(key(name, getForeground()));
+		if(tile!=null)
+		{
+			icon.tile=tile;
+			setIcon(icon);
+			setText(null);
+		}
+		else
+		{
+			request(name, index, getForeground(), true);
+		}
+		return this;
+	}
+
+	/**
+	 * updateCellSize: Sizes rows to fit the prototype name in the list's font, with room for taller faces
+	 */
+	private void updateCellSize()
+	{
+		FontMetrics fm=list.getFontMetrics(list.getFont());
+		Insets insets=getInsets();
+		tileWidth=fm.stringWidth(PROTOTYPE)+2*PAD;
+		tileHeight=fm.getHeight()*3/2+2*PAD;
+		list.setFixedCellWidth(tileWidth+insets.left+insets.right);
+		list.setFixedCellHeight(tileHeight+insets.top+insets.bottom);
+	}
+
+	/**
+	 * prefetch: Requests tiles of unselected rows within a page of the view
+	 */
+	private void prefetch()
+	{
+		int size=list.getModel().getSize();
+		Color color=list.getForeground();
+		//request nearest rows first, so they are drawn first
+		for(int d=1;d<=PREFETCH;d++)
+		{
+			int above=first-d;
+			int below=last+d;
+			if(above>=0&&first>=0)
+			{
+				request(list.getModel().getElementAt(above), above, color, false);
+			}
+			if(below<size&&last>=0)
+			{
+				request(list.getModel().getElementAt(below), below, color, false);
+			}
+		}
+	}
+
+	/**
+	 * request: Queues a row's tile to be drawn if it is not drawn or queued already
+	 * @param name: Family name of the row
+	 * @param index: Row index
+	 * @param color: Text color of the row
+	 * @param visible: true if row is in view
+	 */
+	private void request(String name, int index, Color color, boolean visible)
+	{
+		Request r=new Request(name, index, color, list.getFont(), tileHeight, tileWidth);
+		if(getTile(r.key)!=null)
+		{
+			return;
+		}
+		synchronized(queue)
+		{
+			if(!queued.add(r.key))
+			{
+				return;
+			}
+			//rows in view are drawn before rows drawn ahead
+			if(visible)
+			{
+				queue.addFirst(r);
+			}
+			else
+			{
+				queue.addLast(r);
+			}
+			//if painter is idle, start it draining the queue
+			if(!draining)
+			{
+				draining=true;
+				painter.execute(new Runnable()
+				{
+					public void run()
+					{
+						drain();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * drain: Draws queued tiles on the painter thread until the queue is empty
+	 */
+	private void drain()
+	{
+		while(true)
+		{
+			Request r;
+			synchronized(queue)
+			{
+				r=queue.pollFirst();
+				if(r==null)
+				{
+					draining=false;
+					return;
+				}
+				queued.remove(r.key);
+			}
+
+			//if row scrolled out of reach before its turn, skip it
+			if(r.index<first-PREFETCH||r.index>last+PREFETCH)
+			{
+				continue;
+			}
+			putTile(r.key, draw(r));
+
+			//repaint row on the event thread, or the whole list if rows have moved since
+			final Request done=r;
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				public void run()
+				{
+					if(done.index<list.getModel().getSize()&&done.name.equals(list.getModel().getElementAt(done.index)))
+					{
+						Rectangle bounds=list.getCellBounds(done.index, done.index);
+						if(bounds!=null)
+						{
+							list.repaint(bounds);
+						}
+					}
+					else
+					{
+						list.repaint();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * draw: Draws a family name in its own face, or in the list's font if the face lacks its glyphs
+	 * @param r: Requested row
+	 * @return: Tile holding the name
+	 */
+	private static BufferedImage draw(Request r)
+	{
+		Font face=new Font(r.name, Font.PLAIN, 1).deriveFont(r.font.getSize2D());
+		if(face.canDisplayUpTo(r.name)!=-1)
+		{
+			face=r.font;
+		}
+
+		BufferedImage tile=new BufferedImage(r.width, r.height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d=tile.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setFont(face);
+		g2d.setColor(r.color);
+		//center text vertically, keeping its baseline inside the tile
+		FontMetrics fm=g2d.getFontMetrics();
+		int baseline=Math.min((r.height-fm.getAscent()-fm.getDescent())/2+fm.getAscent(), r.height-PAD);
+		g2d.drawString(r.name, PAD, Math.max(baseline, PAD));
+		g2d.dispose();
+		return tile;
+	}
+
+	/**
+	 * key: Used to get the cache key of a tile
+	 * @param name: Family name
+	 * @param color: Text color
+	 * @return: Key of the name drawn in color at the list's font size
+	 */
+	private String key(String name, Color color)
+	{
+		return name+"/"+list.getFont().getSize2D()+"/"+color.getRGB();
+	}
+
+	/**
+	 * getTile: Used to get a drawn tile
+	 * @param key: Tile key
+	 * @return: Tile or null if it is not drawn
+	 */
+	private BufferedImage getTile(String key)
+	{
+		synchronized(tiles)
+		{
+			return tiles.get(key);
+		}
+	}
+
+	/**
+	 * putTile: Caches a drawn tile
+	 * @param key: Tile key
+	 * @param tile: Drawn tile
+	 */
+	private void putTile(String key, BufferedImage tile)
+	{
+		synchronized(tiles)
+		{
+			tiles.put(key, tile);
+		}
+	}
+
+	/**
+	 * Request: Row whose tile is to be drawn, with the list state it is drawn for
+	 */
+	private class Request
+	{
+		private String name;
+		private int index;
+		private Color color;
+		private Font font;
+		private int height;
+		private int width;
+		private String key;
+
+		private Request(String name, int index, Color color, Font font, int height, int width)
+		{
+			this.name=name;
+			this.index=index;
+			this.color=color;
+			this.font=font;
+			this.height=height;
+			this.width=width;
+			key=key(name, color);
+		}
+	}
+
+	/**
+	 * TileIcon: Icon painting the tile of the row being rendered
+	 */
+	private static class TileIcon implements Icon
+	{
+		private BufferedImage tile;
+
+		public int getIconWidth()
+		{
+			return tile.getWidth();
+		}
+
+		public int getIconHeight()
+		{
+			return tile.getHeight();
+		}
+
+		public void paintIcon(Component c, Graphics g, int x, int y)
+		{
+			g.drawImage(tile, x, y, null);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * AgilitextGradient: Vertical background gradient of a component, from a brighter to a darker
+ * shade of its background color, cached as a one pixel wide image that is stretched over the
+ * area being repainted
+ *
+ * The gradient only changes with height, so the image holds one row per pixel of height,
+ * up to a limit past which rows are scaled. It is rebuilt only when the component's height or
+ * background color changes.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextGradient
+{
+	//most rows held by the cached image
+	private static final int MAX_ROWS=512;
+
+	//private objects
+
+	//cached gradient and the height and color it was built for
+	private BufferedImage strip;
+	private int height;
+	private Color base;
+
+	/**
+	 * paint: Paints the gradient over the clip area of a component
+	 * @param g2d: Graphics of the component
+	 * @param component: The component being painted
+	 */
+	public void paint(Graphics2D g2d, JComponent component)
+	{
+		int h=component.getHeight();
+		//if component has no area, there is nothing to paint
+		if(h<=0||component.getWidth()<=0)
+		{
+			return;
+		}
+
+		//if component was resized or recolored, rebuild cached gradient
+		Color background=component.getBackground();
+		if(strip==null||h!=height||!background.equals(base))
+		{
+			build(component.getGraphicsConfiguration(), background, h);
+		}
+
+		//find area being repainted
+		Rectangle clip=g2d.getClipBounds();
+		if(clip==null)
+		{
+			clip=new Rectangle(0, 0, component.getWidth(), h);
+		}
+
+		//stretch rows spanning the clip's height over the clip
+		int rows=strip.getHeight();
+		int top=(int)((long)Math.max(clip.y, 0)*rows/h);
+		int bottom=(int)(((long)Math.min(clip.y+clip.height, h)*rows+h-1)/h);
+		bottom=Math.min(Math.max(bottom, top+1), rows);
+		g2d.drawImage(strip, clip.x, clip.y, clip.x+clip.width, clip.y+clip.height, 0, top, 1, bottom, null);
+	}
+
+	/**
+	 * build: Builds the cached gradient
+	 * @param config: Graphics configuration of the component, or null if it is not displayed
+	 * @param background: Background color the gradient is derived from
+	 * @param h: Height of the component
+	 */
+	private void build(GraphicsConfiguration config, Color background, int h)
+	{
+		//derive gradient end colors once
+		Color top=background.brighter();
+		Color bottom=background.darker().darker();
+		int rows=Math.min(h, MAX_ROWS);
+
+		//use an image compatible with the screen when possible, so that it can be accelerated
+		strip=(config!=null)? config.createCompatibleImage(1, rows) : new BufferedImage(1, rows, BufferedImage.TYPE_INT_RGB);
+
+		//color each row as a gradient across the whole height would at the row's center
+		for(int i=0;i<rows;i++)
+		{
+			float t=(i+0.5f)/rows;
+			int r=Math.round(top.getRed()+(bottom.getRed()-top.getRed())*t);
+			int g=Math.round(top.getGreen()+(bottom.getGreen()-top.getGreen())*t);
+			int b=Math.round(top.getBlue()+(bottom.getBlue()-top.getBlue())*t);
+			strip.setRGB(0, i, 0xff000000|(r<<16)|(g<<8)|b);
+		}
+		height=h;
+		base=background;
+	}
+}
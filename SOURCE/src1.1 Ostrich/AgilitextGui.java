@@ -27,11 +27,15 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Font;
+import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Image;
 import java.awt.Insets;
+import java.awt.Window;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
+import java.awt.event.WindowEvent;
 
 /**
  * AgilitextGui: Class used to construct the main Agilitext GUI
@@ -40,7 +44,7 @@ import java.awt.event.InputEvent;
  * @version 1.1
  * 
  * Date Created: 06/06/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextGui extends JPanel
 {
@@ -61,6 +65,12 @@ public class AgilitextGui extends JPanel
 	protected JButton saveAsButton;
 	protected JButton openButton;
 	
+	//labels
+	protected JLabel statusLabel;
+	
+	//task indicators
+	protected AgilitextTaskIndicator taskIndicator;
+	
 	//menu components
 	
 	//bar
@@ -92,12 +102,13 @@ public class AgilitextGui extends JPanel
 	protected JMenuItem fontItem;
 	protected JMenuItem dateItem;
 	protected JMenuItem timeItem;
+	protected JMenuItem watchdogItem;
 	
 	protected JMenuItem welcomeItem;
 	protected JMenuItem aboutItem;
 	protected JMenuItem siteItem;
 	
-	//dialogs
+	//dialogs, built on first use or once the window has painted, whichever is first
 	protected  AgilitextFindReplaceManager findMan;
 	protected AgilitextFontManager fontMan;
 	
@@ -114,17 +125,25 @@ public class AgilitextGui extends JPanel
 	//handler
 	private AgilitextHandler handler;
 	
+	//true once deferred components are scheduled to be built
+	private boolean deferred;
+	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
+	//time windows stay open during a training run
+	private static final int TRAIN_DELAY=1000;
+	
 	/**
 	 * AgilitextGui: Constructor
+	 * @param journal: The journal the text area keeps edits in, or null for a new window journal
 	 */
-	public AgilitextGui()
+	public AgilitextGui(AgilitextJournal journal)
 	{
 		//initialize handler using this JPanel
 		handler=new AgilitextHandler(this);
 		
+		long start=AgilitextTimeline.begin();
 		try
 		{
 			//attempt to set look and feel to default cross platform laf
@@ -137,6 +156,8 @@ public class AgilitextGui extends JPanel
 		    e.printStackTrace();
 		}
 		
+		AgilitextTimeline.end("look and feel", start);
+		
 		//call getJarResources to initialize jar font and icon objects
 		getJarResources();
 		
@@ -144,7 +165,7 @@ public class AgilitextGui extends JPanel
 		setLayout(new BorderLayout());
 		
 		//build panels
-		buildMainPanel();
+		buildMainPanel(journal);
 		buildButtonPanel();
 		//build menu
 		buildMenu();
@@ -155,24 +176,204 @@ public class AgilitextGui extends JPanel
 		add(mainPanel, BorderLayout.CENTER);
 		add(subPanel, BorderLayout.SOUTH);
 		
-		//initialize findMan using parent JFrame and target text area
-		findMan=new AgilitextFindReplaceManager((JFrame)SwingUtilities.getWindowAncestor(this), textArea);
-		//initialize fontMan using parent JFrame and target text area
-		fontMan=new AgilitextFontManager((JFrame)SwingUtilities.getWindowAncestor(this), textArea);
-		
-		//set fontMan panel borders
-		setComponentTitledBorder(fontMan.fontScroll, new LineBorder(Color.darkGray), "Font");
-		setComponentTitledBorder(fontMan.samplePanel, null, "Sample");
-		setComponentTitledBorder(fontMan.sizePanel, null, "Size");
-		
 		//add listeners and style main panel components
 		configComponents(this.getComponents());
 		//add listeners and style menu components
 		configComponents(menuBar.getComponents());
-		//add listeners and style find/replace frame
-		configComponents(findMan.mainPanel.getComponents());
-		//add listeners and style font frame
-		configComponents(fontMan.mainPanel.getComponents());
+	}
+	
+	/**
+	 * getFindMan: Used to get the find/replace window, building and styling it on first use
+	 * @return: Find/replace window
+	 */
+	protected AgilitextFindReplaceManager getFindMan()
+	{
+		if(findMan==null)
+		{
+			long start=AgilitextTimeline.begin();
+			//initialize findMan using parent JFrame and target text area
+			findMan=new AgilitextFindReplaceManager((JFrame)SwingUtilities.getWindowAncestor(this), textArea);
+			//add listeners and style find/replace frame
+			configComponents(findMan.mainPanel.getComponents());
+			AgilitextTimeline.end("find/replace window", start);
+		}
+		return findMan;
+	}
+	
+	/**
+	 * getFontMan: Used to get the font window, building and styling it on first use
+	 * @return: Font window
+	 */
+	protected AgilitextFontManager getFontMan()
+	{
+		if(fontMan==null)
+		{
+			long start=AgilitextTimeline.begin();
+			//initialize fontMan using parent JFrame, target text area and its default font
+			fontMan=new AgilitextFontManager((JFrame)SwingUtilities.getWindowAncestor(this), textArea, editorFont);
+			
+			//set fontMan panel borders
+			setComponentTitledBorder(fontMan.fontScroll, new LineBorder(Color.darkGray), "Font");
+			setComponentTitledBorder(fontMan.samplePanel, null, "Sample");
+			setComponentTitledBorder(fontMan.sizePanel, null, "Size");
+			
+			//add listeners and style font frame
+			configComponents(fontMan.mainPanel.getComponents());
+			AgilitextTimeline.end("font window", start);
+		}
+		return fontMan;
+	}
+	
+	/**
+	 * showWatchdogReport: Displays the event thread responsiveness report in a dialog
+	 */
+	protected void showWatchdogReport()
+	{
+		//initialize read-only text area holding report, scrolled from its start
+		JTextArea report=new JTextArea(AgilitextWatchdog.report(), 25, 100);
+		report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		report.setEditable(false);
+		report.setCaretPosition(0);
+		JOptionPane.showMessageDialog(this, new JScrollPane(report), "Responsiveness Report", JOptionPane.INFORMATION_MESSAGE);
+	}
+	
+	/**
+	 * restoreLastFont: Used to assign last used Font object to text area without building the font window
+	 */
+	protected void restoreLastFont()
+	{
+		Font f=AgilitextFontManager.getLastFont();
+		//if a valid font was saved, assign it to text area
+		if(f!=null)
+		{
+			textArea.setFont(f);
+		}
+	}
+	
+	/**
+	 * paintComponent: Paints GUI panel, scheduling deferred components to be built after the first paint
+	 * @param g: Graphics object used to paint
+	 */
+	protected void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		if(!deferred)
+		{
+			deferred=true;
+			AgilitextTimeline.mark("first paint");
+			buildDeferred();
+		}
+	}
+	
+	/**
+	 * buildDeferred: Builds dialogs and the file chooser one per event, so input is handled between them
+	 */
+	private void buildDeferred()
+	{
+		final Runnable[] steps=
+		{
+			new Runnable()
+			{
+				public void run()
+				{
+					getFindMan();
+				}
+			},
+			new Runnable()
+			{
+				public void run()
+				{
+					getFontMan();
+				}
+			},
+			new Runnable()
+			{
+				public void run()
+				{
+					long start=AgilitextTimeline.begin();
+					textArea.getFileChooser();
+					AgilitextTimeline.end("file chooser", start);
+				}
+			},
+			new Runnable()
+			{
+				public void run()
+				{
+					//publish metrics once the window is up, as starting the MBean server takes a while
+					long start=AgilitextTimeline.begin();
+					textArea.getMetrics().register();
+					AgilitextTimeline.end("metrics", start);
+				}
+			},
+			new Runnable()
+			{
+				public void run()
+				{
+					//if training, show windows so their painting code is loaded too, then finish
+					if(AgilitextClient.isTraining())
+					{
+						train();
+					}
+					else
+					{
+						finishStartup();
+					}
+				}
+			}
+		};
+		//queue each step behind events already waiting, including the one before it
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			private int next;
+			
+			public void run()
+			{
+				steps[next++].run();
+				if(next<steps.length)
+				{
+					SwingUtilities.invokeLater(this);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * train: Opens the find/replace and font windows, closing them once they have painted
+	 */
+	private void train()
+	{
+		getFindMan().setVisible(true);
+		getFontMan().setVisible(true);
+		Timer timer=new Timer(TRAIN_DELAY, new ActionListener()
+		{
+			/**
+			 * actionPerformed: Called to handle timer events
+			 * @param e: Timer action event
+			 */
+			public void actionPerformed(ActionEvent e)
+			{
+				findMan.setVisible(false);
+				fontMan.setVisible(false);
+				finishStartup();
+			}
+		});
+		timer.setRepeats(false);
+		timer.start();
+	}
+	
+	/**
+	 * finishStartup: Reports startup timeline, and closes window if run unattended
+	 */
+	private void finishStartup()
+	{
+		AgilitextTimeline.mark("idle work done");
+		AgilitextTimeline.report();
+		//if run unattended, close window as the user would, ending the session cleanly
+		if(AgilitextClient.isUnattended())
+		{
+			Window window=SwingUtilities.getWindowAncestor(this);
+			window.dispatchEvent(new WindowEvent(window, WindowEvent.WINDOW_CLOSING));
+		}
 	}
 	
 	/**
@@ -228,6 +429,12 @@ public class AgilitextGui extends JPanel
 		toolsMenu.add(fontItem);
 		toolsMenu.add(dateItem);
 		toolsMenu.add(timeItem);
+		//if event thread is monitored, add item showing its report
+		watchdogItem=new JMenuItem("Responsiveness Report");
+		if(AgilitextWatchdog.isEnabled())
+		{
+			toolsMenu.add(watchdogItem);
+		}
 		
 		//initialize and add about menu item
 		welcomeItem=new JMenuItem("Welcome");
@@ -246,15 +453,16 @@ public class AgilitextGui extends JPanel
 	
 	/**
 	 * buildMain: Initializes and constructs main panel
+	 * @param journal: The journal the text area keeps edits in, or null for a new window journal
 	 */
-	private void buildMainPanel()
+	private void buildMainPanel(AgilitextJournal journal)
 	{
 		//initialize main panel and set layout
 		mainPanel=new JPanel();
 		mainPanel.setLayout(new GridLayout(1,1));
 		
 		//initialize text area
-		textArea=new AgilitextTextArea();
+		textArea=new AgilitextTextArea(journal);
 		//set font for text area implicitly before panel add
 		textArea.setFont(editorFont);
 		
@@ -274,7 +482,7 @@ public class AgilitextGui extends JPanel
 	{
 		//initialize and set layout for sub panel
 		subPanel=new JPanel();
-		subPanel.setLayout(new GridLayout(1,3));
+		subPanel.setLayout(new GridLayout(1,4));
 		
 		//initialize buttons and add them to sub panel
 		saveButton=new JButton("Save");
@@ -284,6 +492,14 @@ public class AgilitextGui extends JPanel
 		subPanel.add(saveAsButton);
 		subPanel.add(openButton);
 		
+		//initialize status label showing caret position, replaced by the progress of running tasks, and add it to sub panel
+		statusLabel=new JLabel(textArea.getCaretStatus(), JLabel.CENTER);
+		statusLabel.setOpaque(true);
+		taskIndicator=new AgilitextTaskIndicator(statusLabel);
+		textArea.getScheduler().setIndicator(taskIndicator);
+		subPanel.add(taskIndicator);
+		textArea.addCaretListener(handler);
+		
 		//set dark gray line border for sub panel
 		subPanel.setBorder(new LineBorder(Color.darkGray));
 	}
@@ -400,7 +616,7 @@ public class AgilitextGui extends JPanel
 	        public void actionPerformed(ActionEvent e) 
 	        {
 	        	//display findMan dialog
-	        	findMan.setVisible(true);
+	        	getFindMan().setVisible(true);
 	        }
 	    });
 	}
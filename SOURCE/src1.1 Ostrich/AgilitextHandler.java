@@ -26,9 +26,9 @@ import javax.swing.event.*;
  * @version 1.1
  * 
  * Date Created: 06/06/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
-public class AgilitextHandler extends WindowAdapter implements FocusListener, ActionListener,  ListSelectionListener
+public class AgilitextHandler extends WindowAdapter implements FocusListener, ActionListener,  ListSelectionListener, CaretListener
 {
 	//GUI object
     private AgilitextGui gui;
@@ -44,10 +44,27 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
     }
 	
     /**
-     * actionPerformed: Called to handle GUI action events
+     * actionPerformed: Called to handle GUI action events, timing each one when the event thread is monitored
      * @param e: GUI action event 
      */
 	public void actionPerformed(ActionEvent e)
+    {
+		AgilitextWatchdog.ActionTiming timing=AgilitextWatchdog.beginAction(e);
+		try
+		{
+			handleAction(e);
+		}
+		finally
+		{
+			AgilitextWatchdog.endAction(timing);
+		}
+    }
+	
+    /**
+     * handleAction: Runs the operation of the button or menu item an action event came from
+     * @param e: GUI action event 
+     */
+	private void handleAction(ActionEvent e)
     {
 		//if event source is saveButton or saveItem
         if(e.getSource()==gui.saveButton||e.getSource()==gui.saveItem)
@@ -68,6 +85,13 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
         	gui.textArea.openFile();
         }
         
+        //if event source is task indicator's cancelButton
+        else if(e.getSource()==gui.taskIndicator.cancelButton)
+        {
+        	//cancel running loads, counts and replacements, leaving saves to finish
+        	gui.textArea.getScheduler().cancelAll();
+        }
+        
         //if event source is newItem
         else if(e.getSource()==gui.newItem)
         {
@@ -133,13 +157,13 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
         else if(e.getSource()==gui.findReplaceItem)
         {
         	//set findMan frame to visible
-        	gui.findMan.setVisible(true);
+        	gui.getFindMan().setVisible(true);
         }
         //if event source is fontItem
         else if(e.getSource()==gui.fontItem)
         {
         	//set fontMan frame to visible
-        	gui.fontMan.setVisible(true);
+        	gui.getFontMan().setVisible(true);
         }
         //if event source is dateItem
         else if(e.getSource()==gui.dateItem)
@@ -153,6 +177,12 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
         	//call time insert on text area
         	gui.textArea.insertTime();
         }
+        //if event source is watchdogItem
+        else if(e.getSource()==gui.watchdogItem)
+        {
+        	//display event thread responsiveness report
+        	gui.showWatchdogReport();
+        }
         
         //if event source is welcomeItem
         else if(e.getSource()==gui.welcomeItem)
@@ -173,42 +203,42 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
         	Appsistant.browseToLink("http://jukesfordays.com");
         }
         
-        //if event source is findButton
-        else if(e.getSource()==gui.findMan.findButton)
+        //if event source is findButton, once find/replace window is built
+        else if(gui.findMan!=null&&e.getSource()==gui.findMan.findButton)
         {
         	//
         	gui.findMan.findText();
         }
         //if event source is replaceButton
-        else if(e.getSource()==gui.findMan.replaceButton)
+        else if(gui.findMan!=null&&e.getSource()==gui.findMan.replaceButton)
         {
         	gui.findMan.replaceText();
         }
         //if event source is replaceAllButton
-        else if(e.getSource()==gui.findMan.replaceAllButton)
+        else if(gui.findMan!=null&&e.getSource()==gui.findMan.replaceAllButton)
         {
         	gui.findMan.replaceAll();
         }
         //if event source is countButton
-        else if(e.getSource()==gui.findMan.countButton)
+        else if(gui.findMan!=null&&e.getSource()==gui.findMan.countButton)
         {
         	gui.findMan.count();
         }
         
-        //if event source is resetButton
-        else if(e.getSource()==gui.fontMan.resetButton)
+        //if event source is resetButton, once font window is built
+        else if(gui.fontMan!=null&&e.getSource()==gui.fontMan.resetButton)
         {
         	//reset target font to default
         	gui.fontMan.resetTargetFont();
         }
         //if event source is confirmButton
-        else if(e.getSource()==gui.fontMan.confirmButton)
+        else if(gui.fontMan!=null&&e.getSource()==gui.fontMan.confirmButton)
         {
         	//set target font to font specified by fontMan components
         	gui.fontMan.setTargetFont();
         }
         //if event source is cancelButton
-        else if(e.getSource()==gui.fontMan.cancelButton)
+        else if(gui.fontMan!=null&&e.getSource()==gui.fontMan.cancelButton)
         {
         	//set fontMan to invisible
         	gui.fontMan.setVisible(false);
@@ -236,24 +266,45 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
 	public void focusLost(FocusEvent e)
 	{
 		//if event source is sizeField
-		if(e.getSource()==gui.fontMan.sizeField)
+		if(gui.fontMan!=null&&e.getSource()==gui.fontMan.sizeField)
 		{
 			//attempt to parse valid number from field
 			gui.fontMan.sizeField.getNumber(1, 125);
 		}
 	}
 	
+	/**
+	 * caretUpdate: Called to handle GUI caret movement events
+	 * @param e: GUI caret event
+	 */
+	public void caretUpdate(CaretEvent e)
+	{
+		//if event source is textArea
+		if(e.getSource()==gui.textArea)
+		{
+			//display caret line and column on status label
+			gui.statusLabel.setText(gui.textArea.getCaretStatus());
+		}
+	}
+	
 	/**
 	 * windowOpened: Called to handle GUI window opening events
 	 * @param e: GUI window event
 	 */
 	public void windowOpened(WindowEvent e)
 	{
-		//if event source is an instance of AgilitextClient
-		if(e.getSource() instanceof AgilitextClient)
+		//if event source is not an AgilitextClient window, do nothing
+		if(!(e.getSource() instanceof AgilitextClient))
 		{
-			//if run count is not valid
-			if(Appsistant.RUN_COUNT==1)
+			return;
+		}
+		AgilitextClient client=(AgilitextClient)e.getSource();
+		
+		//if event source is the first window, which owns the last session
+		if(client.isPrimary())
+		{
+			//if run count is not valid, and a user is there to see it
+			if(Appsistant.RUN_COUNT==1&&!AgilitextClient.isUnattended())
 			{
 				//display welcome message
 				Appsistant.getWelcomeMessage();
@@ -262,18 +313,38 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
 			//update run count, adding one on each startup
 			Appsistant.pref.putInt(Appsistant.RUN_COUNT_KEY, Appsistant.pref.getInt(Appsistant.RUN_COUNT_KEY, 1)+1);
 			
-			//if last text is valid
-			if(Appsistant.LAST_TEXT!=null)
-			{
-				//set textArea text to last text
-				gui.textArea.setText(Appsistant.LAST_TEXT);
-			}
+			//restore textArea text from last session
+			long start=AgilitextTimeline.begin();
+			gui.textArea.recoverSession();
+			AgilitextTimeline.end("session restore", start);
 			
-			//set fontMan to load last used font
-			gui.fontMan.setLastFont();
+			//reopen windows left with unsaved changes
+			AgilitextClient.recoverWindows();
+		}
+		//if window reopens one left by the last session, restore its text
+		else if(client.isRecovering())
+		{
+			gui.textArea.recoverWindow();
+		}
+		
+		//load last used font into textArea
+		gui.restoreLastFont();
+		if(client.isPrimary())
+		{
+			AgilitextTimeline.mark("window opened");
 		}
 	}
 	
+	/**
+	 * windowActivated: Called to handle GUI window activated events
+	 * @param e: GUI window event
+	 */
+	public void windowActivated(WindowEvent e)
+	{
+		//if file shown was changed by another program while away, offer to reload it
+		gui.textArea.checkOriginal();
+	}
+	
 	/**
 	 * windowClosing: Called to handle GUI window closing events
 	 * @param e: GUI window event
@@ -283,17 +354,8 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
 		//if event source is an instance of AgilitextClient
 		if(e.getSource() instanceof AgilitextClient)
 		{
-			//if textArea contains no valid text
-			if(gui.textArea.getText().trim().isEmpty())
-			{
-				//remove last text key from preferences
-				Appsistant.pref.remove(Appsistant.LAST_TEXT_KEY);
-			}
-			else
-			{
-				//store textArea text as last text
-				Appsistant.pref.put(Appsistant.LAST_TEXT_KEY,gui.textArea.getText());
-			}
+			//commit textArea edits so they can be restored on next startup
+			gui.textArea.closeSession(((AgilitextClient)e.getSource()).isPrimary());
 		}
 	}
     
@@ -304,7 +366,7 @@ public class AgilitextHandler extends WindowAdapter implements FocusListener, Ac
     public void valueChanged(ListSelectionEvent e)
     {
     	//if event source is fontList
-    	if(e.getSource()==gui.fontMan.fontList)
+    	if(gui.fontMan!=null&&e.getSource()==gui.fontMan.fontList)
     	{
     		//set selected font to display on sample text field
     		gui.fontMan.setSampleFont();
@@ -0,0 +1,331 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingUtilities;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AgilitextInstance: Local socket letting later launches hand their files to the instance
+ * already running, so that only one virtual machine runs per user
+ *
+ * The first instance listens on a Unix domain socket in the settings directory. A later launch
+ * connects to it before loading any windows, fonts or preferences, sends the absolute paths of
+ * its files, waits for the running instance to acknowledge them and exits. The running instance
+ * opens each file in a new window.
+ *
+ * Messages are an int count followed by that many paths written as modified UTF-8, answered
+ * by a single byte once the paths are queued to be opened. The count and path lengths are
+ * bounded and a launch that does not finish its message in time is disconnected, so no
+ * connection can make the instance allocate without limit or stop accepting others.
+ *
+ * A socket file is only removed when connecting to it is refused, so that a launch never takes
+ * the socket of a live instance, and an instance removes it on exit only while it is still the
+ * file that instance bound.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextInstance
+{
+	//socket file, in the same directory as Appsistant's settings files but found without
+	//loading Appsistant, whose desktop and graphics state would slow a hand off
+	private static final File SOCKET=new File(new File(System.getProperty("user.home"), ".agilitext"), "instance.sock");
+
+	//acknowledgement byte
+	private static final int ACK=1;
+
+	//most files and longest path in bytes accepted from one launch
+	private static final int MAX_FILES=1024;
+	private static final int MAX_PATH_BYTES=4096;
+
+	//time a launch has to send its files, in milliseconds
+	private static final int RECEIVE_TIMEOUT=5000;
+
+	/**
+	 * handOff: Sends files to the running instance, if there is one
+	 * @param files: Files to open, possibly none
+	 * @return: true if a running instance took the files, false if this is the only instance
+	 */
+	public static boolean handOff(List<File> files)
+	{
+		//if there is no socket file, no instance is listening
+		if(!SOCKET.exists())
+		{
+			return false;
+		}
+		try(SocketChannel channel=SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath())))
+		{
+			DataOutputStream out=new DataOutputStream(Channels.newOutputStream(channel));
+			out.writeInt(files.size());
+			for(File file : files)
+			{
+				out.writeUTF(file.getAbsolutePath());
+			}
+			out.flush();
+			return new DataInputStream(Channels.newInputStream(channel)).read()==ACK;
+		}
+		catch(IOException e)
+		{
+			//socket file is left from an instance that ended without removing it
+			return false;
+		}
+	}
+
+	/**
+	 * listen: Starts accepting files from later launches on a daemon thread
+	 * @return: true if listening, false if launches will start their own instances
+	 */
+	public static boolean listen()
+	{
+		final ServerSocketChannel server;
+		final Object bound;
+		try
+		{
+			//remove socket file left by an instance that did not end cleanly, unless an instance is listening on it
+			SOCKET.getParentFile().mkdirs();
+			if(SOCKET.exists())
+			{
+				if(isListening(SOCKET.toPath()))
+				{
+					System.err.println("Single instance socket is in use by another instance");
+					return false;
+				}
+				Files.deleteIfExists(SOCKET.toPath());
+			}
+			server=ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+			bound=identify(SOCKET.toPath());
+		}
+		catch(IOException|UnsupportedOperationException e)
+		{
+			//if an error occurs, print error and run as a separate instance
+			System.err.println("Single instance socket could not be opened: "+e.getMessage());
+			return false;
+		}
+
+		//remove socket file on exit, so the next launch does not try to reach this instance,
+		//unless another instance has replaced it since
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					if(bound.equals(identify(SOCKET.toPath())))
+					{
+						Files.delete(SOCKET.toPath());
+					}
+				}
+				catch(IOException e)
+				{
+					//socket file is already gone
+				}
+			}
+		}));
+
+		//initialize daemon thread disconnecting launches that take too long
+		final ScheduledExecutorService timer=Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t=new Thread(r, "Agilitext Instance Timeout");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		Thread acceptor=new Thread(new Runnable()
+		{
+			public void run()
+			{
+				while(server.isOpen())
+				{
+					SocketChannel accepted=null;
+					try
+					{
+						final SocketChannel channel=server.accept();
+						accepted=channel;
+						//closing the channel ends a blocked read, which fails the request
+						ScheduledFuture<?> timeout=timer.schedule(new Runnable()
+						{
+							public void run()
+							{
+								close(channel);
+							}
+						}, RECEIVE_TIMEOUT, TimeUnit.MILLISECONDS);
+						try
+						{
+							receive(channel);
+						}
+						finally
+						{
+							timeout.cancel(false);
+						}
+					}
+					catch(AsynchronousCloseException e)
+					{
+						//if a launch stalls, print error and keep listening
+						System.err.println("Single instance request timed out");
+					}
+					catch(IOException e)
+					{
+						//if a launch disconnects early or sends a bad request, print error and keep listening
+						System.err.println("Single instance request failed: "+e.getMessage());
+					}
+					finally
+					{
+						close(accepted);
+					}
+				}
+			}
+		}, "Agilitext Instance");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return true;
+	}
+
+	/**
+	 * isListening: Used to determine if an instance accepts connections on a socket file
+	 * @param socket: The socket file
+	 * @return: true if a connection was made, false if nothing listens on the file
+	 * @throws IOException: If the socket file cannot be connected to for another reason
+	 */
+	private static boolean isListening(Path socket) throws IOException
+	{
+		SocketChannel probe;
+		try
+		{
+			probe=SocketChannel.open(UnixDomainSocketAddress.of(socket));
+		}
+		catch(ConnectException e)
+		{
+			//socket file is left from an instance that ended without removing it
+			return false;
+		}
+		probe.close();
+		return true;
+	}
+
+	/**
+	 * close: Closes a connection from a launch, from the acceptor or from the timeout
+	 * @param channel: The connection, or null if none was accepted
+	 */
+	private static void close(SocketChannel channel)
+	{
+		//if no connection was accepted, do nothing
+		if(channel==null)
+		{
+			return;
+		}
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			//channel is closed either way
+		}
+	}
+
+	/**
+	 * receive: Reads the files of one launch, queues them to be opened and acknowledges them
+	 * @param channel: Connection from the launch
+	 */
+	private static void receive(SocketChannel channel) throws IOException
+	{
+		DataInputStream in=new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		int count;
+		try
+		{
+			count=in.readInt();
+		}
+		catch(EOFException e)
+		{
+			//connection only checked that this instance is listening
+			return;
+		}
+		//if count is out of range, request is not from a launch
+		if(count<0||count>MAX_FILES)
+		{
+			throw new IOException("Invalid file count "+count);
+		}
+		final List<File> files=new ArrayList<File>(count);
+		for(int i=0;i<count;i++)
+		{
+			//check length of path before reading it
+			in.mark(2);
+			int length=in.readUnsignedShort();
+			if(length>MAX_PATH_BYTES)
+			{
+				throw new IOException("Path of "+length+" bytes is too long");
+			}
+			in.reset();
+			files.add(new File(in.readUTF()));
+		}
+
+		//open files on the event thread
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				AgilitextClient.openFiles(files);
+			}
+		});
+		DataOutputStream out=new DataOutputStream(Channels.newOutputStream(channel));
+		out.write(ACK);
+		out.flush();
+	}
+
+	/**
+	 * identify: Used to get what identifies a file on its file system, to tell it from a file
+	 * later created at the same path
+	 * @param path: Path of file
+	 * @return: File key, eg. device and inode, or the creation time where there is none
+	 * @throws IOException: If the file cannot be read
+	 */
+	private static Object identify(Path path) throws IOException
+	{
+		BasicFileAttributes attributes=Files.readAttributes(path, BasicFileAttributes.class);
+		return (attributes.fileKey()!=null)? attributes.fileKey() : attributes.creationTime();
+	}
+}
@@ -0,0 +1,863 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AgilitextJournal: Append-only journal of document edits, group committed to disk
+ * off the event thread and replayed on the next start to recover the last session
+ *
+ * The first window journals the session in SESSION. Every other window journals its own edits
+ * in a window journal created by openWindow, which lasts until the window closes with nothing
+ * left to restore. Window journals left behind are listed by listWindows to be recovered.
+ *
+ * Records are only ever appended after whole records. If a commit fails, the part of it that was
+ * written is cut off and journaling stops, as records appended after lost ones would replay
+ * against the wrong text. The failure handler then runs so that the user can be told to save.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextJournal implements DocumentListener
+{
+	//name of the session journal, kept by the first window
+	public static final String SESSION="session.journal";
+
+	//name parts of window journals
+	private static final String WINDOW_PREFIX="window-";
+	private static final String WINDOW_SUFFIX=".journal";
+
+	//journal files open in this instance, which are not opened twice as closing a second
+	//channel to a file may release the lock held through the first
+	private static final Set<File> owned=Collections.synchronizedSet(new HashSet<File>());
+
+	//journal file identifier
+	private static final int MAGIC=0x41474a31;
+
+	//record types
+	private static final byte BASE_EMPTY=1;
+	private static final byte BASE_FILE=2;
+	private static final byte INSERT=3;
+	private static final byte REMOVE=4;
+	private static final byte CLEAN=5;
+
+	//most chars per insert record, keeping modified UTF-8 under 65535 bytes
+	private static final int MAX_RECORD_CHARS=21845;
+
+	//interval between group commits
+	private static final int COMMIT_INTERVAL=250;
+
+	//private objects
+
+	//journal file and its open channel, null while journaling is off
+	private File file;
+	private FileChannel channel;
+	private FileLock lock;
+
+	//records waiting for the next group commit
+	private ByteArrayOutputStream pending;
+	private DataOutputStream pendingOut;
+	private boolean truncate;
+
+	//edit records kept while a mark is open, so that edits made after a snapshot can be journaled
+	//again against the file the snapshot was saved to
+	private ByteArrayOutputStream history;
+	private DataOutputStream historyOut;
+	private int marks;
+
+	//thread performing group commits
+	private ScheduledExecutorService committer;
+
+	//true once journaling has stopped after a failed commit, and code run when it does
+	private boolean failed;
+	private Runnable failureHandler;
+
+	/**
+	 * AgilitextJournal: Constructor
+	 * @param file: The journal file
+	 */
+	public AgilitextJournal(File file)
+	{
+		this.file=file;
+		pending=new ByteArrayOutputStream();
+		pendingOut=new DataOutputStream(pending);
+		history=new ByteArrayOutputStream();
+		historyOut=new DataOutputStream(history);
+	}
+
+	/**
+	 * open: Opens and locks the journal file and starts group commits
+	 * @return: true if journaling is available, false if another instance holds the journal
+	 */
+	public boolean open()
+	{
+		//if a window of this instance holds the journal, leave it alone
+		if(!owned.add(file.getAbsoluteFile()))
+		{
+			return false;
+		}
+		try
+		{
+			//open journal and try to take exclusive ownership of it
+			channel=FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			lock=tryLock(channel);
+			if(lock==null)
+			{
+				channel.close();
+				channel=null;
+				owned.remove(file.getAbsoluteFile());
+				return false;
+			}
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error and run without a journal
+			System.err.println("Journal could not be opened: "+e.getMessage());
+			channel=null;
+			owned.remove(file.getAbsoluteFile());
+			return false;
+		}
+
+		//initialize daemon committer thread
+		committer=Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t=new Thread(r, "Agilitext Journal");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		committer.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				commit();
+			}
+		}, COMMIT_INTERVAL, COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	/**
+	 * openWindow: Creates and opens a new journal for a window other than the first
+	 * @param dir: Directory holding the journals
+	 * @return: Open journal, or one left closed if it could not be created
+	 */
+	public static AgilitextJournal openWindow(File dir)
+	{
+		try
+		{
+			//a new uniquely named file is only held by another instance if it is recovering
+			//window journals as this one is created, in which case another file is tried
+			for(int attempt=0;attempt<3;attempt++)
+			{
+				AgilitextJournal journal=new AgilitextJournal(Files.createTempFile(dir.toPath(), WINDOW_PREFIX, WINDOW_SUFFIX).toFile());
+				if(journal.open())
+				{
+					return journal;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error and run without a journal
+			System.err.println("Journal could not be created: "+e.getMessage());
+		}
+		return new AgilitextJournal(null);
+	}
+
+	/**
+	 * listWindows: Used to find the window journals in a directory, including those still held by open windows
+	 * @param dir: Directory holding the journals
+	 * @return: Window journal files, sorted by name
+	 */
+	public static File[] listWindows(File dir)
+	{
+		File[] files=dir.listFiles();
+		if(files==null)
+		{
+			return new File[0];
+		}
+		File[] windows=new File[files.length];
+		int count=0;
+		for(File file : files)
+		{
+			if(file.getName().startsWith(WINDOW_PREFIX)&&file.getName().endsWith(WINDOW_SUFFIX))
+			{
+				windows[count++]=file;
+			}
+		}
+		windows=Arrays.copyOf(windows, count);
+		Arrays.sort(windows);
+		return windows;
+	}
+
+	/**
+	 * isEmpty: Used to determine if an open journal holds nothing to recover
+	 * @return: true if the journal file has no records
+	 */
+	public boolean isEmpty()
+	{
+		return channel==null||file.length()<5;
+	}
+
+	/**
+	 * tryLock: Used to take exclusive ownership of a journal channel
+	 * @param channel: Open journal channel
+	 * @return: Lock, or null if another instance or another window of this one owns the journal
+	 */
+	private static FileLock tryLock(FileChannel channel) throws IOException
+	{
+		try
+		{
+			return channel.tryLock();
+		}
+		catch(OverlappingFileLockException e)
+		{
+			//journal is locked by another window of this instance
+			return null;
+		}
+	}
+
+	/**
+	 * setFailureHandler: Sets code run on the committing thread when journaling stops after a failed commit
+	 * @param handler: The code to run, eg. telling the user to save
+	 */
+	public void setFailureHandler(Runnable handler)
+	{
+		failureHandler=handler;
+	}
+
+	/**
+	 * isOpen: Used to determine if edits are being journaled
+	 * @return: true if journal is open
+	 */
+	public boolean isOpen()
+	{
+		return channel!=null;
+	}
+
+	/**
+	 * startEmpty: Discards journaled edits and starts a new journal from empty text
+	 */
+	public void startEmpty()
+	{
+		synchronized(pending)
+		{
+			restart();
+			writeByte(BASE_EMPTY);
+		}
+	}
+
+	/**
+	 * startFile: Discards journaled edits and starts a new journal from the contents of a file
+	 * @param base: The file whose contents match the document
+	 */
+	public void startFile(File base)
+	{
+		synchronized(pending)
+		{
+			restart();
+			try
+			{
+				pendingOut.writeByte(BASE_FILE);
+				pendingOut.writeUTF(base.getAbsolutePath());
+				pendingOut.writeLong(base.length());
+				pendingOut.writeLong(base.lastModified());
+			}
+			catch(IOException e)
+			{
+				//in-memory stream does not fail
+			}
+		}
+	}
+
+	/**
+	 * mark: Starts keeping the edits made from now on, eg. when a snapshot is taken to be saved
+	 * @return: Mark passed to rebase once the snapshot is saved, or to release if it is not
+	 */
+	public Mark mark()
+	{
+		synchronized(pending)
+		{
+			marks++;
+			return new Mark(history.size());
+		}
+	}
+
+	/**
+	 * release: Stops keeping edits for a mark that will not be rebased on, eg. after a failed save
+	 * @param mark: The mark to release, released marks are ignored
+	 */
+	public void release(Mark mark)
+	{
+		synchronized(pending)
+		{
+			if(!mark.released)
+			{
+				mark.released=true;
+				marks--;
+				//once no mark is open, kept edits are no longer needed
+				if(marks==0)
+				{
+					history.reset();
+				}
+			}
+		}
+	}
+
+	/**
+	 * rebase: Discards journaled edits and starts a new journal from a file saved from a snapshot,
+	 * followed by the edits made since the snapshot was marked, so that they are not lost
+	 * when the saved file no longer matches the old base
+	 * @param base: The file the marked snapshot was saved to
+	 * @param mark: Mark taken with the snapshot, released by this call
+	 */
+	public void rebase(File base, Mark mark)
+	{
+		synchronized(pending)
+		{
+			startFile(base);
+			//replay edits kept since the mark on top of the saved text
+			if(!mark.released)
+			{
+				byte[] kept=history.toByteArray();
+				pending.write(kept, mark.start, kept.length-mark.start);
+			}
+			release(mark);
+		}
+	}
+
+	/**
+	 * restart: Clears pending records and marks the file to be truncated on next commit
+	 */
+	private void restart()
+	{
+		pending.reset();
+		truncate=true;
+		try
+		{
+			pendingOut.writeInt(MAGIC);
+		}
+		catch(IOException e)
+		{
+			//in-memory stream does not fail
+		}
+	}
+
+	/**
+	 * insertUpdate: Records inserted text
+	 * @param e: Document event
+	 */
+	public void insertUpdate(DocumentEvent e)
+	{
+		//if journaling is off, do nothing
+		if(channel==null)
+		{
+			return;
+		}
+		try
+		{
+			//record inserted text in chunks that fit a single record
+			Document doc=e.getDocument();
+			int offset=e.getOffset();
+			int end=offset+e.getLength();
+			synchronized(pending)
+			{
+				while(offset<end)
+				{
+					int n=Math.min(MAX_RECORD_CHARS, end-offset);
+					String text=doc.getText(offset, n);
+					writeInsert(pendingOut, offset, text);
+					//if a mark is open, keep the edit for rebasing
+					if(marks>0)
+					{
+						writeInsert(historyOut, offset, text);
+					}
+					offset+=n;
+				}
+			}
+		}
+		catch(BadLocationException ex)
+		{
+			//range comes from event, if an error occurs print stack trace
+			ex.printStackTrace();
+		}
+		catch(IOException ex)
+		{
+			//in-memory stream does not fail
+		}
+	}
+
+	/**
+	 * removeUpdate: Records removed range
+	 * @param e: Document event
+	 */
+	public void removeUpdate(DocumentEvent e)
+	{
+		//if journaling is off, do nothing
+		if(channel==null)
+		{
+			return;
+		}
+		synchronized(pending)
+		{
+			try
+			{
+				writeRemove(pendingOut, e.getOffset(), e.getLength());
+				//if a mark is open, keep the edit for rebasing
+				if(marks>0)
+				{
+					writeRemove(historyOut, e.getOffset(), e.getLength());
+				}
+			}
+			catch(IOException ex)
+			{
+				//in-memory stream does not fail
+			}
+		}
+	}
+
+	/**
+	 * writeInsert: Writes an insert record
+	 * @param out: Stream to write to
+	 * @param offset: Offset of inserted text
+	 * @param text: Inserted text, short enough for a single record
+	 * @throws IOException: If the stream cannot be written
+	 */
+	private static void writeInsert(DataOutputStream out, int offset, String text) throws IOException
+	{
+		out.writeByte(INSERT);
+		out.writeInt(offset);
+		out.writeUTF(text);
+	}
+
+	/**
+	 * writeRemove: Writes a remove record
+	 * @param out: Stream to write to
+	 * @param offset: Offset of removed range
+	 * @param length: Length of removed range
+	 * @throws IOException: If the stream cannot be written
+	 */
+	private static void writeRemove(DataOutputStream out, int offset, int length) throws IOException
+	{
+		out.writeByte(REMOVE);
+		out.writeInt(offset);
+		out.writeInt(length);
+	}
+
+	/**
+	 * changedUpdate: Attribute changes are not journaled
+	 * @param e: Document event
+	 */
+	public void changedUpdate(DocumentEvent e)
+	{
+		//plain text has no attributes to record
+	}
+
+	/**
+	 * commit: Writes pending records to the journal file and forces them to disk
+	 */
+	private void commit()
+	{
+		byte[] records;
+		boolean reset;
+		//take pending records
+		synchronized(pending)
+		{
+			if(pending.size()==0)
+			{
+				return;
+			}
+			records=pending.toByteArray();
+			reset=truncate;
+			pending.reset();
+			truncate=false;
+		}
+
+		//length of the whole records before this commit, which a failed commit is cut back to
+		long committed=-1;
+		try
+		{
+			//if journal was restarted, drop old records first
+			synchronized(this)
+			{
+				if(channel==null)
+				{
+					return;
+				}
+				if(reset)
+				{
+					channel.truncate(0);
+				}
+				committed=channel.size();
+				channel.position(committed);
+				ByteBuffer buffer=ByteBuffer.wrap(records);
+				while(buffer.hasRemaining())
+				{
+					channel.write(buffer);
+				}
+				channel.force(false);
+			}
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, stop journaling rather than append later records after lost ones
+			fail(committed, e);
+		}
+	}
+
+	/**
+	 * fail: Stops journaling after a failed commit, cutting off any part of the commit that was
+	 * written, and runs the failure handler
+	 * @param committed: Length of the whole records before the failed commit, or -1 if unknown
+	 * @param cause: The failure
+	 */
+	private void fail(long committed, IOException cause)
+	{
+		System.err.println("Journal could not be written, edits are no longer journaled: "+cause.getMessage());
+		synchronized(this)
+		{
+			if(channel==null)
+			{
+				return;
+			}
+			try
+			{
+				if(committed>=0)
+				{
+					channel.truncate(committed);
+					channel.force(false);
+				}
+			}
+			catch(IOException e)
+			{
+				//a torn last record is dropped on recovery, as after a crash
+			}
+			try
+			{
+				lock.release();
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				//journal is given up either way
+			}
+			channel=null;
+			failed=true;
+			owned.remove(file.getAbsoluteFile());
+		}
+		committer.shutdown();
+		if(failureHandler!=null)
+		{
+			failureHandler.run();
+		}
+	}
+
+	/**
+	 * close: Marks the session as cleanly closed, commits and releases the journal
+	 */
+	public void close()
+	{
+		//if journaling is off, do nothing, other than delete a journal that stopped
+		if(channel==null)
+		{
+			deleteFailed();
+			return;
+		}
+		writeByte(CLEAN);
+		shutdown();
+	}
+
+	/**
+	 * discard: Releases and deletes the journal, leaving nothing to recover
+	 */
+	public void discard()
+	{
+		//if journaling is off, do nothing, other than delete a journal that stopped
+		if(channel==null)
+		{
+			deleteFailed();
+			return;
+		}
+		synchronized(pending)
+		{
+			pending.reset();
+			truncate=false;
+		}
+		shutdown();
+		file.delete();
+	}
+
+	/**
+	 * deleteFailed: Deletes a journal that stopped after a failed commit, as its older edits
+	 * must not be restored over text the user was told to save
+	 */
+	private synchronized void deleteFailed()
+	{
+		if(failed)
+		{
+			file.delete();
+			failed=false;
+		}
+	}
+
+	/**
+	 * shutdown: Stops group commits, committing any remaining records, and closes the journal
+	 */
+	private void shutdown()
+	{
+		committer.shutdown();
+		try
+		{
+			committer.awaitTermination(COMMIT_INTERVAL*4, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			//closing anyway
+		}
+		commit();
+		synchronized(this)
+		{
+			//if the last commit failed, journal is already released
+			if(channel==null)
+			{
+				deleteFailed();
+				return;
+			}
+			try
+			{
+				lock.release();
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				//if an error occurs, print error
+				System.err.println("Journal could not be closed: "+e.getMessage());
+			}
+			channel=null;
+			owned.remove(file.getAbsoluteFile());
+		}
+	}
+
+	/**
+	 * writeByte: Appends a single byte record
+	 * @param type: Record type
+	 */
+	private void writeByte(byte type)
+	{
+		synchronized(pending)
+		{
+			try
+			{
+				pendingOut.writeByte(type);
+			}
+			catch(IOException e)
+			{
+				//in-memory stream does not fail
+			}
+		}
+	}
+
+	/**
+	 * recover: Replays the journal left by the last session, truncating any torn last record
+	 * @param charset: The charset used to decode a journaled base file
+	 * @return: Recovered session, or null if there is nothing to recover
+	 */
+	public Recovery recover(Charset charset)
+	{
+		//if journal is not open or is empty, there is nothing to recover
+		if(channel==null)
+		{
+			return null;
+		}
+		Recovery recovery=new Recovery();
+		int valid=0;
+		try
+		{
+			//read whole journal
+			ByteBuffer in;
+			synchronized(this)
+			{
+				if(channel.size()<5)
+				{
+					return null;
+				}
+				in=ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			}
+			if(in.getInt()!=MAGIC)
+			{
+				return null;
+			}
+
+			//read base record
+			byte type=in.get();
+			if(type==BASE_FILE)
+			{
+				recovery.file=new File(readUTF(in));
+				long length=in.getLong();
+				long modified=in.getLong();
+				//if base file changed since it was journaled, edits cannot be replayed
+				if(recovery.file.length()!=length||recovery.file.lastModified()!=modified)
+				{
+					System.err.println("Journal base file has changed, last session was not recovered");
+					return null;
+				}
+				recovery.document=new AgilitextDocument(recovery.file, charset);
+			}
+			else if(type==BASE_EMPTY)
+			{
+				recovery.document=new AgilitextDocument();
+			}
+			else
+			{
+				return null;
+			}
+			valid=in.position();
+
+			//replay edit records until end of journal or a torn record
+			while(in.hasRemaining())
+			{
+				type=in.get();
+				if(type==INSERT)
+				{
+					int offset=in.getInt();
+					recovery.document.insertString(offset, readUTF(in), null);
+					recovery.edits++;
+					recovery.clean=false;
+				}
+				else if(type==REMOVE)
+				{
+					int offset=in.getInt();
+					recovery.document.remove(offset, in.getInt());
+					recovery.edits++;
+					recovery.clean=false;
+				}
+				else if(type==CLEAN)
+				{
+					recovery.clean=true;
+				}
+				else
+				{
+					break;
+				}
+				valid=in.position();
+			}
+		}
+		catch(BufferUnderflowException e)
+		{
+			//last record was torn by a crash, replay stops before it
+		}
+		catch(BadLocationException e)
+		{
+			//record does not fit document, replay stops before it
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error and start without recovery
+			System.err.println("Journal could not be recovered: "+e.getMessage());
+			return null;
+		}
+
+		try
+		{
+			//drop anything after the last valid record so new records follow it
+			synchronized(this)
+			{
+				channel.truncate(valid);
+			}
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error
+			System.err.println("Journal could not be truncated: "+e.getMessage());
+		}
+		return recovery.document==null? null : recovery;
+	}
+
+	/**
+	 * readUTF: Reads a length prefixed modified UTF-8 String from a buffer
+	 * @param in: Buffer to read from
+	 * @return: Decoded String
+	 * @throws IOException: If the String is malformed
+	 */
+	private static String readUTF(ByteBuffer in) throws IOException
+	{
+		int length=in.getShort()&0xffff;
+		byte[] bytes=new byte[length+2];
+		bytes[0]=(byte)(length>>8);
+		bytes[1]=(byte)length;
+		in.get(bytes, 2, length);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+	/**
+	 * Mark: Position in the kept edits at which a snapshot was taken
+	 */
+	public static class Mark
+	{
+		private int start;
+		private boolean released;
+
+		private Mark(int start)
+		{
+			this.start=start;
+		}
+	}
+
+	/**
+	 * Recovery: Document rebuilt from the journal of the last session
+	 */
+	public static class Recovery
+	{
+		//recovered document and the file it was based on, or null
+		protected AgilitextDocument document;
+		protected File file;
+		//number of replayed edits and whether the session closed cleanly
+		protected int edits;
+		protected boolean clean=true;
+	}
+}
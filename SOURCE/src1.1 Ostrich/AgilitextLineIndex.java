@@ -0,0 +1,577 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * AgilitextLineIndex: Index of line start offsets kept in chunks of int arrays and updated
+ * from document events, starting a line after each LF as the document's line elements do
+ *
+ * A CR is kept in the text as loaded and is part of its line, so a CRLF ends one line and
+ * a lone CR ends none. As a line start depends only on the char before it, an edit only
+ * adds lines after LFs it inserts and drops lines after LFs it removes.
+ *
+ * Each chunk holds offsets that are off by its own delta, and records the line it starts
+ * at. Chunks from the gap on are also off by a shared delta and line delta, so an edit
+ * only rewrites entries in its own chunk, shifts later chunks through the shared values,
+ * and moves the gap over the chunks between it and the last edit rather than the lines.
+ * Lookups binary search the chunks' first entries, then the entries of one chunk.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextLineIndex implements DocumentListener
+{
+	//entries a chunk is filled with when laid out, and most it holds before it is split
+	private static final int CHUNK=1024;
+	private static final int MAX_CHUNK=2*CHUNK;
+
+	//initial capacity of chunk arrays
+	private static final int INITIAL_CHUNKS=16;
+
+	//private objects
+
+	//indexed document
+	private Document doc;
+
+	//chunks of line starts, each holding sizes entries off by its delta, from its first line
+	private int[][] chunks;
+	private int[] sizes;
+	private int[] deltas;
+	private int[] firstLines;
+	private int chunkCount;
+	private int count;
+
+	//first chunk that is also off by the shared delta and line delta
+	private int gap;
+	private int delta;
+	private int lineDelta;
+
+	//line starts found by the last scan, in order
+	private int[] found;
+	private int foundCount;
+
+	//partial return segment used to scan document text
+	private Segment segment;
+
+	/**
+	 * AgilitextLineIndex: Constructor
+	 */
+	public AgilitextLineIndex()
+	{
+		chunks=new int[INITIAL_CHUNKS][];
+		sizes=new int[INITIAL_CHUNKS];
+		deltas=new int[INITIAL_CHUNKS];
+		firstLines=new int[INITIAL_CHUNKS];
+		chunks[0]=new int[CHUNK];
+		found=new int[CHUNK];
+		segment=new Segment();
+		segment.setPartialReturn(true);
+		clear();
+	}
+
+	/**
+	 * setDocument: Indexes a new document and follows its changes
+	 * @param doc: The document to index
+	 */
+	public void setDocument(Document doc)
+	{
+		//stop following old document
+		if(this.doc!=null)
+		{
+			this.doc.removeDocumentListener(this);
+		}
+		this.doc=doc;
+
+		//index whole text after the first line and follow new document
+		clear();
+		doc.render(new Runnable()
+		{
+			public void run()
+			{
+				scan(1, AgilitextLineIndex.this.doc.getLength());
+				insertFound(0, 1);
+			}
+		});
+		doc.addDocumentListener(this);
+	}
+
+	/**
+	 * getLineCount: Used to get number of lines in the document
+	 * @return: Line count, at least 1
+	 */
+	public int getLineCount()
+	{
+		return count;
+	}
+
+	/**
+	 * getHeapBytes: Used to estimate the heap held by the chunks and their bookkeeping
+	 * @return: Estimated bytes
+	 */
+	public long getHeapBytes()
+	{
+		long bytes=4L*found.length+16L*chunks.length;
+		for(int i=0;i<chunkCount;i++)
+		{
+			bytes+=16+4L*chunks[i].length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * getLineStart: Used to get the offset a line starts at
+	 * @param line: Zero based line number
+	 * @return: Offset of first char of line
+	 */
+	public int getLineStart(int line)
+	{
+		//if line is outside index, throw exception
+		if(line<0||line>=count)
+		{
+			throw new IndexOutOfBoundsException("Line "+line+" of "+count);
+		}
+		int chunk=findChunkOfLine(line);
+		return chunks[chunk][line-chunkLine(chunk)]+chunkDelta(chunk);
+	}
+
+	/**
+	 * getLine: Used to get the line containing an offset
+	 * @param offset: Document offset
+	 * @return: Zero based line number
+	 */
+	public int getLine(int offset)
+	{
+		int chunk=findChunk(offset);
+		return chunkLine(chunk)+upperBound(chunk, offset)-1;
+	}
+
+	/**
+	 * insertUpdate: Shifts lines after inserted text and indexes lines inside it
+	 * @param e: Document event
+	 */
+	public void insertUpdate(DocumentEvent e)
+	{
+		int offset=e.getOffset();
+		int length=e.getLength();
+
+		//shift lines starting after insert point in its chunk, and later chunks by the shared delta
+		int chunk=findChunk(offset);
+		moveGap(chunk+1);
+		int index=upperBound(chunk, offset);
+		int[] starts=chunks[chunk];
+		for(int i=index;i<sizes[chunk];i++)
+		{
+			starts[i]+=length;
+		}
+		delta+=length;
+
+		//index lines after inserted LFs
+		scan(offset+1, offset+length);
+		insertFound(chunk, index);
+	}
+
+	/**
+	 * removeUpdate: Drops lines inside removed text and shifts lines after it
+	 * @param e: Document event
+	 */
+	public void removeUpdate(DocumentEvent e)
+	{
+		int offset=e.getOffset();
+		int length=e.getLength();
+		int end=offset+length;
+
+		//drop lines starting inside removed range, the chunks from first to last holding them
+		int first=findChunk(offset);
+		int last=findChunk(end);
+		moveGap(last+1);
+		int from=upperBound(first, offset);
+		int removed;
+		if(first==last)
+		{
+			//shift lines after the range within the same chunk
+			int to=upperBound(first, end);
+			int[] starts=chunks[first];
+			removed=to-from;
+			sizes[first]-=removed;
+			for(int i=from;i<sizes[first];i++)
+			{
+				starts[i]=starts[i+removed]-length;
+			}
+		}
+		else
+		{
+			//cut first chunk after offset, and last chunk up to end, shifting the rest of it
+			int to=upperBound(last, end);
+			removed=sizes[first]-from+to;
+			for(int i=first+1;i<last;i++)
+			{
+				removed+=sizes[i];
+			}
+			sizes[first]=from;
+			System.arraycopy(chunks[last], to, chunks[last], 0, sizes[last]-to);
+			sizes[last]-=to;
+			deltas[last]-=length;
+			firstLines[last]=firstLines[first]+from;
+
+			//drop chunks left empty, which lie right after the first
+			closeChunks(first+1, sizes[last]==0? last-first : last-first-1);
+		}
+		count-=removed;
+		delta-=length;
+		lineDelta-=removed;
+
+		//keep chunks from dwindling after repeated removes
+		merge(first);
+		if(first>0)
+		{
+			merge(first-1);
+		}
+	}
+
+	/**
+	 * changedUpdate: Attribute changes do not move lines
+	 * @param e: Document event
+	 */
+	public void changedUpdate(DocumentEvent e)
+	{
+		//plain text has no attributes that affect lines
+	}
+
+	/**
+	 * clear: Resets index to a single empty line
+	 */
+	private void clear()
+	{
+		//release chunks after the first
+		if(chunkCount>1)
+		{
+			Arrays.fill(chunks, 1, chunkCount, null);
+		}
+		chunks[0][0]=0;
+		sizes[0]=1;
+		deltas[0]=0;
+		firstLines[0]=0;
+		chunkCount=1;
+		count=1;
+		gap=1;
+		delta=0;
+		lineDelta=0;
+	}
+
+	/**
+	 * chunkDelta: Used to get the delta added to a chunk's entries
+	 * @param chunk: Chunk index
+	 * @return: Delta of chunk, with the shared delta after the gap
+	 */
+	private int chunkDelta(int chunk)
+	{
+		return chunk<gap? deltas[chunk] : deltas[chunk]+delta;
+	}
+
+	/**
+	 * chunkLine: Used to get the line a chunk's first entry starts
+	 * @param chunk: Chunk index
+	 * @return: Zero based line number
+	 */
+	private int chunkLine(int chunk)
+	{
+		return chunk<gap? firstLines[chunk] : firstLines[chunk]+lineDelta;
+	}
+
+	/**
+	 * findChunk: Binary searches for the last chunk starting at or before an offset
+	 * @param offset: Document offset
+	 * @return: Chunk index, 0 if no chunk starts before offset
+	 */
+	private int findChunk(int offset)
+	{
+		int low=0;
+		int high=chunkCount-1;
+		while(low<high)
+		{
+			int mid=(low+high+1)>>>1;
+			if(chunks[mid][0]+chunkDelta(mid)<=offset)
+			{
+				low=mid;
+			}
+			else
+			{
+				high=mid-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * findChunkOfLine: Binary searches for the chunk holding a line
+	 * @param line: Zero based line number, within the index
+	 * @return: Chunk index
+	 */
+	private int findChunkOfLine(int line)
+	{
+		int low=0;
+		int high=chunkCount-1;
+		while(low<high)
+		{
+			int mid=(low+high+1)>>>1;
+			if(chunkLine(mid)<=line)
+			{
+				low=mid;
+			}
+			else
+			{
+				high=mid-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * upperBound: Binary searches a chunk for the first line starting after an offset
+	 * @param chunk: Chunk index
+	 * @param offset: Document offset
+	 * @return: Index within chunk of first entry greater than offset
+	 */
+	private int upperBound(int chunk, int offset)
+	{
+		int[] starts=chunks[chunk];
+		int target=offset-chunkDelta(chunk);
+		int low=0;
+		int high=sizes[chunk];
+		while(low<high)
+		{
+			int mid=(low+high)>>>1;
+			if(starts[mid]<=target)
+			{
+				low=mid+1;
+			}
+			else
+			{
+				high=mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * moveGap: Moves the gap to a chunk index, applying or removing the shared values on
+	 * moved chunks
+	 * @param index: New gap position
+	 */
+	private void moveGap(int index)
+	{
+		//move chunks before new position to after the gap
+		while(gap>index)
+		{
+			gap--;
+			deltas[gap]-=delta;
+			firstLines[gap]-=lineDelta;
+		}
+		//move chunks after new position to before the gap
+		while(gap<index)
+		{
+			deltas[gap]+=delta;
+			firstLines[gap]+=lineDelta;
+			gap++;
+		}
+	}
+
+	/**
+	 * openChunks: Opens empty chunk slots, growing the chunk arrays when full
+	 * @param index: Position of first slot, not after the gap
+	 * @param n: Number of slots
+	 */
+	private void openChunks(int index, int n)
+	{
+		//if arrays are full, grow them
+		if(chunkCount+n>chunks.length)
+		{
+			int capacity=Math.max(chunks.length*2, chunkCount+n);
+			chunks=Arrays.copyOf(chunks, capacity);
+			sizes=Arrays.copyOf(sizes, capacity);
+			deltas=Arrays.copyOf(deltas, capacity);
+			firstLines=Arrays.copyOf(firstLines, capacity);
+		}
+		int tail=chunkCount-index;
+		System.arraycopy(chunks, index, chunks, index+n, tail);
+		System.arraycopy(sizes, index, sizes, index+n, tail);
+		System.arraycopy(deltas, index, deltas, index+n, tail);
+		System.arraycopy(firstLines, index, firstLines, index+n, tail);
+		chunkCount+=n;
+		gap+=n;
+	}
+
+	/**
+	 * closeChunks: Removes chunk slots
+	 * @param index: Position of first slot, with all slots before the gap
+	 * @param n: Number of slots
+	 */
+	private void closeChunks(int index, int n)
+	{
+		int tail=chunkCount-index-n;
+		System.arraycopy(chunks, index+n, chunks, index, tail);
+		System.arraycopy(sizes, index+n, sizes, index, tail);
+		System.arraycopy(deltas, index+n, deltas, index, tail);
+		System.arraycopy(firstLines, index+n, firstLines, index, tail);
+		chunkCount-=n;
+		Arrays.fill(chunks, chunkCount, chunkCount+n, null);
+		gap-=n;
+	}
+
+	/**
+	 * merge: Merges a chunk with the one after it when both fit in a single chunk
+	 * @param chunk: Chunk index
+	 */
+	private void merge(int chunk)
+	{
+		//if there is no next chunk or the two are too full, leave them
+		int next=chunk+1;
+		if(next>=chunkCount||sizes[chunk]+sizes[next]>CHUNK)
+		{
+			return;
+		}
+
+		//append next chunk's entries, rebased to this chunk's delta
+		moveGap(next+1);
+		int size=sizes[chunk];
+		int[] starts=chunks[chunk];
+		if(starts.length<size+sizes[next])
+		{
+			starts=chunks[chunk]=Arrays.copyOf(starts, CHUNK);
+		}
+		int rebase=deltas[next]-deltas[chunk];
+		for(int i=0;i<sizes[next];i++)
+		{
+			starts[size+i]=chunks[next][i]+rebase;
+		}
+		sizes[chunk]+=sizes[next];
+		closeChunks(next, 1);
+	}
+
+	/**
+	 * insertFound: Inserts the line starts found by the last scan into a chunk, splitting
+	 * it into new chunks when they do not fit
+	 * @param chunk: Chunk index, right before the gap
+	 * @param index: Entry index within chunk, at least 1
+	 */
+	private void insertFound(int chunk, int index)
+	{
+		//if scan found no lines, nothing to insert
+		if(foundCount==0)
+		{
+			return;
+		}
+		count+=foundCount;
+		lineDelta+=foundCount;
+
+		//if chunk has room, insert in place
+		int size=sizes[chunk];
+		if(size+foundCount<=MAX_CHUNK)
+		{
+			int[] starts=chunks[chunk];
+			if(starts.length<size+foundCount)
+			{
+				starts=chunks[chunk]=Arrays.copyOf(starts, Math.min(MAX_CHUNK, Math.max(starts.length*2, size+foundCount)));
+			}
+			System.arraycopy(starts, index, starts, index+foundCount, size-index);
+			for(int i=0;i<foundCount;i++)
+			{
+				starts[index+i]=found[i]-deltas[chunk];
+			}
+			sizes[chunk]+=foundCount;
+		}
+		else
+		{
+			//cut chunk at index, and lay found lines and the rest of the chunk out in new chunks
+			int tail=size-index;
+			int[] rest=Arrays.copyOf(found, foundCount+tail);
+			for(int i=0;i<tail;i++)
+			{
+				rest[foundCount+i]=chunks[chunk][index+i]+deltas[chunk];
+			}
+			sizes[chunk]=index;
+			int n=(rest.length+CHUNK-1)/CHUNK;
+			openChunks(chunk+1, n);
+			int line=firstLines[chunk]+index;
+			for(int i=0;i<n;i++)
+			{
+				int from=i*CHUNK;
+				int to=Math.min(from+CHUNK, rest.length);
+				chunks[chunk+1+i]=Arrays.copyOfRange(rest, from, to);
+				sizes[chunk+1+i]=to-from;
+				deltas[chunk+1+i]=0;
+				firstLines[chunk+1+i]=line;
+				line+=to-from;
+			}
+		}
+
+		//release a found array grown by a large scan
+		if(found.length>MAX_CHUNK)
+		{
+			found=new int[CHUNK];
+		}
+		foundCount=0;
+	}
+
+	/**
+	 * scan: Collects the starts of every line within an offset range into the found array
+	 * @param from: First offset that may start a line, at least 1
+	 * @param to: Last offset that may start a line
+	 */
+	private void scan(int from, int to)
+	{
+		//read the chars before each offset of the range, since a line starts after an LF
+		foundCount=0;
+		int offset=from-1;
+		int end=Math.min(to, doc.getLength());
+		try
+		{
+			while(offset<end)
+			{
+				doc.getText(offset, end-offset, segment);
+				for(int i=0;i<segment.count;i++)
+				{
+					if(segment.array[segment.offset+i]=='\n')
+					{
+						//if found array is full, grow it
+						if(foundCount==found.length)
+						{
+							found=Arrays.copyOf(found, found.length*2);
+						}
+						found[foundCount++]=offset+i+1;
+					}
+				}
+				offset+=segment.count;
+			}
+		}
+		catch(BadLocationException e)
+		{
+			//ranges come from document length, if an error occurs print stack trace
+			e.printStackTrace();
+		}
+	}
+}
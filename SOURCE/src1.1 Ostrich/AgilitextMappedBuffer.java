@@ -0,0 +1,609 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * AgilitextMappedBuffer: Read-only character view of a memory-mapped file,
+ * decoded on demand from a sparse index of character/byte checkpoints that
+ * can be built all at once or chunk by chunk from a loader thread
+ *
+ * The mapping shares the file's pages, so another program writing the file in place changes the
+ * text and truncating it makes reads past its new end fault. isChanged compares the file with the
+ * size and time it had when mapped so that the user can be asked to reload it. Every chunk is
+ * checked against the file's current size before it is decoded, and a chunk past the end, or one
+ * whose read still faults, yields replacement chars and marks the buffer changed instead of
+ * failing. A file replaced by renaming another over it, as saves do, leaves the mapped bytes as
+ * they were.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextMappedBuffer
+{
+	//number of chars decoded between two checkpoints
+	protected static final int CHUNK_CHARS=4096;
+
+	//private objects
+
+	//mapped file, and its identity, size and modification time when mapped
+	private File file;
+	private Object fileKey;
+	private long fileSize;
+	private FileTime fileModified;
+
+	//channel of the mapped file, and true once a read of it was found past its end or faulted
+	private FileChannel channel;
+	private volatile boolean faulted;
+
+	//mapped file bytes and their charset
+	private MappedByteBuffer bytes;
+	private Charset charset;
+	private CharsetDecoder decoder;
+
+	//indexing decoder and its position in the mapped bytes, null once fully indexed
+	private CharsetDecoder indexDecoder;
+	private ByteBuffer indexInput;
+
+	//checkpoint index, chunk k spans chars charOffsets[k] to charOffsets[k+1]
+	private int[] charOffsets;
+	private int[] byteOffsets;
+	private int checkpointCount;
+
+	//last decoded chunk and reused buffers used to decode it
+	private char[] chunk;
+	private int chunkIndex;
+	private ByteBuffer chunkInput;
+	private CharBuffer chunkOutput;
+
+	/**
+	 * AgilitextMappedBuffer: Constructor
+	 * @param file: The file to map
+	 * @param charset: The charset used to decode the file
+	 * @throws IOException: If the file cannot be mapped
+	 */
+	public AgilitextMappedBuffer(File file, Charset charset) throws IOException
+	{
+		//if charset cannot be decoded from an arbitrary checkpoint
+		if(!isMappable(charset))
+		{
+			throw new IOException("Charset "+charset.name()+" cannot be mapped");
+		}
+
+		//record file as mapped, to tell later if it was changed in place
+		this.file=file;
+		stamp();
+
+		//open file and map it as read only, keeping channel open to check the mapped file's size before reads
+		RandomAccessFile raf=new RandomAccessFile(file, "r");
+		try
+		{
+			channel=raf.getChannel();
+			//if file is too large for a single mapping
+			if(channel.size()>Integer.MAX_VALUE)
+			{
+				throw new IOException("File is too large to be mapped");
+			}
+			bytes=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch(IOException e)
+		{
+			raf.close();
+			throw e;
+		}
+
+		//initialize decoders, replacing malformed input the same way on every pass
+		this.charset=charset;
+		decoder=newDecoder(charset);
+		indexDecoder=newDecoder(charset);
+		indexInput=bytes.duplicate();
+
+		//initialize chunk cache
+		chunk=new char[CHUNK_CHARS];
+		chunkIndex=-1;
+		chunkInput=bytes.duplicate();
+		chunkOutput=CharBuffer.wrap(chunk);
+
+		//initialize checkpoint arrays using an estimate of the chunk count
+		int estimate=bytes.capacity()/CHUNK_CHARS+2;
+		charOffsets=new int[estimate];
+		byteOffsets=new int[estimate];
+		checkpointCount=0;
+		addCheckpoint(0, 0);
+	}
+
+	/**
+	 * newDecoder: Creates a decoder that replaces malformed and unmappable input
+	 * @param charset: The charset to decode
+	 * @return: New decoder
+	 */
+	private static CharsetDecoder newDecoder(Charset charset)
+	{
+		return charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * stamp: Records the identity, size and modification time of the mapped file
+	 * @throws IOException: If the file's attributes cannot be read
+	 */
+	private void stamp() throws IOException
+	{
+		BasicFileAttributes attributes=Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		fileKey=attributes.fileKey();
+		fileSize=attributes.size();
+		fileModified=attributes.lastModifiedTime();
+	}
+
+	/**
+	 * getFile: Used to get the mapped file
+	 * @return: Mapped file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * isChanged: Used to determine if the mapped bytes may no longer be the text that was loaded,
+	 * because the file was written in place or a read of it faulted
+	 * @return: true if file changed since it was mapped or last accepted
+	 */
+	public boolean isChanged()
+	{
+		if(faulted)
+		{
+			return true;
+		}
+		try
+		{
+			BasicFileAttributes attributes=Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			//if another file was renamed over it, the mapping still holds the old one's bytes
+			if(fileKey!=null&&!fileKey.equals(attributes.fileKey()))
+			{
+				return false;
+			}
+			return attributes.size()!=fileSize||!attributes.lastModifiedTime().equals(fileModified);
+		}
+		catch(IOException e)
+		{
+			//if file was deleted or moved away, the mapping still holds its bytes
+			return false;
+		}
+	}
+
+	/**
+	 * acceptChanges: Keeps using the mapped bytes as they are now, so that isChanged only reports
+	 * changes made from now on, eg. once the user has chosen not to reload the file
+	 */
+	public void acceptChanges()
+	{
+		faulted=false;
+		try
+		{
+			stamp();
+		}
+		catch(IOException e)
+		{
+			//if file is gone, isChanged has nothing to compare anyway
+		}
+	}
+
+	/**
+	 * isMappable: Used to determine if a charset can be decoded starting from any checkpoint
+	 * @param charset: The charset to check
+	 * @return: true if charset is stateless, false if it is not
+	 */
+	public static boolean isMappable(Charset charset)
+	{
+		//byte order marks and shift states make these charsets depend on preceding bytes
+		String name=charset.name().toUpperCase();
+		return !(name.startsWith("UTF-16")||name.startsWith("UTF-32")||name.startsWith("X-UTF-16")||name.startsWith("X-UTF-32")||name.contains("2022"));
+	}
+
+	/**
+	 * index: Decodes the rest of the mapped file, recording a checkpoint every chunk
+	 */
+	public void index()
+	{
+		//decode into a reused chunk sized buffer until the whole file is indexed
+		CharBuffer out=CharBuffer.allocate(CHUNK_CHARS);
+		while(decodeNext(out)>=0)
+		{
+			//checkpoints are recorded by decodeNext
+		}
+	}
+
+	/**
+	 * decodeNext: Decodes the next chunk of the file and records a checkpoint at its end
+	 * @param out: Buffer receiving the decoded chars, flipped for reading on return
+	 * @return: Number of chars decoded, or -1 if the file was already fully indexed
+	 */
+	public int decodeNext(CharBuffer out)
+	{
+		//if whole file has been indexed
+		if(indexInput==null)
+		{
+			return -1;
+		}
+
+		//decode until out is full, a full buffer always ends on a character boundary,
+		//reading at most a few bytes per char
+		out.clear();
+		boolean readable=isReadable(Math.min(indexInput.limit(), indexInput.position()+4*out.capacity()));
+		try
+		{
+			if(readable)
+			{
+				indexDecoder.decode(indexInput, out, true);
+			}
+		}
+		catch(InternalError e)
+		{
+			//if file was truncated after the check, reading its missing pages faults
+			readable=false;
+		}
+		//if file was truncated under the mapping, index ends at the last whole chunk
+		if(!readable)
+		{
+			faulted=true;
+			indexInput=null;
+			out.clear();
+			out.flip();
+			return -1;
+		}
+		boolean done=!indexInput.hasRemaining()||out.position()==0;
+		//if input is exhausted, flush any trailing decoder output
+		if(done)
+		{
+			indexDecoder.flush(out);
+		}
+
+		//record checkpoint at end of decoded chars
+		int n=out.position();
+		if(n>0)
+		{
+			addCheckpoint(length()+n, indexInput.position());
+		}
+		if(done)
+		{
+			indexInput=null;
+		}
+		out.flip();
+		return n;
+	}
+
+	/**
+	 * isIndexed: Used to determine if the whole file has been indexed
+	 * @return: true if every byte has been indexed
+	 */
+	public boolean isIndexed()
+	{
+		return indexInput==null;
+	}
+
+	/**
+	 * getByteLength: Used to get the size of the mapped file
+	 * @return: Number of mapped bytes
+	 */
+	public int getByteLength()
+	{
+		return bytes.capacity();
+	}
+
+	/**
+	 * getIndexedBytes: Used to get the number of bytes indexed so far
+	 * @return: Byte offset of last checkpoint
+	 */
+	public synchronized int getIndexedBytes()
+	{
+		return byteOffsets[checkpointCount-1];
+	}
+
+	/**
+	 * getHeapBytes: Used to estimate the heap held by the checkpoint index and chunk cache,
+	 * the file itself being mapped outside the heap
+	 * @return: Estimated bytes
+	 */
+	public synchronized long getHeapBytes()
+	{
+		return 4L*(charOffsets.length+byteOffsets.length)+2L*chunk.length;
+	}
+
+	/**
+	 * addCheckpoint: Appends a char/byte checkpoint, growing the index when needed
+	 * @param charOffset: Char offset of checkpoint
+	 * @param byteOffset: Byte offset of checkpoint
+	 */
+	private synchronized void addCheckpoint(int charOffset, int byteOffset)
+	{
+		//if index is full, grow it
+		if(checkpointCount==charOffsets.length)
+		{
+			int[] tmpChars=new int[charOffsets.length*2];
+			int[] tmpBytes=new int[byteOffsets.length*2];
+			System.arraycopy(charOffsets, 0, tmpChars, 0, checkpointCount);
+			System.arraycopy(byteOffsets, 0, tmpBytes, 0, checkpointCount);
+			charOffsets=tmpChars;
+			byteOffsets=tmpBytes;
+		}
+		charOffsets[checkpointCount]=charOffset;
+		byteOffsets[checkpointCount]=byteOffset;
+		checkpointCount++;
+	}
+
+	/**
+	 * length: Used to get the number of chars in the mapped file
+	 * @return: Number of decoded chars
+	 */
+	public synchronized int length()
+	{
+		return charOffsets[checkpointCount-1];
+	}
+
+	/**
+	 * getCharset: Used to get the charset used to decode the file
+	 * @return: Charset of mapped file
+	 */
+	public Charset getCharset()
+	{
+		return charset;
+	}
+
+	/**
+	 * getChars: Copies a range of decoded chars into an array
+	 * @param where: Starting char offset
+	 * @param len: Number of chars to copy
+	 * @param dest: Destination array
+	 * @param destPos: Starting position in destination array
+	 */
+	public synchronized void getChars(int where, int len, char[] dest, int destPos)
+	{
+		//find chunk containing where
+		int k=findChunk(where);
+
+		//copy from successive chunks until len chars have been copied
+		while(len>0)
+		{
+			decodeChunk(k);
+			int from=where-charOffsets[k];
+			int count=Math.min(len, charOffsets[k+1]-where);
+			System.arraycopy(chunk, from, dest, destPos, count);
+			where+=count;
+			destPos+=count;
+			len-=count;
+			k++;
+		}
+	}
+
+	/**
+	 * getChunkEnd: Used to get the end of the chunk containing a char offset
+	 * @param where: Char offset
+	 * @return: Char offset where the containing chunk ends
+	 */
+	public synchronized int getChunkEnd(int where)
+	{
+		return charOffsets[findChunk(where)+1];
+	}
+
+	/**
+	 * newReader: Creates a reader with its own decoder over the chars indexed so far,
+	 * so that several threads can decode the file at once without sharing the chunk cache
+	 * @return: New reader
+	 */
+	public synchronized Reader newReader()
+	{
+		//checkpoints are only ever appended, so the arrays can be shared up to the current count
+		return new Reader(charOffsets, byteOffsets, checkpointCount);
+	}
+
+	/**
+	 * findChunk: Binary searches checkpoints for the chunk containing a char offset
+	 * @param where: Char offset
+	 * @return: Index of chunk
+	 */
+	private int findChunk(int where)
+	{
+		return findChunk(charOffsets, checkpointCount, where);
+	}
+
+	/**
+	 * findChunk: Binary searches a checkpoint index for the chunk containing a char offset
+	 * @param charOffsets: Char offsets of checkpoints
+	 * @param checkpointCount: Number of checkpoints
+	 * @param where: Char offset
+	 * @return: Index of chunk
+	 */
+	private static int findChunk(int[] charOffsets, int checkpointCount, int where)
+	{
+		//search for last checkpoint at or before where, excluding the end checkpoint
+		int low=0;
+		int high=checkpointCount-2;
+		while(low<high)
+		{
+			int mid=(low+high+1)>>>1;
+			if(charOffsets[mid]<=where)
+			{
+				low=mid;
+			}
+			else
+			{
+				high=mid-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * decodeChunk: Decodes a chunk into the chunk cache if it is not already cached
+	 * @param k: Index of chunk
+	 */
+	private void decodeChunk(int k)
+	{
+		//if chunk is already cached, do nothing
+		if(k==chunkIndex)
+		{
+			return;
+		}
+
+		decode(decoder, chunkInput, chunkOutput, byteOffsets[k], byteOffsets[k+1]);
+		chunkIndex=k;
+	}
+
+	/**
+	 * isReadable: Used to determine if the mapped file still holds the bytes up to an offset
+	 * @param byteEnd: Byte offset to be read up to
+	 * @return: true if file is at least that long
+	 */
+	private boolean isReadable(int byteEnd)
+	{
+		try
+		{
+			return channel.size()>=byteEnd;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * decode: Decodes exactly the bytes between two checkpoints, or fills the chunk with
+	 * replacement chars if the mapped bytes can no longer be read
+	 * @param decoder: Decoder to use
+	 * @param input: Duplicate of the mapped bytes
+	 * @param output: Chunk sized buffer receiving the chars
+	 * @param byteStart: Byte offset of first checkpoint
+	 * @param byteEnd: Byte offset of second checkpoint
+	 */
+	private void decode(CharsetDecoder decoder, ByteBuffer input, CharBuffer output, int byteStart, int byteEnd)
+	{
+		input.limit(byteEnd);
+		input.position(byteStart);
+		output.clear();
+		decoder.reset();
+		boolean readable=isReadable(byteEnd);
+		try
+		{
+			if(readable)
+			{
+				decoder.decode(input, output, true);
+				decoder.flush(output);
+			}
+		}
+		catch(InternalError e)
+		{
+			//if file was truncated after the check, reading its missing pages faults
+			readable=false;
+		}
+		//if file was truncated under the mapping, show chunk as replacement chars
+		if(!readable)
+		{
+			faulted=true;
+			output.clear();
+			while(output.hasRemaining())
+			{
+				output.put('\uFFFD');
+			}
+		}
+	}
+
+	/**
+	 * Reader: Decodes chars indexed before it was created, using its own decoder and chunk cache.
+	 * A reader is not thread safe itself, each thread uses its own.
+	 */
+	public class Reader
+	{
+		//checkpoints indexed when reader was created
+		private int[] charOffsets;
+		private int[] byteOffsets;
+		private int checkpointCount;
+
+		//last decoded chunk and buffers used to decode it
+		private CharsetDecoder decoder;
+		private char[] chunk;
+		private int chunkIndex;
+		private ByteBuffer chunkInput;
+		private CharBuffer chunkOutput;
+
+		private Reader(int[] charOffsets, int[] byteOffsets, int checkpointCount)
+		{
+			this.charOffsets=charOffsets;
+			this.byteOffsets=byteOffsets;
+			this.checkpointCount=checkpointCount;
+			decoder=newDecoder(charset);
+			chunk=new char[CHUNK_CHARS];
+			chunkIndex=-1;
+			chunkInput=bytes.duplicate();
+			chunkOutput=CharBuffer.wrap(chunk);
+		}
+
+		/**
+		 * copy: Creates another reader over the same checkpoints, for use by another thread
+		 * @return: New reader
+		 */
+		public Reader copy()
+		{
+			return new Reader(charOffsets, byteOffsets, checkpointCount);
+		}
+
+		/**
+		 * getChars: Copies a range of decoded chars into an array
+		 * @param where: Starting char offset
+		 * @param len: Number of chars to copy
+		 * @param dest: Destination array
+		 * @param destPos: Starting position in destination array
+		 */
+		public void getChars(int where, int len, char[] dest, int destPos)
+		{
+			//copy from successive chunks until len chars have been copied
+			int k=findChunk(charOffsets, checkpointCount, where);
+			while(len>0)
+			{
+				if(k!=chunkIndex)
+				{
+					decode(decoder, chunkInput, chunkOutput, byteOffsets[k], byteOffsets[k+1]);
+					chunkIndex=k;
+				}
+				int from=where-charOffsets[k];
+				int count=Math.min(len, charOffsets[k+1]-where);
+				System.arraycopy(chunk, from, dest, destPos, count);
+				where+=count;
+				destPos+=count;
+				len-=count;
+				k++;
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.text.Document;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AgilitextMetrics: Live metrics of an editor window, registered with the platform MBean server
+ * as Agilitext:type=Editor,name=Window n so that JConsole and VisualVM can show them
+ *
+ * Operation timings are recorded by the text area, its task scheduler and its find window.
+ * Document figures are read when a client asks for them, on a JMX thread while the event thread
+ * keeps editing, so they are read without waiting on the event thread and may miss an edit
+ * in progress. Loading the JMX classes is left to register(), called once the window has painted.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextMetrics implements AgilitextMetricsMXBean
+{
+	//kinds of timed operation, matching the kinds of task run by the scheduler
+	public static final String LOAD="load";
+	public static final String SAVE="save";
+	public static final String FIND="find";
+	public static final String REPLACE="replace";
+	public static final String COUNT="count";
+	public static final String STATS="stats";
+	public static final String PAINT="paint";
+
+	//number of windows registered, naming each one
+	private static final AtomicInteger windows=new AtomicInteger();
+
+	//private objects
+
+	//text area measured
+	private AgilitextTextArea textArea;
+
+	//timings by kind of operation, filled by the constructor and only read after
+	private HashMap<String, AgilitextTiming> timings;
+
+	//registered name, or null if not registered
+	private ObjectName name;
+
+	/**
+	 * AgilitextMetrics: Constructor
+	 * @param textArea: The text area measured
+	 */
+	public AgilitextMetrics(AgilitextTextArea textArea)
+	{
+		this.textArea=textArea;
+		timings=new HashMap<String, AgilitextTiming>();
+		for(String kind : new String[]{LOAD, SAVE, FIND, REPLACE, COUNT, STATS, PAINT})
+		{
+			timings.put(kind, new AgilitextTiming());
+		}
+	}
+
+	/**
+	 * register: Publishes the metrics on the platform MBean server
+	 */
+	public void register()
+	{
+		//if already registered, do nothing
+		if(name!=null)
+		{
+			return;
+		}
+		try
+		{
+			ObjectName next=new ObjectName("Agilitext:type=Editor,name=Window "+windows.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, next);
+			name=next;
+		}
+		catch(JMException e)
+		{
+			//if metrics cannot be published, editing is unaffected
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * unregister: Removes the metrics from the platform MBean server once the window closes
+	 */
+	public void unregister()
+	{
+		//if not registered, do nothing
+		if(name==null)
+		{
+			return;
+		}
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		catch(JMException e)
+		{
+			//if metrics are already gone, there is nothing to remove
+		}
+		name=null;
+	}
+
+	/**
+	 * record: Adds the duration of an operation
+	 * @param kind: Kind of operation, eg. SAVE, operations of other kinds are not timed
+	 * @param nanos: Duration in nanoseconds
+	 */
+	public void record(String kind, long nanos)
+	{
+		AgilitextTiming timing=timings.get(kind);
+		if(timing!=null)
+		{
+			timing.record(nanos);
+		}
+	}
+
+	/**
+	 * getFile: Used to get the path of the edited file
+	 * @return: File path, or an empty String for unsaved text
+	 */
+	public String getFile()
+	{
+		Object file=textArea.getDocument().getProperty(Document.StreamDescriptionProperty);
+		return (file instanceof File)? ((File)file).getPath() : "";
+	}
+
+	/**
+	 * getDocumentLength: Used to get the number of chars in the document
+	 * @return: Document length
+	 */
+	public int getDocumentLength()
+	{
+		return textArea.getDocument().getLength();
+	}
+
+	/**
+	 * getLineCount: Used to get the number of lines in the document
+	 * @return: Line count
+	 */
+	public int getLineCount()
+	{
+		return textArea.getLineIndex().getLineCount();
+	}
+
+	/**
+	 * getPieceCount: Used to get the number of pieces the document's text is split into
+	 * @return: Piece count
+	 */
+	public int getPieceCount()
+	{
+		return textArea.getBuffer().getPieceCount();
+	}
+
+	/**
+	 * getUndoBytes: Used to get the bytes held in memory by the undo history
+	 * @return: Estimated undo history size
+	 */
+	public long getUndoBytes()
+	{
+		return textArea.getUndoManager().getRetainedBytes();
+	}
+
+	/**
+	 * getModelHeapBytes: Used to get the heap used by the document's text, piece table and line index
+	 * @return: Estimated model size
+	 */
+	public long getModelHeapBytes()
+	{
+		return textArea.getBuffer().getHeapBytes()+textArea.getLineIndex().getHeapBytes();
+	}
+
+	/**
+	 * getMappedBytes: Used to get the size of the file mapped as the document's original text
+	 * @return: Mapped bytes
+	 */
+	public long getMappedBytes()
+	{
+		AgilitextMappedBuffer original=textArea.getBuffer().getOriginal();
+		return (original==null)? 0 : original.getByteLength();
+	}
+
+	/**
+	 * getLoadTiming: Used to get a copy of the load timing
+	 * @return: Load timing
+	 */
+	public AgilitextTiming getLoadTiming()
+	{
+		return timings.get(LOAD).copy();
+	}
+
+	/**
+	 * getSaveTiming: Used to get a copy of the save timing
+	 * @return: Save timing
+	 */
+	public AgilitextTiming getSaveTiming()
+	{
+		return timings.get(SAVE).copy();
+	}
+
+	/**
+	 * getFindTiming: Used to get a copy of the find timing
+	 * @return: Find timing
+	 */
+	public AgilitextTiming getFindTiming()
+	{
+		return timings.get(FIND).copy();
+	}
+
+	/**
+	 * getReplaceTiming: Used to get a copy of the replace timing
+	 * @return: Replace timing
+	 */
+	public AgilitextTiming getReplaceTiming()
+	{
+		return timings.get(REPLACE).copy();
+	}
+
+	/**
+	 * getCountTiming: Used to get a copy of the count timing
+	 * @return: Count timing
+	 */
+	public AgilitextTiming getCountTiming()
+	{
+		return timings.get(COUNT).copy();
+	}
+
+	/**
+	 * getStatsTiming: Used to get a copy of the stats timing
+	 * @return: Stats timing
+	 */
+	public AgilitextTiming getStatsTiming()
+	{
+		return timings.get(STATS).copy();
+	}
+
+	/**
+	 * getPaintTiming: Used to get a copy of the paint timing
+	 * @return: Paint timing
+	 */
+	public AgilitextTiming getPaintTiming()
+	{
+		return timings.get(PAINT).copy();
+	}
+
+	/**
+	 * resetTimings: Forgets every recorded duration
+	 */
+	public void resetTimings()
+	{
+		for(AgilitextTiming timing : timings.values())
+		{
+			timing.reset();
+		}
+	}
+}
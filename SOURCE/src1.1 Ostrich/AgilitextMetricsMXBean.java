@@ -0,0 +1,121 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+/**
+ * AgilitextMetricsMXBean: Management interface of an editor window's live metrics, shown by
+ * JConsole and VisualVM under the Agilitext domain
+ *
+ * Timings are read as composite values whose items are the getters of AgilitextTiming.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public interface AgilitextMetricsMXBean
+{
+	/**
+	 * getFile: Used to get the path of the edited file
+	 * @return: File path, or an empty String for unsaved text
+	 */
+	public String getFile();
+
+	/**
+	 * getDocumentLength: Used to get the number of chars in the document
+	 * @return: Document length
+	 */
+	public int getDocumentLength();
+
+	/**
+	 * getLineCount: Used to get the number of lines in the document
+	 * @return: Line count
+	 */
+	public int getLineCount();
+
+	/**
+	 * getPieceCount: Used to get the number of pieces the document's text is split into
+	 * @return: Piece count
+	 */
+	public int getPieceCount();
+
+	/**
+	 * getUndoBytes: Used to get the bytes held in memory by the undo history
+	 * @return: Estimated undo history size
+	 */
+	public long getUndoBytes();
+
+	/**
+	 * getModelHeapBytes: Used to get the heap used by the document's text, piece table and line index
+	 * @return: Estimated model size, not counting the mapped file
+	 */
+	public long getModelHeapBytes();
+
+	/**
+	 * getMappedBytes: Used to get the size of the file mapped as the document's original text
+	 * @return: Mapped bytes, held outside the heap
+	 */
+	public long getMappedBytes();
+
+	/**
+	 * getLoadTiming: Used to get the durations of file loads
+	 * @return: Load timing
+	 */
+	public AgilitextTiming getLoadTiming();
+
+	/**
+	 * getSaveTiming: Used to get the durations of saves
+	 * @return: Save timing
+	 */
+	public AgilitextTiming getSaveTiming();
+
+	/**
+	 * getFindTiming: Used to get the durations of finds of the next occurrence
+	 * @return: Find timing
+	 */
+	public AgilitextTiming getFindTiming();
+
+	/**
+	 * getReplaceTiming: Used to get the durations of replacing all occurrences, from planning to the applied edit
+	 * @return: Replace timing
+	 */
+	public AgilitextTiming getReplaceTiming();
+
+	/**
+	 * getCountTiming: Used to get the durations of counting occurrences
+	 * @return: Count timing
+	 */
+	public AgilitextTiming getCountTiming();
+
+	/**
+	 * getStatsTiming: Used to get the durations of reading document statistics
+	 * @return: Stats timing
+	 */
+	public AgilitextTiming getStatsTiming();
+
+	/**
+	 * getPaintTiming: Used to get the durations of text area paints
+	 * @return: Paint timing
+	 */
+	public AgilitextTiming getPaintTiming();
+
+	/**
+	 * resetTimings: Forgets every recorded duration, eg. before measuring a workload
+	 */
+	public void resetTimings();
+}
@@ -0,0 +1,58 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+/**
+ * AgilitextMonitor: Receives the progress of a long-running operation and tells it when to stop
+ *
+ * Operations check isCancelled() between units of work, so cancelling is cooperative and an
+ * operation stops at its next check, leaving nothing half written.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public interface AgilitextMonitor
+{
+	//monitor of operations that are never cancelled and whose progress nobody is shown
+	AgilitextMonitor UNMONITORED=new AgilitextMonitor()
+	{
+		public boolean isCancelled()
+		{
+			return false;
+		}
+
+		public void setProgress(int percent)
+		{
+			//nobody is shown progress
+		}
+	};
+
+	/**
+	 * isCancelled: Used to determine if the operation should stop
+	 * @return: true if operation should stop
+	 */
+	boolean isCancelled();
+
+	/**
+	 * setProgress: Called as the operation advances, possibly from several threads
+	 * @param percent: Percentage of work done
+	 */
+	void setProgress(int percent);
+}
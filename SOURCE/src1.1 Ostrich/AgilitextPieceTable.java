@@ -0,0 +1,366 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+/**
+ * AgilitextPieceTable: Document content over an AgilitextTextBuffer, adding the positions
+ * Swing documents expect
+ *
+ * Changes return an edit that cannot be undone on its own, as documents only notify undoable
+ * edit listeners of changes their content returns an edit for. History is kept by
+ * AgilitextUndoManager from the pieces of each change instead.
+ *
+ * Positions are kept sorted by offset. Those from a gap index on hold their distance from the end
+ * of the content instead of their offset, so an edit leaves them in place and only the positions
+ * between the last edit and the next one are converted, which keeps a run of edits moving through
+ * the text, eg. replacing every occurrence of a word, from touching every position on each edit.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextPieceTable extends AgilitextTextBuffer implements AbstractDocument.Content
+{
+	//private objects
+
+	//positions sorted by offset
+	private ArrayList<MarkRef> marks;
+	private ReferenceQueue<Mark> queue;
+
+	//index of first position held as a distance from end, and length of content those distances count back from
+	private int gap;
+	private int end;
+
+	//edit returned for every change, which history listeners record themselves
+	private static final UndoableEdit CHANGE=new AbstractUndoableEdit()
+	{
+		//initialize serialization long
+		private static final long serialVersionUID = 1L;
+
+		public boolean canUndo()
+		{
+			return false;
+		}
+
+		public boolean canRedo()
+		{
+			return false;
+		}
+	};
+
+	/**
+	 * AgilitextPieceTable: Constructor
+	 */
+	public AgilitextPieceTable()
+	{
+		this(null);
+	}
+
+	/**
+	 * AgilitextPieceTable: Constructor
+	 * @param original: The mapped file to use as original buffer, or null
+	 */
+	public AgilitextPieceTable(AgilitextMappedBuffer original)
+	{
+		super(original);
+		marks=new ArrayList<MarkRef>();
+		queue=new ReferenceQueue<Mark>();
+		end=length();
+	}
+
+	/**
+	 * insertString: Inserts a String into the content
+	 * @param where: Offset to insert at
+	 * @param str: String to insert
+	 * @return: UndoableEdit for the insert
+	 * @throws BadLocationException: If where is not a valid offset
+	 */
+	public UndoableEdit insertString(int where, String str) throws BadLocationException
+	{
+		//if where is outside of content
+		if(where<0||where>=length())
+		{
+			throw new BadLocationException("Invalid insert", where);
+		}
+		insert(where, str);
+		return CHANGE;
+	}
+
+	/**
+	 * remove: Removes a range of chars from the content
+	 * @param where: Offset to start removing at
+	 * @param nitems: Number of chars to remove
+	 * @return: UndoableEdit for the remove
+	 * @throws BadLocationException: If range is not valid
+	 */
+	public UndoableEdit remove(int where, int nitems) throws BadLocationException
+	{
+		//if range is outside of content, leaving implied newline in place
+		if(where<0||nitems<0||where+nitems>=length())
+		{
+			throw new BadLocationException("Invalid remove", where+nitems);
+		}
+		delete(where, nitems);
+		return CHANGE;
+	}
+
+	/**
+	 * getString: Used to get a range of chars as a String
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @return: String of chars
+	 * @throws BadLocationException: If range is not valid
+	 */
+	public synchronized String getString(int where, int len) throws BadLocationException
+	{
+		//if range is outside of content
+		if(where<0||len<0||where+len>length())
+		{
+			throw new BadLocationException("Invalid range", where+len);
+		}
+		return getText(where, len);
+	}
+
+	/**
+	 * getChars: Used to get a range of chars into a Segment
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @param txt: Segment to fill, honoring partial returns
+	 * @throws BadLocationException: If range is not valid
+	 */
+	public synchronized void getChars(int where, int len, Segment txt) throws BadLocationException
+	{
+		//if range is outside of content
+		if(where<0||len<0||where+len>length())
+		{
+			throw new BadLocationException("Invalid range", where+len);
+		}
+		//point segment at the chars read, which share the add buffer where possible
+		CharBuffer chars=read(where, len, txt.isPartialReturn());
+		txt.array=chars.array();
+		txt.offset=chars.arrayOffset()+chars.position();
+		txt.count=chars.remaining();
+	}
+
+	/**
+	 * createPosition: Creates a Position that tracks changes to the content
+	 * @param offset: Initial offset of position
+	 * @return: Tracking Position
+	 * @throws BadLocationException: If offset is not valid
+	 */
+	public synchronized Position createPosition(int offset) throws BadLocationException
+	{
+		//if offset is outside of content
+		if(offset<0||offset>length())
+		{
+			throw new BadLocationException("Invalid position", offset);
+		}
+		purgeMarks();
+
+		//marks at the same offset always move together, so share the last one created there
+		int i=upperBound(offset);
+		if(i>0&&offsetOf(marks.get(i-1))==offset)
+		{
+			Mark shared=marks.get(i-1).get();
+			if(shared!=null)
+			{
+				return shared;
+			}
+		}
+
+		//insert mark after any marks at the same offset to keep list sorted, before the gap if it is there
+		Mark mark=new Mark();
+		MarkRef ref=new MarkRef(mark, offset, queue);
+		if(i<=gap)
+		{
+			gap++;
+		}
+		else
+		{
+			ref.fromEnd=true;
+			ref.offset=end-offset;
+		}
+		mark.ref=ref;
+		marks.add(i, ref);
+		return mark;
+	}
+
+
+	/**
+	 * inserted: Moves positions after an insert
+	 * @param where: Offset of insert
+	 * @param n: Number of inserted chars
+	 */
+	protected void inserted(int where, int n)
+	{
+		//positions at or after where move forward, except positions pinned at the start,
+		//which they do by counting from the end
+		moveGap(upperBound(where==0? 0 : where-1));
+		end+=n;
+	}
+
+	/**
+	 * removed: Collapses positions inside a removed range and moves positions after it
+	 * @param where: Offset of remove
+	 * @param n: Number of removed chars
+	 */
+	protected void removed(int where, int n)
+	{
+		//positions after range move back by counting from the end
+		int i=upperBound(where-1);
+		int k=upperBound(where+n);
+		moveGap(k);
+		end-=n;
+
+		//positions inside range collapse to where
+		for(;i<k;i++)
+		{
+			marks.get(i).offset=where;
+		}
+	}
+
+	/**
+	 * moveGap: Moves the gap to an index, converting the marks it passes over
+	 * @param index: Index of first mark to hold a distance from end
+	 */
+	private void moveGap(int index)
+	{
+		//marks between the two indexes switch between offset and distance from end
+		for(int i=Math.min(gap, index);i<Math.max(gap, index);i++)
+		{
+			MarkRef ref=marks.get(i);
+			ref.offset=end-ref.offset;
+			ref.fromEnd=i>=index;
+		}
+		gap=index;
+	}
+
+	/**
+	 * offsetOf: Used to get the offset of a mark, on either side of the gap
+	 * @param ref: Mark record
+	 * @return: Offset of mark
+	 */
+	private int offsetOf(MarkRef ref)
+	{
+		return ref.fromEnd? end-ref.offset : ref.offset;
+	}
+
+	/**
+	 * upperBound: Binary searches for the first mark after an offset
+	 * @param offset: Offset to search for
+	 * @return: Index of first mark with a greater offset
+	 */
+	private int upperBound(int offset)
+	{
+		//most searches are near the last edit, so try the gap first
+		if((gap==0||offsetOf(marks.get(gap-1))<=offset)&&(gap==marks.size()||offsetOf(marks.get(gap))>offset))
+		{
+			return gap;
+		}
+		int low=0;
+		int high=marks.size();
+		while(low<high)
+		{
+			int mid=(low+high)>>>1;
+			if(offsetOf(marks.get(mid))<=offset)
+			{
+				low=mid+1;
+			}
+			else
+			{
+				high=mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * purgeMarks: Removes marks whose positions are no longer referenced
+	 */
+	private void purgeMarks()
+	{
+		//if no positions have been collected, do nothing
+		if(queue.poll()==null)
+		{
+			return;
+		}
+		while(queue.poll()!=null)
+		{
+			//drain queue
+		}
+
+		//compact mark list, keeping order and the gap between the same marks
+		int j=0;
+		int compactedGap=-1;
+		for(int i=0;i<marks.size();i++)
+		{
+			if(i==gap)
+			{
+				compactedGap=j;
+			}
+			MarkRef ref=marks.get(i);
+			if(ref.get()!=null)
+			{
+				marks.set(j++, ref);
+			}
+		}
+		marks.subList(j, marks.size()).clear();
+		gap=(compactedGap==-1)? j : compactedGap;
+	}
+
+	/**
+	 * Mark: Position handed out to documents
+	 */
+	private class Mark implements Position
+	{
+		private MarkRef ref;
+
+		public int getOffset()
+		{
+			return offsetOf(ref);
+		}
+	}
+
+	/**
+	 * MarkRef: Weakly held offset record of a Mark
+	 */
+	private static class MarkRef extends WeakReference<Mark>
+	{
+		//offset, or distance from end of content for marks from the gap on
+		private int offset;
+		private boolean fromEnd;
+
+		private MarkRef(Mark mark, int offset, ReferenceQueue<Mark> queue)
+		{
+			super(mark, queue);
+			this.offset=offset;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingWorker;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * AgilitextReplacer: Plans the replacement of every occurrence of a query in a snapshot of a
+ * buffer off the event thread, leaving the buffer to be edited once the plan is ready
+ *
+ * The plan holds only while the buffer still has the snapshot's version, a manager given a plan
+ * for text that has changed since plans again.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextReplacer extends SwingWorker<AgilitextSearchEngine.Replacement, Void>
+{
+	//private objects
+
+	//manager notified when plan is ready
+	private AgilitextFindReplaceManager manager;
+
+	//buffer to edit, snapshot of its text, query and replacement text
+	private AgilitextTextBuffer buffer;
+	private AgilitextTextBuffer.Snapshot snapshot;
+	private AgilitextSearchEngine engine;
+	private String replacement;
+
+	/**
+	 * AgilitextReplacer: Constructor
+	 * @param manager: The find/replace window notified with the plan
+	 * @param buffer: The buffer to edit
+	 * @param engine: Search engine for the query to replace
+	 * @param replacement: Text replacing each occurrence
+	 */
+	public AgilitextReplacer(AgilitextFindReplaceManager manager, AgilitextTextBuffer buffer, AgilitextSearchEngine engine, String replacement)
+	{
+		this.manager=manager;
+		this.buffer=buffer;
+		this.engine=engine;
+		this.replacement=replacement;
+		snapshot=buffer.snapshot();
+	}
+
+	/**
+	 * getEngine: Used to get the search engine of the query being replaced
+	 * @return: Search engine
+	 */
+	public AgilitextSearchEngine getEngine()
+	{
+		return engine;
+	}
+
+	/**
+	 * getReplacement: Used to get the text replacing each occurrence
+	 * @return: Replacement text
+	 */
+	public String getReplacement()
+	{
+		return replacement;
+	}
+
+	/**
+	 * isCurrent: Used to determine if the plan still fits the buffer, which has not changed since it was planned
+	 * @param current: The buffer now being edited
+	 * @return: true if plan can be applied to current buffer
+	 */
+	public boolean isCurrent(AgilitextTextBuffer current)
+	{
+		return current==buffer&&buffer.getVersion()==snapshot.getVersion();
+	}
+
+	/**
+	 * doInBackground: Plans the replacement, passing progress and cancellation between worker and engine
+	 * @return: Planned replacement, or null if there are no occurrences
+	 */
+	protected AgilitextSearchEngine.Replacement doInBackground()
+	{
+		//record plan for flight recordings, if the recorder has started
+		AgilitextEvents.ReplacePlan event=AgilitextEvents.isRecording()? new AgilitextEvents.ReplacePlan() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
+		AgilitextSearchEngine.Replacement plan=engine.planReplaceAll(snapshot, replacement, new AgilitextMonitor()
+		{
+			public boolean isCancelled()
+			{
+				return AgilitextReplacer.this.isCancelled();
+			}
+
+			public void setProgress(int percent)
+			{
+				AgilitextReplacer.this.setProgress(percent);
+			}
+		});
+		if(event!=null)
+		{
+			event.query=engine.getQuery();
+			event.matches=(plan!=null)? plan.count : 0;
+			event.completed=!isCancelled();
+			event.commit();
+		}
+		return plan;
+	}
+
+	/**
+	 * done: Hands plan to manager on the event thread
+	 */
+	protected void done()
+	{
+		AgilitextSearchEngine.Replacement plan=null;
+		try
+		{
+			//if not cancelled, get plan or errors raised by the planning thread
+			if(!isCancelled())
+			{
+				plan=get();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			//plan was interrupted, treat as cancelled
+		}
+		catch(ExecutionException e)
+		{
+			//if an error occurs, display error
+			System.err.println(e.getCause().getMessage());
+		}
+		manager.replaceFinished(this, plan);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingWorker;
+import javax.swing.text.Document;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * AgilitextSaveTask: Saves a snapshot of a document on a worker thread while editing continues
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextSaveTask extends SwingWorker<Long, Void>
+{
+	//private objects
+
+	//text area notified when save finishes
+	private AgilitextTextArea textArea;
+
+	//saved document, snapshot of its text and target file
+	private Document document;
+	private AgilitextTextBuffer.Snapshot snapshot;
+	private File file;
+
+	//journal mark taken with the snapshot, keeping edits made while the save runs
+	private AgilitextJournal.Mark mark;
+
+	//saver whose buffers are reused by every save of the text area
+	private AgilitextFileSaver saver;
+
+	/**
+	 * AgilitextSaveTask: Constructor
+	 * @param textArea: The text area notified with the result
+	 * @param document: The document being saved
+	 * @param snapshot: Snapshot of the document's text
+	 * @param file: The file to write
+	 * @param mark: Journal mark taken with the snapshot
+	 * @param saver: The saver to write with, used by one save at a time
+	 */
+	public AgilitextSaveTask(AgilitextTextArea textArea, Document document, AgilitextTextBuffer.Snapshot snapshot, File file, AgilitextJournal.Mark mark, AgilitextFileSaver saver)
+	{
+		this.textArea=textArea;
+		this.document=document;
+		this.snapshot=snapshot;
+		this.file=file;
+		this.mark=mark;
+		this.saver=saver;
+	}
+
+	/**
+	 * getDocument: Used to get the document being saved
+	 * @return: Saved document
+	 */
+	public Document getDocument()
+	{
+		return document;
+	}
+
+	/**
+	 * getSnapshot: Used to get the text being saved
+	 * @return: Saved snapshot
+	 */
+	public AgilitextTextBuffer.Snapshot getSnapshot()
+	{
+		return snapshot;
+	}
+
+	/**
+	 * getFile: Used to get the file being written
+	 * @return: Target file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * getMark: Used to get the journal mark taken with the snapshot
+	 * @return: Journal mark
+	 */
+	public AgilitextJournal.Mark getMark()
+	{
+		return mark;
+	}
+
+	/**
+	 * doInBackground: Writes the snapshot, passing progress and cancellation between worker and saver
+	 * @return: Number of bytes written
+	 * @throws Exception: If the file cannot be written
+	 */
+	protected Long doInBackground() throws Exception
+	{
+		return saver.save(snapshot, file, new AgilitextMonitor()
+		{
+			public boolean isCancelled()
+			{
+				return AgilitextSaveTask.this.isCancelled();
+			}
+
+			public void setProgress(int percent)
+			{
+				AgilitextSaveTask.this.setProgress(percent);
+			}
+		});
+	}
+
+	/**
+	 * done: Hands result to text area on the event thread
+	 */
+	protected void done()
+	{
+		boolean completed=false;
+		try
+		{
+			//if not cancelled, check for errors raised by the saving thread
+			if(!isCancelled())
+			{
+				get();
+				completed=true;
+			}
+		}
+		catch(InterruptedException e)
+		{
+			//save was interrupted, treat as cancelled
+		}
+		catch(ExecutionException e)
+		{
+			//if an error occurs, display error
+			System.err.println(e.getCause().getMessage());
+		}
+		textArea.saveFinished(this, completed);
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AgilitextSearchEngine: Finds, replaces and counts occurrences of a single query in a text
+ * buffer, with no dependency on Swing
+ *
+ * Finding reads the buffer in place and wraps around to its start. Replacing all occurrences
+ * is planned as the offsets of every occurrence, which are replaced one at a time in the buffer
+ * directly or in a document under one lock and undo step, so text between occurrences stays in
+ * place, wherever it is held.
+ *
+ * Counting searches a snapshot, splitting the text into chunks that are searched in parallel
+ * on a fork/join pool. Occurrences are counted the way find visits them, each one starting
+ * after the end of the last. Each chunk counts occurrences starting inside it, reading up to a
+ * query length past its end, so a match straddling a boundary belongs only to the chunk it
+ * starts in. When the last match of one range runs into the next, the next range is searched
+ * again from the end of that match until it meets a match the range had already counted.
+ *
+ * Finding and replacing reuse one view of the buffer, so an engine finds or replaces on one
+ * thread at a time, while any number of counts may run at once.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextSearchEngine
+{
+	//number of chars searched by one count task
+	private static final int CHUNK_CHARS=1<<20;
+
+	//span at the start of a range whose matches are kept for merging it with the range before
+	private static final int HEAD_CHARS=4096;
+
+	//private objects
+
+	//query matcher and reused view of searched buffer
+	private AgilitextFinder finder;
+	private AgilitextDocumentText text;
+
+	/**
+	 * AgilitextSearchEngine: Constructor
+	 * @param query: The text to search for
+	 * @param ignoreCase: true to match regardless of case
+	 */
+	public AgilitextSearchEngine(String query, boolean ignoreCase)
+	{
+		finder=new AgilitextFinder(query, ignoreCase);
+		text=new AgilitextDocumentText();
+	}
+
+	/**
+	 * getQuery: Used to get the text being searched for
+	 * @return: Query text
+	 */
+	public String getQuery()
+	{
+		return finder.getQuery();
+	}
+
+	/**
+	 * length: Used to get the length of a match
+	 * @return: Query length
+	 */
+	public int length()
+	{
+		return finder.length();
+	}
+
+	/**
+	 * matches: Used to determine if a String is a match for the query
+	 * @param s: String to check, eg. selected text
+	 * @return: true if String matches
+	 */
+	public boolean matches(String s)
+	{
+		return finder.matches(s);
+	}
+
+	/**
+	 * find: Finds the first match at or after an offset, wrapping around to the start of the text
+	 * @param buffer: The buffer to search, read in place by the calling thread
+	 * @param from: Offset to start from
+	 * @return: Offset of match, or -1 if there is none
+	 */
+	public int find(AgilitextTextBuffer buffer, int from)
+	{
+		text.setBuffer(buffer);
+		int index=finder.indexOf(text, from);
+		//if there is no match after from, search the text before it
+		if(index==-1&&from>0)
+		{
+			index=finder.indexOf(text, 0, from+finder.length()-1);
+		}
+		return index;
+	}
+
+	/**
+	 * planReplaceAll: Builds the replacement of every match, leaving the buffer unchanged
+	 * @param buffer: The buffer to search, read in place by the calling thread
+	 * @param replacement: Text replacing each match
+	 * @return: Offsets of every match and the text replacing them, or null if there are no matches
+	 */
+	public Replacement planReplaceAll(AgilitextTextBuffer buffer, String replacement)
+	{
+		text.setBuffer(buffer);
+		return planReplaceAll(replacement, AgilitextMonitor.UNMONITORED);
+	}
+
+	/**
+	 * planReplaceAll: Builds the replacement of every match in a snapshot, for applying to its buffer
+	 * if nothing has changed since
+	 * @param snapshot: Snapshot of the text to search
+	 * @param replacement: Text replacing each match
+	 * @param monitor: Monitor told of progress and asked whether to stop
+	 * @return: Offsets of every match and the text replacing them, or null if there are no matches
+	 * or the plan was cancelled
+	 */
+	public Replacement planReplaceAll(AgilitextTextBuffer.Snapshot snapshot, String replacement, AgilitextMonitor monitor)
+	{
+		text.setSnapshot(snapshot);
+		return planReplaceAll(replacement, monitor);
+	}
+
+	/**
+	 * planReplaceAll: Builds the replacement of every match in the reused view
+	 * @param replacement: Text replacing each match
+	 * @param monitor: Monitor told of progress and asked whether to stop
+	 * @return: Replacement, or null if there are no matches or the plan was cancelled
+	 */
+	private Replacement planReplaceAll(String replacement, AgilitextMonitor monitor)
+	{
+		int index=finder.indexOf(text, 0);
+		//if there are no matches, there is nothing to replace
+		if(index==-1)
+		{
+			return null;
+		}
+
+		//collect offset of each match, searching on from the end of the last
+		Replacement plan=new Replacement();
+		plan.offsets=new int[16];
+		plan.length=finder.length();
+		plan.text=replacement;
+		while(index!=-1)
+		{
+			if(plan.count==plan.offsets.length)
+			{
+				plan.offsets=Arrays.copyOf(plan.offsets, 2*plan.count);
+			}
+			plan.offsets[plan.count++]=index;
+			//if plan is cancelled, leave it unfinished
+			if(monitor.isCancelled())
+			{
+				return null;
+			}
+			monitor.setProgress((int)(100L*(index+plan.length)/text.length()));
+			index=finder.indexOf(text, index+plan.length);
+		}
+		return plan;
+	}
+
+	/**
+	 * replaceAll: Replaces every match in a buffer
+	 * @param buffer: The buffer to edit
+	 * @param replacement: Text replacing each match
+	 * @return: Number of matches replaced
+	 */
+	public int replaceAll(AgilitextTextBuffer buffer, String replacement)
+	{
+		Replacement plan=planReplaceAll(buffer, replacement);
+		//if there are no matches, leave buffer unchanged
+		if(plan==null)
+		{
+			return 0;
+		}
+		//replace matches in order, each one moved by the replacements before it
+		for(int i=0;i<plan.count;i++)
+		{
+			int where=plan.getOffset(i);
+			buffer.delete(where, plan.length);
+			buffer.insert(where, plan.text);
+		}
+		return plan.count;
+	}
+
+	/**
+	 * count: Counts every match in a snapshot on the common fork/join pool
+	 * @param snapshot: Snapshot of the text to search
+	 * @return: Number of matches
+	 */
+	public int count(AgilitextTextBuffer.Snapshot snapshot)
+	{
+		return count(snapshot, AgilitextMonitor.UNMONITORED);
+	}
+
+	/**
+	 * count: Counts every match in a snapshot on the common fork/join pool
+	 * @param snapshot: Snapshot of the text to search
+	 * @param monitor: Monitor told of progress and asked whether to stop
+	 * @return: Number of matches, or a partial count if cancelled
+	 */
+	public int count(AgilitextTextBuffer.Snapshot snapshot, AgilitextMonitor monitor)
+	{
+		int chunks=(snapshot.length()+CHUNK_CHARS-1)/CHUNK_CHARS;
+		//if text is empty or query is, there is nothing to count
+		if(chunks==0||finder.length()==0)
+		{
+			return 0;
+		}
+		return ForkJoinPool.commonPool().invoke(new Count(snapshot, monitor).new CountTask(0, chunks)).count;
+	}
+
+	/**
+	 * Replacement: Replacement of every match, as the offsets of the matches and the text replacing each one
+	 */
+	public static class Replacement
+	{
+		//offsets of matches in the searched text, of which count are used, and their length
+		protected int[] offsets;
+		protected int count;
+		protected int length;
+		//text replacing each match
+		protected String text;
+
+		/**
+		 * getOffset: Used to get the offset of a match once the matches before it have been replaced
+		 * @param i: Index of match
+		 * @return: Offset of match in the edited text
+		 */
+		protected int getOffset(int i)
+		{
+			return offsets[i]+i*(text.length()-length);
+		}
+	}
+
+	/**
+	 * Count: State of one count shared by its tasks
+	 */
+	private class Count
+	{
+		//searched text, monitor and number of chars searched so far
+		private AgilitextTextBuffer.Snapshot snapshot;
+		private AgilitextMonitor monitor;
+		private AtomicLong searched;
+
+		private Count(AgilitextTextBuffer.Snapshot snapshot, AgilitextMonitor monitor)
+		{
+			this.snapshot=snapshot;
+			this.monitor=monitor;
+			searched=new AtomicLong();
+		}
+
+		/**
+		 * search: Counts matches one after another from an offset, recording the first ones
+		 * @param view: View of the snapshot owned by the calling thread
+		 * @param from: Offset to search from
+		 * @param end: Offset matches must start before
+		 * @param result: Result receiving the matches
+		 */
+		private void search(AgilitextDocumentText view, int from, int end, Result result)
+		{
+			int m=finder.length();
+			int to=Math.min(end+m-1, view.length());
+			int index=finder.indexOf(view, from, to);
+			while(index!=-1&&!monitor.isCancelled())
+			{
+				//keep the first match and any others near the start of the range
+				if(result.headCount==0||index<result.start+HEAD_CHARS)
+				{
+					result.addHead(index);
+				}
+				result.count++;
+				result.end=index+m;
+				index=finder.indexOf(view, result.end, to);
+			}
+		}
+
+		/**
+		 * merge: Combines the results of two adjacent ranges
+		 * @param left: Result of the first range
+		 * @param right: Result of the range following it
+		 * @param rightEnd: Offset the second range ends at
+		 * @return: Result of both ranges
+		 */
+		private Result merge(Result left, Result right, int rightEnd)
+		{
+			Result merged=new Result(left.start);
+			//head of merged range is the head of the first range that has any matches
+			Result head=(left.count>0)? left : right;
+			merged.head=head.head;
+			merged.headCount=head.headCount;
+
+			//if last match of left range ends before right range, right range counted from its start holds
+			if(left.end<=right.start)
+			{
+				merged.count=left.count+right.count;
+				merged.end=(right.count>0)? right.end : left.end;
+				return merged;
+			}
+
+			//otherwise search right range again from end of left match until it meets a counted match,
+			//if every match of right range is known, none can start after the end of its last one
+			int m=finder.length();
+			boolean complete=right.headCount==right.count;
+			int to=Math.min((complete? right.end : rightEnd)+m-1, snapshot.length());
+			int last=(right.headCount>0)? right.head[right.headCount-1] : -1;
+			AgilitextDocumentText view=new AgilitextDocumentText(snapshot.copy());
+			merged.count=left.count;
+			merged.end=left.end;
+			int index=finder.indexOf(view, left.end, to);
+			while(index!=-1&&!monitor.isCancelled())
+			{
+				//if match was counted by right range, the rest of its count holds
+				if(index<=last)
+				{
+					int i=Arrays.binarySearch(right.head, 0, right.headCount, index);
+					if(i>=0)
+					{
+						merged.count+=right.count-i;
+						merged.end=right.end;
+						return merged;
+					}
+				}
+				merged.count++;
+				merged.end=index+m;
+				index=finder.indexOf(view, merged.end, to);
+			}
+			return merged;
+		}
+
+		/**
+		 * CountTask: Counts a range of chunks, splitting it in two until a single chunk is left
+		 */
+		private class CountTask extends RecursiveTask<Result>
+		{
+			//initialize serialization long
+			private static final long serialVersionUID = 1L;
+
+			//first chunk and chunk after last
+			private int first;
+			private int last;
+
+			private CountTask(int first, int last)
+			{
+				this.first=first;
+				this.last=last;
+			}
+
+			/**
+			 * compute: Counts chunk, or counts halves in parallel and merges them
+			 * @return: Result of range
+			 */
+			protected Result compute()
+			{
+				int start=first*CHUNK_CHARS;
+				int end=(int)Math.min((long)last*CHUNK_CHARS, snapshot.length());
+
+				//if range is a single chunk, search it
+				if(last-first==1)
+				{
+					Result result=new Result(start);
+					if(!monitor.isCancelled())
+					{
+						search(new AgilitextDocumentText(snapshot.copy()), start, end, result);
+					}
+					monitor.setProgress((int)(100L*searched.addAndGet(end-start)/snapshot.length()));
+					return result;
+				}
+
+				//otherwise split range and merge its halves
+				int middle=(first+last)>>>1;
+				CountTask left=new CountTask(first, middle);
+				CountTask right=new CountTask(middle, last);
+				invokeAll(left, right);
+				return merge(left.join(), right.join(), end);
+			}
+		}
+	}
+
+	/**
+	 * Result: Count of a range, the end of its last match and the starts of its first matches
+	 */
+	private static class Result
+	{
+		private int start;
+		private int count;
+		private int end;
+		private int[] head;
+		private int headCount;
+
+		private Result(int start)
+		{
+			this.start=start;
+			end=start;
+			head=new int[16];
+		}
+
+		private void addHead(int index)
+		{
+			//if head array is full, grow it
+			if(headCount==head.length)
+			{
+				head=Arrays.copyOf(head, headCount*2);
+			}
+			head[headCount++]=index;
+		}
+	}
+}
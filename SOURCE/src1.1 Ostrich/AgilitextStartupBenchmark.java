@@ -0,0 +1,314 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AgilitextStartupBenchmark: Launches Agilitext repeatedly with its startup timeline enabled
+ * and reports the median and 95th percentile of every recorded phase
+ *
+ * Each run starts a new virtual machine on the current class path, which closes the
+ * application once its startup work is done. Runs share a fresh home directory, so settings,
+ * preferences and caches start out the same for every benchmark, and warm-up runs fill them
+ * before runs are measured. The application needs a display, so when none is set runs are
+ * started under xvfb-run.
+ *
+ * With --cds, a training run then writes a class data sharing archive as the launcher's --train
+ * option does, and the runs are repeated using it to show the gain over the plain class path.
+ *
+ * Usage: java AgilitextStartupBenchmark [--cds] [runs] [warm-up runs] [extra JVM options...]
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextStartupBenchmark
+{
+	//default number of measured and warm-up runs
+	private static final int DEFAULT_RUNS=10;
+	private static final int DEFAULT_WARMUP=2;
+
+	//longest a single run may take
+	private static final long RUN_TIMEOUT=60;
+
+	/**
+	 * main: Runs the benchmark and prints its report
+	 * @param args: Optional --cds, number of runs, number of warm-up runs, then options passed to each virtual machine
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		//if first argument is --cds, compare runs with and without a trained archive
+		boolean cds=args.length>0&&args[0].equals("--cds");
+		int first=cds? 1 : 0;
+		int runs=(args.length>first)? Integer.parseInt(args[first]) : DEFAULT_RUNS;
+		int warmup=(args.length>first+1)? Integer.parseInt(args[first+1]) : DEFAULT_WARMUP;
+		List<String> options=new ArrayList<String>();
+		for(int i=first+2;i<args.length;i++)
+		{
+			options.add(args[i]);
+		}
+
+		File home=Files.createTempDirectory("agilitext-bench").toFile();
+		List<Map<String, List<Long>>> plain=measure(buildCommand(home, options, "--exit-after-startup"), runs, warmup);
+		print("Plain", plain, runs, warmup);
+		if(!cds)
+		{
+			return;
+		}
+
+		//train an archive the way the launcher does, then measure runs using it
+		File archive=new File(home, "agilitext.jsa");
+		List<String> trainOptions=new ArrayList<String>(options);
+		trainOptions.add("-XX:ArchiveClassesAtExit="+archive.getPath());
+		if(launch(buildCommand(home, trainOptions, "--train"))==null||!archive.isFile())
+		{
+			System.err.println("Training run did not write an archive, stopping.");
+			System.exit(1);
+		}
+		List<String> sharedOptions=new ArrayList<String>(options);
+		sharedOptions.add("-XX:SharedArchiveFile="+archive.getPath());
+		List<Map<String, List<Long>>> shared=measure(buildCommand(home, sharedOptions, "--exit-after-startup"), runs, warmup);
+		print("With archive", shared, runs, warmup);
+
+		//print how much sooner each step is reached with the archive
+		System.out.println();
+		System.out.println(String.format("%-40s %10s %10s", "gain (ms)", "at p50", "at p95"));
+		for(String name : plain.get(0).keySet())
+		{
+			List<Long> after=shared.get(0).get(name);
+			if(after!=null)
+			{
+				List<Long> before=plain.get(0).get(name);
+				System.out.println(String.format("%-40s %10.1f %10.1f", name, percentile(before, 50)-percentile(after, 50), percentile(before, 95)-percentile(after, 95)));
+			}
+		}
+	}
+
+	/**
+	 * measure: Launches a command repeatedly and collects its timelines
+	 * @param command: Command launching the application
+	 * @param runs: Number of measured runs
+	 * @param warmup: Number of runs discarded before them
+	 * @return: Phase end times, then phase durations, each by phase name in first seen order
+	 */
+	private static List<Map<String, List<Long>>> measure(List<String> command, int runs, int warmup) throws IOException, InterruptedException
+	{
+		System.out.println("Command: "+String.join(" ", command));
+		Map<String, List<Long>> ends=new LinkedHashMap<String, List<Long>>();
+		Map<String, List<Long>> durations=new LinkedHashMap<String, List<Long>>();
+		for(int run=0;run<warmup+runs;run++)
+		{
+			Map<String, long[]> records=launch(command);
+			//if run failed, stop, as later runs would fail the same way
+			if(records==null)
+			{
+				System.err.println("Run "+(run+1)+" did not report a timeline, stopping.");
+				System.exit(1);
+			}
+			//if run is a warm-up, discard it
+			if(run<warmup)
+			{
+				continue;
+			}
+			for(Map.Entry<String, long[]> record : records.entrySet())
+			{
+				add(ends, record.getKey(), record.getValue()[0]);
+				if(record.getValue()[1]>=0)
+				{
+					add(durations, record.getKey(), record.getValue()[1]);
+				}
+			}
+		}
+		List<Map<String, List<Long>>> result=new ArrayList<Map<String, List<Long>>>();
+		result.add(ends);
+		result.add(durations);
+		return result;
+	}
+
+	/**
+	 * print: Prints the median and 95th percentile of every phase in milliseconds, end times since virtual machine start
+	 * @param title: Title of the measured configuration
+	 * @param measured: Phase end times and durations returned by measure()
+	 * @param runs: Number of measured runs
+	 * @param warmup: Number of warm-up runs
+	 */
+	private static void print(String title, List<Map<String, List<Long>>> measured, int runs, int warmup)
+	{
+		Map<String, List<Long>> ends=measured.get(0);
+		Map<String, List<Long>> durations=measured.get(1);
+		System.out.println(String.format("%s: %d runs after %d warm-up runs (ms)", title, runs, warmup));
+		System.out.println(String.format("%-40s %10s %10s %10s %10s", "phase", "at p50", "at p95", "took p50", "took p95"));
+		for(String name : ends.keySet())
+		{
+			List<Long> took=durations.get(name);
+			System.out.println(String.format("%-40s %10.1f %10.1f %10s %10s", name, percentile(ends.get(name), 50), percentile(ends.get(name), 95),
+					(took==null)? "-" : String.format("%.1f", percentile(took, 50)), (took==null)? "-" : String.format("%.1f", percentile(took, 95))));
+		}
+	}
+
+	/**
+	 * buildCommand: Used to build the command launching one run
+	 * @param home: Home directory shared by runs
+	 * @param options: Extra virtual machine options
+	 * @param mode: Flag telling the application how to close, --exit-after-startup or --train
+	 * @return: Command and its arguments
+	 */
+	private static List<String> buildCommand(File home, List<String> options, String mode)
+	{
+		List<String> command=new ArrayList<String>();
+		//if there is no display on an X11 system, provide a virtual one
+		boolean x11=!System.getProperty("os.name").startsWith("Windows")&&!System.getProperty("os.name").startsWith("Mac");
+		if(x11&&System.getenv("DISPLAY")==null)
+		{
+			//if there is no way to provide one, the application cannot start
+			if(!isOnPath("xvfb-run"))
+			{
+				System.err.println("No display is set and xvfb-run is not installed.");
+				System.exit(1);
+			}
+			command.add("xvfb-run");
+			command.add("-a");
+		}
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("-Duser.home="+home.getPath());
+		command.add("-Djava.util.prefs.userRoot="+home.getPath());
+		command.addAll(options);
+		command.add("AgilitextClient");
+		command.add("--timeline");
+		command.add(mode);
+		return command;
+	}
+
+	/**
+	 * isOnPath: Used to determine if a program can be found on the search path
+	 * @param program: Program name
+	 * @return: true if an executable file of that name is in a search path directory
+	 */
+	private static boolean isOnPath(String program)
+	{
+		String path=System.getenv("PATH");
+		if(path!=null)
+		{
+			for(String dir : path.split(File.pathSeparator))
+			{
+				if(new File(dir, program).canExecute())
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * launch: Runs the application once and reads its timeline
+	 * @param command: Command launching the application
+	 * @return: Phase names mapped to their end time and duration in nanoseconds, or null if run failed
+	 */
+	private static Map<String, long[]> launch(List<String> command) throws IOException, InterruptedException
+	{
+		//collect output in a file, so a run that hangs cannot block reading it
+		File log=File.createTempFile("agilitext-run", ".log");
+		ProcessBuilder builder=new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(log);
+		Process process=builder.start();
+		boolean finished=process.waitFor(RUN_TIMEOUT, TimeUnit.SECONDS);
+		if(!finished)
+		{
+			process.destroyForcibly().waitFor();
+		}
+
+		Map<String, long[]> records=new LinkedHashMap<String, long[]>();
+		List<String> output=new ArrayList<String>();
+		for(String line : Files.readAllLines(log.toPath()))
+		{
+			//records have the form: timeline AT TOOK NAME
+			String[] fields=line.split(" ", 4);
+			if(fields.length==4&&fields[0].equals(AgilitextTimeline.PREFIX))
+			{
+				long took=fields[2].equals("-")? -1 : Long.parseLong(fields[2]);
+				records.put(fields[3], new long[]{Long.parseLong(fields[1]), took});
+			}
+			else
+			{
+				output.add(line);
+			}
+		}
+		log.delete();
+
+		//if run hangs or fails, show what it printed
+		if(!finished)
+		{
+			output.add("Run timed out after "+RUN_TIMEOUT+" seconds.");
+			records.clear();
+		}
+		if(records.isEmpty())
+		{
+			for(String line : output)
+			{
+				System.err.println(line);
+			}
+			return null;
+		}
+		return records;
+	}
+
+	/**
+	 * add: Adds a value to a named list of values
+	 * @param values: Lists of values by name
+	 * @param name: Name of the list
+	 * @param value: Value to add
+	 */
+	private static void add(Map<String, List<Long>> values, String name, long value)
+	{
+		List<Long> list=values.get(name);
+		if(list==null)
+		{
+			list=new ArrayList<Long>();
+			values.put(name, list);
+		}
+		list.add(value);
+	}
+
+	/**
+	 * percentile: Used to get a percentile of nanosecond values by nearest rank
+	 * @param values: Values
+	 * @param p: Percentile, from 1 to 100
+	 * @return: Percentile in milliseconds
+	 */
+	private static double percentile(List<Long> values, int p)
+	{
+		List<Long> sorted=new ArrayList<Long>(values);
+		Collections.sort(sorted);
+		int rank=(int)Math.ceil(p/100.0*sorted.size());
+		return sorted.get(Math.max(rank, 1)-1)/1e6;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+/**
+ * AgilitextStats: Word, character and non-space counts of a text buffer, updated as it is
+ * edited by scanning only the changed range and the chars on either side of it
+ *
+ * Words are runs of chars other than spaces, tabs and newlines. A word starts at a char whose
+ * predecessor is a delimiter, so an edit only changes the word starts inside its range and at
+ * the char following it.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextStats
+{
+	//size of reused scan buffer
+	private static final int BUFFER_SIZE=16384;
+
+	//private objects
+
+	//counted content
+	private AgilitextTextBuffer content;
+
+	//counts, excluding the implied newline
+	private int words;
+	private int chars;
+	private int nonSpace;
+
+	//reused scan buffer
+	private char[] buffer;
+
+	/**
+	 * AgilitextStats: Constructor, counting the whole content
+	 * @param content: The content to count
+	 */
+	protected AgilitextStats(AgilitextTextBuffer content)
+	{
+		this.content=content;
+		buffer=new char[BUFFER_SIZE];
+		inserted(0, content.length()-1);
+	}
+
+	/**
+	 * getWordCount: Used to get the number of words
+	 * @return: Word count
+	 */
+	public synchronized int getWordCount()
+	{
+		return words;
+	}
+
+	/**
+	 * getCharCount: Used to get the number of chars
+	 * @return: Char count
+	 */
+	public synchronized int getCharCount()
+	{
+		return chars;
+	}
+
+	/**
+	 * getNonSpaceCount: Used to get the number of chars other than spaces, tabs and newlines
+	 * @return: Non-space char count
+	 */
+	public synchronized int getNonSpaceCount()
+	{
+		return nonSpace;
+	}
+
+	/**
+	 * inserted: Counts chars just inserted into the content
+	 * @param where: Offset of insert
+	 * @param n: Number of inserted chars
+	 */
+	protected synchronized void inserted(int where, int n)
+	{
+		apply(where, n, 1);
+	}
+
+	/**
+	 * removing: Uncounts chars about to be removed from the content
+	 * @param where: Offset of remove
+	 * @param n: Number of chars to remove
+	 */
+	protected synchronized void removing(int where, int n)
+	{
+		apply(where, n, -1);
+	}
+
+	/**
+	 * apply: Adds or subtracts the counts of a range present in the content
+	 * @param where: Starting offset
+	 * @param n: Length of range
+	 * @param sign: 1 to add counts, -1 to subtract them
+	 */
+	private void apply(int where, int n, int sign)
+	{
+		//word start at the char after the range, judged by the char before it, holds without the range
+		char before=(where>0)? charAt(where-1) : ' ';
+		int starts=0;
+		int count=0;
+		boolean delimited=isDelimiter(before);
+
+		//scan range and the char after it, which always exists as content ends with implied newline
+		int offset=where;
+		int end=where+n+1;
+		while(offset<end)
+		{
+			int len=Math.min(BUFFER_SIZE, end-offset);
+			read(offset, len);
+			for(int i=0;i<len;i++)
+			{
+				boolean delimiter=isDelimiter(buffer[i]);
+				if(!delimiter&&delimited)
+				{
+					starts++;
+				}
+				if(!delimiter&&offset+i<where+n)
+				{
+					count++;
+				}
+				delimited=delimiter;
+			}
+			offset+=len;
+		}
+		//delimited now tells if the char after the range is a delimiter
+		boolean bridged=!delimited&&isDelimiter(before);
+
+		words+=sign*(starts-(bridged? 1 : 0));
+		chars+=sign*n;
+		nonSpace+=sign*count;
+	}
+
+	/**
+	 * charAt: Used to read a single char of the content
+	 * @param offset: Content offset
+	 * @return: Char at offset
+	 */
+	private char charAt(int offset)
+	{
+		read(offset, 1);
+		return buffer[0];
+	}
+
+	/**
+	 * read: Copies a range of the content into the scan buffer
+	 * @param offset: Starting offset
+	 * @param len: Number of chars, at most the buffer size
+	 */
+	private void read(int offset, int len)
+	{
+		content.getChars(offset, len, buffer, 0);
+	}
+
+	/**
+	 * isDelimiter: Used to determine if a char separates words
+	 * @param c: Char to check
+	 * @return: true if char is a space, tab or newline
+	 */
+	protected static boolean isDelimiter(char c)
+	{
+		return c==' '||c=='\t'||c=='\n';
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import java.awt.BorderLayout;
+import java.awt.CardLayout;
+
+/**
+ * AgilitextTaskIndicator: Status bar cell that shows a component while the window is idle,
+ * and the progress of its running task with a button cancelling it while one runs
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextTaskIndicator extends JPanel
+{
+	//names of shown cards
+	private static final String IDLE="idle";
+	private static final String BUSY="busy";
+
+	//GUI components
+
+	//progress bars
+	protected JProgressBar progressBar;
+
+	//buttons
+	protected JButton cancelButton;
+
+	//panels
+	protected JPanel busyPanel;
+
+	//private objects
+	private CardLayout cards;
+
+	//initialize serialization long
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * AgilitextTaskIndicator: Constructor
+	 * @param idle: The component shown while no task runs, eg. a status label
+	 */
+	public AgilitextTaskIndicator(JComponent idle)
+	{
+		//initialize layout showing one card at a time
+		cards=new CardLayout();
+		setLayout(cards);
+
+		//initialize progress bar showing task description and cancel button
+		progressBar=new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		cancelButton=new JButton("X");
+		cancelButton.setToolTipText("Cancel");
+
+		//build busy panel and add both cards
+		busyPanel=new JPanel();
+		busyPanel.setLayout(new BorderLayout());
+		busyPanel.add(progressBar, BorderLayout.CENTER);
+		busyPanel.add(cancelButton, BorderLayout.EAST);
+		add(idle, IDLE);
+		add(busyPanel, BUSY);
+		cards.show(this, IDLE);
+	}
+
+	/**
+	 * showTask: Shows the progress of a running task
+	 * @param message: Description of the task
+	 * @param percent: Progress from 0 to 100, 0 while it is not yet known
+	 * @param others: Number of other tasks running
+	 * @param cancellable: true if any running task can be cancelled, enabling the cancel button
+	 */
+	public void showTask(String message, int percent, int others, boolean cancellable)
+	{
+		//if progress is not yet known, animate bar until it is
+		progressBar.setIndeterminate(percent==0);
+		progressBar.setValue(percent);
+		progressBar.setString((others>0)? message+" (+"+others+")" : message);
+		progressBar.setToolTipText(message);
+		cancelButton.setEnabled(cancellable);
+		cards.show(this, BUSY);
+	}
+
+	/**
+	 * clear: Shows the idle component once no task runs
+	 */
+	public void clear()
+	{
+		progressBar.setIndeterminate(false);
+		cards.show(this, IDLE);
+	}
+}
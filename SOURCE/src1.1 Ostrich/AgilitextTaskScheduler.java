@@ -0,0 +1,450 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.JDialog;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.WindowConstants;
+import java.awt.Dialog;
+import java.awt.GraphicsEnvironment;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AgilitextTaskScheduler: Runs a window's long-running operations off the event thread,
+ * showing their progress on a status bar indicator and letting them be cancelled
+ *
+ * Tasks are SwingWorkers run on a bounded pool of daemon threads shared by every window, and
+ * report progress and completion on the event thread as any SwingWorker does. Each task has a
+ * kind, and a window runs one task of each kind at a time. A new task either supersedes the
+ * running one of its kind, cancelling it, or waits for it to finish, replacing any task already
+ * waiting, so repeated requests never pile up behind each other.
+ *
+ * Cancelling is cooperative, a cancelled task stops at its next check of isCancelled(). Tasks of
+ * the kinds set by setFinishing, such as saves, are never cancelled: cancelAll leaves them running
+ * and close waits for them behind a dialog, which keeps the event thread handling events so that
+ * their done() runs and the window still paints. Every method is called on the event thread.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextTaskScheduler
+{
+	//number of worker threads, leaving cores for the event thread and for counting on the fork/join pool
+	private static final int POOL_SIZE=Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()/2));
+
+	//time an idle worker thread is kept in seconds
+	private static final int KEEP_ALIVE=30;
+
+	//pool running the tasks of every window
+	private static final ThreadPoolExecutor POOL=createPool();
+
+	//private objects
+
+	//running tasks by kind, in the order they started
+	private LinkedHashMap<String, Task> tasks;
+
+	//status bar indicator, or null if progress is not shown
+	private AgilitextTaskIndicator indicator;
+
+	//metrics timing completed tasks, or null if tasks are not timed
+	private AgilitextMetrics metrics;
+
+	//kinds of task that are finished rather than cancelled
+	private String[] finishing;
+
+	//true once the window has closed and no more tasks are started
+	private boolean closed;
+
+	/**
+	 * AgilitextTaskScheduler: Constructor
+	 */
+	public AgilitextTaskScheduler()
+	{
+		tasks=new LinkedHashMap<String, Task>();
+		finishing=new String[0];
+		closed=false;
+	}
+
+	/**
+	 * createPool: Creates the shared pool, whose threads end when idle so that no thread is kept
+	 * while nothing runs
+	 * @return: Worker pool
+	 */
+	private static ThreadPoolExecutor createPool()
+	{
+		final AtomicInteger count=new AtomicInteger();
+		ThreadPoolExecutor pool=new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t=new Thread(r, "Agilitext Task "+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * setIndicator: Shows the progress of tasks on a status bar indicator
+	 * @param indicator: The indicator to update
+	 */
+	public void setIndicator(AgilitextTaskIndicator indicator)
+	{
+		this.indicator=indicator;
+		update();
+	}
+
+	/**
+	 * setMetrics: Records the duration of each task that completes, from its start until its
+	 * result has been handled by its done()
+	 * @param metrics: The metrics to record to, timing tasks by kind
+	 */
+	public void setMetrics(AgilitextMetrics metrics)
+	{
+		this.metrics=metrics;
+	}
+
+	/**
+	 * setFinishing: Sets the kinds of task that are never cancelled, as stopping them would lose work
+	 * @param kinds: Kinds of task to finish, eg. "save"
+	 */
+	public void setFinishing(String... kinds)
+	{
+		finishing=kinds;
+		update();
+	}
+
+	/**
+	 * submit: Runs a task, or queues it behind the running task of its kind
+	 * @param kind: Kind of task, eg. "save"
+	 * @param message: Description shown while the task runs
+	 * @param worker: The task
+	 * @param supersede: true to cancel a running task of the same kind, false to wait for it to finish
+	 */
+	public void submit(String kind, String message, SwingWorker<?, ?> worker, boolean supersede)
+	{
+		Task task=new Task(kind, message, worker);
+		//if window has closed, cancel task so that its done() still reports it
+		if(closed)
+		{
+			worker.cancel(false);
+			return;
+		}
+
+		Task running=tasks.get(kind);
+		//if no task of this kind is running, start this one
+		if(running==null)
+		{
+			start(task);
+		}
+		//if this task supersedes the running one, cancel it and start this one
+		else if(supersede)
+		{
+			cancel(running);
+			tasks.remove(kind);
+			start(task);
+		}
+		//otherwise queue this one to run next, in place of any task already queued
+		else
+		{
+			if(running.next!=null)
+			{
+				running.next.worker.cancel(false);
+			}
+			running.next=task;
+		}
+	}
+
+	/**
+	 * isRunning: Used to determine if a task of a kind is running
+	 * @param kind: Kind of task
+	 * @return: true if a task of that kind is running
+	 */
+	public boolean isRunning(String kind)
+	{
+		return tasks.containsKey(kind);
+	}
+
+	/**
+	 * cancelAll: Cancels every running and queued task other than those that are finished
+	 */
+	public void cancelAll()
+	{
+		for(Task task : new ArrayList<Task>(tasks.values()))
+		{
+			if(!isFinishing(task))
+			{
+				cancel(task);
+			}
+		}
+	}
+
+	/**
+	 * close: Stops starting tasks once the window closes, cancelling tasks that may be cancelled
+	 * and finishing the rest, including any queued behind them, before returning
+	 */
+	public void close()
+	{
+		closed=true;
+		List<Task> running=new ArrayList<Task>();
+		for(Task task : tasks.values())
+		{
+			if(isFinishing(task))
+			{
+				running.add(task);
+			}
+			else
+			{
+				cancel(task);
+			}
+		}
+
+		//wait for each task to finish, then run the task queued behind it and wait for that too
+		for(Task task : running)
+		{
+			await(task);
+			if(task.next!=null)
+			{
+				POOL.execute(task.next.worker);
+				await(task.next);
+			}
+		}
+	}
+
+	/**
+	 * isFinishing: Used to determine if a task is finished rather than cancelled
+	 * @param task: The task
+	 * @return: true if its kind was given to setFinishing
+	 */
+	private boolean isFinishing(Task task)
+	{
+		for(String kind : finishing)
+		{
+			if(kind.equals(task.kind))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * start: Runs a task on the pool, following its progress until it is done
+	 * @param task: The task to run
+	 */
+	private void start(final Task task)
+	{
+		tasks.put(task.kind, task);
+		task.worker.addPropertyChangeListener(new PropertyChangeListener()
+		{
+			/**
+			 * propertyChange: Called on the event thread to handle task progress and state events
+			 * @param e: Property change event
+			 */
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				if("progress".equals(e.getPropertyName()))
+				{
+					update();
+				}
+				else if("state".equals(e.getPropertyName())&&e.getNewValue()==SwingWorker.StateValue.DONE)
+				{
+					finished(task);
+				}
+			}
+		});
+		task.started=System.nanoTime();
+		POOL.execute(task.worker);
+		update();
+	}
+
+	/**
+	 * finished: Forgets a task that has completed or been cancelled and starts the task queued behind it
+	 * @param task: The finished task
+	 */
+	private void finished(Task task)
+	{
+		//if a newer task has superseded this one, it is already forgotten
+		if(tasks.get(task.kind)==task)
+		{
+			tasks.remove(task.kind);
+			//done() has run before this state change, so its handling of the result is timed too
+			if(metrics!=null&&!task.worker.isCancelled())
+			{
+				metrics.record(task.kind, System.nanoTime()-task.started);
+			}
+			if(task.next!=null&&!closed)
+			{
+				start(task.next);
+			}
+		}
+		update();
+	}
+
+	/**
+	 * cancel: Cancels a running task and any task queued behind it
+	 * @param task: The running task
+	 */
+	private void cancel(Task task)
+	{
+		if(task.next!=null)
+		{
+			task.next.worker.cancel(false);
+			task.next=null;
+		}
+		task.worker.cancel(true);
+	}
+
+	/**
+	 * await: Waits for a task to finish, whether it completes, fails or is cancelled, showing a
+	 * dialog whose event loop runs the task's done() and keeps windows painting meanwhile
+	 * @param task: The task
+	 */
+	private void await(Task task)
+	{
+		//if task is done and its done() has run, there is nothing to wait for
+		if(task.worker.getState()==SwingWorker.StateValue.DONE)
+		{
+			return;
+		}
+		//without a display there is no dialog, so block until the task is done
+		if(GraphicsEnvironment.isHeadless())
+		{
+			await(task.worker);
+			return;
+		}
+
+		//initialize modal dialog showing the task, closed once its done() has run
+		final JDialog dialog=new JDialog((indicator==null)? null : SwingUtilities.getWindowAncestor(indicator), "Agilitext", Dialog.ModalityType.APPLICATION_MODAL);
+		dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+		JProgressBar bar=new JProgressBar();
+		bar.setIndeterminate(true);
+		bar.setStringPainted(true);
+		bar.setString("Finishing: "+task.message);
+		dialog.add(bar);
+		dialog.pack();
+		dialog.setLocationRelativeTo(dialog.getOwner());
+		task.worker.addPropertyChangeListener(new PropertyChangeListener()
+		{
+			/**
+			 * propertyChange: Called on the event thread once the task's done() has run
+			 * @param e: Property change event
+			 */
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				if("state".equals(e.getPropertyName())&&e.getNewValue()==SwingWorker.StateValue.DONE)
+				{
+					dialog.dispose();
+				}
+			}
+		});
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * await: Blocks until a task is finished, whether it completes, fails or is cancelled
+	 * @param worker: The task
+	 */
+	private static void await(SwingWorker<?, ?> worker)
+	{
+		try
+		{
+			worker.get();
+		}
+		catch(InterruptedException e)
+		{
+			//if waiting is interrupted, stop waiting
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			//failure is reported by the task's own done()
+		}
+		catch(CancellationException e)
+		{
+			//task was cancelled
+		}
+	}
+
+	/**
+	 * update: Shows the most recently started task on the indicator, or clears it if none are running
+	 */
+	private void update()
+	{
+		//if progress is not shown, do nothing
+		if(indicator==null)
+		{
+			return;
+		}
+		Task latest=null;
+		for(Task task : tasks.values())
+		{
+			latest=task;
+		}
+		if(latest==null)
+		{
+			indicator.clear();
+		}
+		else
+		{
+			//tasks can be cancelled from the indicator if any of them is not finished
+			boolean cancellable=false;
+			for(Task task : tasks.values())
+			{
+				cancellable|=!isFinishing(task);
+			}
+			indicator.showTask(latest.message, latest.worker.getProgress(), tasks.size()-1, cancellable);
+		}
+	}
+
+	/**
+	 * Task: A worker, its kind and description, its start time and the task queued to run after it
+	 */
+	private static class Task
+	{
+		private String kind;
+		private String message;
+		private SwingWorker<?, ?> worker;
+		private long started;
+		private Task next;
+
+		private Task(String kind, String message, SwingWorker<?, ?> worker)
+		{
+			this.kind=kind;
+			this.message=message;
+			this.worker=worker;
+		}
+	}
+}
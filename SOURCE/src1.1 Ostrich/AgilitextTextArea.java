@@ -19,21 +19,24 @@
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
-import javax.swing.undo.UndoManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import java.awt.Color;
-import java.awt.GradientPaint;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Insets;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.FileReader;
-import java.io.BufferedWriter;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.StringTokenizer;
+import java.nio.charset.Charset;
 
 
 /**
@@ -44,39 +47,107 @@ import java.util.StringTokenizer;
  * @version 1.1
  * 
  * Date Created: 06/20/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextTextArea extends JTextArea
 {
 	//privaate objects
-	private String initialText;
-	private StringBuilder stringBuilder;
+	private boolean modified;
 	private JFileChooser fileChooser;
 	private File targetFile;
-	private FileReader fileIn;
-	private FileWriter fileOut;
-	private BufferedReader readIn;
-	private BufferedWriter writeOut;
-	private StringTokenizer tokenizer;
-	private UndoManager undoMan;
+	private AgilitextFileSaver saver;
+	private AgilitextUndoManager undoMan;
+	private DocumentListener modifiedListener;
+	private AgilitextFileLoader loader;
+	private Document previousDocument;
+	private AgilitextJournal journal;
+	private AgilitextLineIndex lineIndex;
+	private AgilitextGradient background=new AgilitextGradient();
+	private AgilitextTaskScheduler scheduler;
+	private AgilitextMetrics metrics;
+	private boolean closed;
 	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * AgilitextTextArea: Constructor
+	 * @param journal: The journal to keep edits in, opened here if it is not open yet, or null for
+	 * a new window journal, which is also used if the given journal is held by another instance
 	 */
-	public AgilitextTextArea()
+	public AgilitextTextArea(AgilitextJournal journal)
 	{
 		super();
 		
 		//initialize objects to default values
-		initialText="";
+		modified=false;
 		targetFile=null;
-		fileChooser=new JFileChooser();
+		saver=new AgilitextFileSaver(Charset.defaultCharset());
+		scheduler=new AgilitextTaskScheduler();
+		metrics=new AgilitextMetrics(this);
+		scheduler.setMetrics(metrics);
+		//saves are finished rather than cancelled, so that a file is never left half written
+		scheduler.setFinishing("save");
+		closed=false;
 		
-		undoMan=new UndoManager();
+		//initialize listener flagging any document change as a modification
+		modifiedListener=new DocumentListener()
+		{
+			public void insertUpdate(DocumentEvent e)
+			{
+				modified=true;
+			}
+			
+			public void removeUpdate(DocumentEvent e)
+			{
+				modified=true;
+			}
+			
+			public void changedUpdate(DocumentEvent e)
+			{
+				//attribute changes do not modify plain text
+			}
+		};
+		
+		//initialize edit journal, using a window journal of its own if none is given or it cannot be owned
+		if(journal==null||(!journal.isOpen()&&!journal.open()))
+		{
+			journal=AgilitextJournal.openWindow(Appsistant.getSettingsDir());
+		}
+		this.journal=journal;
+		//if journaling stops, warn that edits can no longer be recovered
+		journal.setFailureHandler(new Runnable()
+		{
+			public void run()
+			{
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						if(!AgilitextClient.isUnattended())
+						{
+							JOptionPane.showMessageDialog(null, "Agilitext can no longer record your edits for recovery, \nplease save your changes.", "Attention", JOptionPane.WARNING_MESSAGE);
+						}
+					}
+				});
+			}
+		});
+		
+		undoMan=new AgilitextUndoManager();
 		this.getDocument().addUndoableEditListener(undoMan);
+		this.getDocument().addDocumentListener(modifiedListener);
+		this.getDocument().addDocumentListener(journal);
+		
+		//initialize line index, reindexing whenever a new document is shown
+		lineIndex=new AgilitextLineIndex();
+		lineIndex.setDocument(getDocument());
+		addPropertyChangeListener("document", new PropertyChangeListener()
+		{
+			public void propertyChange(PropertyChangeEvent e)
+			{
+				lineIndex.setDocument((Document)e.getNewValue());
+			}
+		});
 		
 		setLineWrap(true);
 		setWrapStyleWord(true);
@@ -88,68 +159,208 @@ public class AgilitextTextArea extends JTextArea
 		setOpaque(false);
 	}
 	
+	/**
+	 * createDefaultModel: Creates the piece table backed document used for new text
+	 * @return: Empty AgilitextDocument
+	 */
+	protected Document createDefaultModel()
+	{
+		return new AgilitextDocument();
+	}
+	
+	/**
+	 * setDocument: Replaces the edited document, moving listeners and clearing undo history
+	 * @param doc: The new document
+	 */
+	public void setDocument(Document doc)
+	{
+		//if listeners have been initialized (not during superclass construction)
+		if(undoMan!=null)
+		{
+			//move listeners from old document to new document, whose history starts empty
+			detachListeners(getDocument());
+			attachListeners(doc);
+			undoMan.discardAllEdits();
+		}
+		super.setDocument(doc);
+	}
+	
+	/**
+	 * attachListeners: Adds undo, modification and journal listeners to a document
+	 * @param doc: The document to listen to
+	 */
+	private void attachListeners(Document doc)
+	{
+		doc.addUndoableEditListener(undoMan);
+		doc.addDocumentListener(modifiedListener);
+		doc.addDocumentListener(journal);
+	}
+	
+	/**
+	 * detachListeners: Removes undo, modification and journal listeners from a document
+	 * @param doc: The document to stop listening to
+	 */
+	private void detachListeners(Document doc)
+	{
+		doc.removeUndoableEditListener(undoMan);
+		doc.removeDocumentListener(modifiedListener);
+		doc.removeDocumentListener(journal);
+	}
+	
+	/**
+	 * getBuffer: Used to get the text buffer of the current document
+	 * @return: Text buffer
+	 */
+	public AgilitextTextBuffer getBuffer()
+	{
+		//documents are always piece table backed, see createDefaultModel
+		return ((AgilitextDocument)getDocument()).getPieceTable();
+	}
+	
+	/**
+	 * getScheduler: Used to get the scheduler running this text area's long-running operations
+	 * @return: Task scheduler
+	 */
+	public AgilitextTaskScheduler getScheduler()
+	{
+		return scheduler;
+	}
+	
+	/**
+	 * getMetrics: Used to get the live metrics of this text area, published once registered
+	 * @return: Metrics
+	 */
+	public AgilitextMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * getUndoManager: Used to get the undo history of the current document
+	 * @return: Undo manager
+	 */
+	public AgilitextUndoManager getUndoManager()
+	{
+		return undoMan;
+	}
+	
+	/**
+	 * snapshot: Used to get an immutable version of the current document's text for reading in the background
+	 * @return: Text snapshot
+	 */
+	public AgilitextTextBuffer.Snapshot snapshot()
+	{
+		return ((AgilitextDocument)getDocument()).snapshot();
+	}
+	
+	/**
+	 * getLineIndex: Used to get the line start index of the current document
+	 * @return: Line index
+	 */
+	public AgilitextLineIndex getLineIndex()
+	{
+		return lineIndex;
+	}
+	
+	/**
+	 * getCaretStatus: Used to describe the line and column of the caret and the word count
+	 * @return: Caret position and words as "Ln line, Col column | Words count"
+	 */
+	protected String getCaretStatus()
+	{
+		//find caret line by binary search and count column from its start
+		int caret=getCaretPosition();
+		int line=lineIndex.getLine(caret);
+		return "Ln "+(line+1)+", Col "+(caret-lineIndex.getLineStart(line)+1)+" | Words "+getBuffer().getStats().getWordCount();
+	}
+	
 	/**
 	 * paintComponent: Paints component using a color gradient
 	 * @param graphics: Graphics object
 	 */
 	protected void paintComponent(Graphics graphics) 
 	{
+		long start=System.nanoTime();
+		//record paint for flight recordings, if the recorder has started
+		AgilitextEvents.Paint event=AgilitextEvents.isRecording()? new AgilitextEvents.Paint() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
 		//cast Graphics object to a Graphics2D object
         Graphics2D g2d = (Graphics2D) graphics;
         //set rendering settings for new Graphics2D object
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
         
-        //create new GradientPaint object with gradient options
-        GradientPaint gp = new GradientPaint(0, 0,
-                getBackground().brighter(), 0, getHeight(),
-                getBackground().darker().darker());
-        //set paint object to GradientPAint object and paint
-        g2d.setPaint(gp);
-        g2d.fillRect(0, 0, getWidth(), getHeight());
+        //paint cached gradient over area being repainted
+        background.paint(g2d, this);
         
         //call super to repaint component
         super.paintComponent(graphics);
+        metrics.record(AgilitextMetrics.PAINT, System.nanoTime()-start);
+        if(event!=null&&event.shouldCommit())
+        {
+        	Rectangle clip=graphics.getClipBounds();
+        	if(clip!=null)
+        	{
+        		event.x=clip.x;
+        		event.y=clip.y;
+        		event.width=clip.width;
+        		event.height=clip.height;
+        	}
+        	event.commit();
+        }
     }
 	
 	/**
-	 * saveFile: Saves current text to target file
+	 * setFont: Sets the font of the text area, recording the change and the layout it invalidates
+	 * for flight recordings
+	 * @param f: The new font
+	 */
+	public void setFont(Font f)
+	{
+		AgilitextEvents.FontChange event=AgilitextEvents.isRecording()? new AgilitextEvents.FontChange() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
+		super.setFont(f);
+		if(event!=null&&f!=null)
+		{
+			event.family=f.getFamily();
+			event.style=f.getStyle();
+			event.size=f.getSize2D();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * saveFile: Saves current text to target file in the background
 	 */
 	protected void saveFile()
 	{
+		//if a file is still loading, its contents are not ready to be saved
+		if(loader!=null)
+		{
+			return;
+		}
+		//if file text was loaded from changed on disk and is reloaded, there is nothing left to save
+		if(checkOriginal())
+		{
+			return;
+		}
 		//if target file is not null
 		if(targetFile!=null)
 		{
-			//set text to be current text area text
-			String text=this.getText();
-			
 			//if target's parent is writable
-			if(new File(targetFile.getParent()).canWrite())
+			if(targetFile.getAbsoluteFile().getParentFile().canWrite())
 			{
-				try
-				{
-					//check if file exists
-					if(targetFile.exists())
-					{
-						//if so, delete target file
-						targetFile.delete();
-					}
-					//initialize writers
-					fileOut=new FileWriter(targetFile);
-					writeOut=new BufferedWriter(fileOut);
-					//write text to file
-					writeOut.write(text);
-					//close streams when completed
-					writeOut.close();
-					fileOut.close();
-					//update initialText
-					initialText=this.getText();
-				}
-				catch(IOException e)
-				{
-					//if an error occurs, display error
-					System.err.println(e.getMessage());
-				}
+				//stream a snapshot of the text to a temporary file that atomically replaces target file while editing
+				//continues, after any save already running and in place of any waiting for it
+				//marking the journal with the snapshot keeps edits made during the save for rebasing on the saved file
+				AgilitextSaveTask save=new AgilitextSaveTask(this, getDocument(), snapshot(), targetFile, journal.mark(), saver);
+				scheduler.submit("save", "Saving "+targetFile.getName(), save, false);
 			}
 			//if target's parent is not writable
 			else
@@ -166,13 +377,59 @@ public class AgilitextTextArea extends JTextArea
 		}
 	}
 	
+	/**
+	 * saveFinished: Called by a save task on the event thread once it has completed or been cancelled
+	 * @param finished: The save task that finished
+	 * @param completed: true if the file was written
+	 */
+	protected void saveFinished(AgilitextSaveTask finished, boolean completed)
+	{
+		//if save failed, or session has closed and already applied it, nothing changes
+		if(!completed||closed)
+		{
+			journal.release(finished.getMark());
+			return;
+		}
+		
+		//record saved file as document source
+		finished.getDocument().putProperty(Document.StreamDescriptionProperty, finished.getFile());
+		//if saved document is still shown, journal against saved file as the old base no longer matches,
+		//followed by any edits made while saving
+		if(finished.getDocument()==getDocument())
+		{
+			journal.rebase(finished.getFile(), finished.getMark());
+			//if saved text is still the text shown, reset modified flag
+			if(getBuffer().getVersion()==finished.getSnapshot().getVersion())
+			{
+				modified=false;
+			}
+		}
+		else
+		{
+			journal.release(finished.getMark());
+		}
+	}
+	
+	/**
+	 * getFileChooser: Used to get the file chooser, building it on first use
+	 * @return: File chooser for opening and saving
+	 */
+	protected JFileChooser getFileChooser()
+	{
+		if(fileChooser==null)
+		{
+			fileChooser=new JFileChooser();
+		}
+		return fileChooser;
+	}
+	
 	/**
 	 * selectSaveFile: Targets a new file location to save to and calls saveFile()
 	 */
 	protected void selectSaveFile()
 	{
 		//set confirm to be the result of save dialog
-		int confirm=fileChooser.showSaveDialog(this);
+		int confirm=getFileChooser().showSaveDialog(this);
 		//if a save location has been chosen
 		if(confirm==JFileChooser.APPROVE_OPTION)
 		{
@@ -189,7 +446,7 @@ public class AgilitextTextArea extends JTextArea
 	protected void openFile()
 	{
 		//set confirm to be the result of open dialog
-		int confirm=fileChooser.showOpenDialog(this);
+		int confirm=getFileChooser().showOpenDialog(this);
 		//if a file has been chosen to open
 		if(confirm==JFileChooser.APPROVE_OPTION)
 		{
@@ -202,6 +459,18 @@ public class AgilitextTextArea extends JTextArea
 		}
 	}
 	
+	/**
+	 * openFile: Targets a passed file and calls loadFile()
+	 * @param file: File to open
+	 */
+	protected void openFile(File file)
+	{
+		//run check on current text
+		textCheck();
+		targetFile=file;
+		loadFile();
+	}
+	
 	/**
 	 * loadFile: Loads currently selected target into text area
 	 */
@@ -215,29 +484,20 @@ public class AgilitextTextArea extends JTextArea
 			{
 					try
 					{
-						//initialize string builder
-						stringBuilder=new StringBuilder();
-						//initialize readers
-						fileIn=new FileReader(targetFile);
-						readIn=new BufferedReader(fileIn);
-						
-						//create temp String to store lines read
-						String temp;
-						//build String from file using temp and string builder
-						while((temp = readIn.readLine()) !=null)
+						//if no load is running, keep the document shown before it
+						if(loader==null)
 						{
-							stringBuilder.append(temp);
+							previousDocument=getDocument();
 						}
-						//set text area text to be String built from file
-						this.setText(stringBuilder.toString());
 						
-						//close streams
-						readIn.close();
-						fileIn.close();
-						
-						//update initialText 
-						initialText=this.getText();
+						//initialize loader for target file
+						loader=new AgilitextFileLoader(this, targetFile, Charset.defaultCharset());
 						
+						//show loader's document without listeners while it fills, then start loading
+						detachListeners(getDocument());
+						super.setDocument(loader.getDocument());
+						setEditable(false);
+						scheduler.submit("load", "Opening "+targetFile.getName(), loader, true);
 					}
 					catch(IOException e)
 					{
@@ -260,6 +520,81 @@ public class AgilitextTextArea extends JTextArea
 		}
 	}
 	
+	/**
+	 * cancelLoad: Stops any running load, leaving its partial document in place
+	 */
+	private void cancelLoad()
+	{
+		//if a file is loading, cancel it and forget it
+		if(loader!=null)
+		{
+			loader.cancel(true);
+			loader=null;
+			previousDocument=null;
+			setEditable(true);
+		}
+	}
+	
+	/**
+	 * loadFinished: Called by a file loader on the event thread once it has completed or been cancelled
+	 * @param finished: The loader that finished
+	 * @param completed: true if the whole file was loaded, false if the load was cancelled or failed
+	 */
+	protected void loadFinished(AgilitextFileLoader finished, boolean completed)
+	{
+		//if a newer load has replaced this one, do nothing
+		if(finished!=loader)
+		{
+			return;
+		}
+		loader=null;
+		setEditable(true);
+		
+		//if file was loaded, start listening to its document
+		if(completed)
+		{
+			//edits of the previous document cannot be applied to this one
+			attachListeners(getDocument());
+			undoMan.discardAllEdits();
+			modified=false;
+			setCaretPosition(0);
+			//journal further edits against loaded file
+			journal.startFile(finished.getFile());
+		}
+		//otherwise restore document and file shown before the load, keeping its history
+		else
+		{
+			super.setDocument(previousDocument);
+			attachListeners(previousDocument);
+			targetFile=(File)previousDocument.getProperty(Document.StreamDescriptionProperty);
+		}
+		previousDocument=null;
+	}
+	
+	/**
+	 * checkOriginal: Checks whether the file the text was loaded from has been changed in place by
+	 * another program, which changes the text read from it, and offers to reload it
+	 * @return: true if the file is being reloaded
+	 */
+	protected boolean checkOriginal()
+	{
+		//if a file is loading, or text does not read from a file, there is nothing to check
+		AgilitextMappedBuffer original=getBuffer().getOriginal();
+		if(loader!=null||original==null||!original.isChanged())
+		{
+			return false;
+		}
+		//if user chooses to reload, load file again, otherwise keep the text as it reads now
+		if(!AgilitextClient.isUnattended()&&JOptionPane.showConfirmDialog(null, original.getFile().getName()+" was changed by another program, \nwould you like to reload it? Unsaved changes will be lost.", "Attention", JOptionPane.YES_NO_OPTION)==JOptionPane.YES_OPTION)
+		{
+			targetFile=original.getFile();
+			loadFile();
+			return true;
+		}
+		original.acceptChanges();
+		return false;
+	}
+	
 	/**
 	 * textCheck: Checks for modification of original text and prompts to save changes 
 	 */
@@ -283,10 +618,15 @@ public class AgilitextTextArea extends JTextArea
 	{
 		//run text check
 		textCheck();
-		//reset text area
-		this.setText("");
-		//reset target file
+		//stop any running load
+		cancelLoad();
+		//reset text area to a new empty document
+		this.setDocument(createDefaultModel());
+		//reset target file and modified flag
 		targetFile=null;
+		modified=false;
+		//journal further edits against empty text
+		journal.startEmpty();
 	}
 	
 	/**
@@ -294,8 +634,112 @@ public class AgilitextTextArea extends JTextArea
 	 */
 	protected void revertText()
 	{
-		//set current text to initial text
-		this.setText(initialText);
+		//if text came from a file, reload it
+		if(targetFile!=null&&targetFile.exists())
+		{
+			loadFile();
+		}
+		else
+		{
+			//otherwise stop any running load and reset to empty text
+			cancelLoad();
+			this.setDocument(createDefaultModel());
+			modified=false;
+			journal.startEmpty();
+		}
+	}
+	
+	/**
+	 * recoverSession: Restores text of the last session from its edit journal, or from
+	 * text stored in preferences by older versions
+	 */
+	protected void recoverSession()
+	{
+		//if no journal could be opened, start with empty text
+		if(!journal.isOpen())
+		{
+			return;
+		}
+		
+		//replay journal of last session
+		AgilitextJournal.Recovery recovery=journal.recover(Charset.defaultCharset());
+		if(recovery!=null)
+		{
+			showRecovery(recovery);
+		}
+		//if there is no journal, move any text stored in preferences into one
+		else
+		{
+			journal.startEmpty();
+			if(Appsistant.LAST_TEXT!=null)
+			{
+				this.setText(Appsistant.LAST_TEXT);
+			}
+			Appsistant.pref.remove(Appsistant.LAST_TEXT_KEY);
+		}
+	}
+	
+	/**
+	 * recoverWindow: Restores text of a window left with unsaved changes by the last session, from its window journal
+	 */
+	protected void recoverWindow()
+	{
+		//replay window journal, starting with empty text if it cannot be replayed
+		AgilitextJournal.Recovery recovery=journal.recover(Charset.defaultCharset());
+		if(recovery!=null)
+		{
+			showRecovery(recovery);
+		}
+		else
+		{
+			journal.startEmpty();
+		}
+	}
+	
+	/**
+	 * showRecovery: Shows the document recovered from a journal
+	 * @param recovery: Recovered session
+	 */
+	private void showRecovery(AgilitextJournal.Recovery recovery)
+	{
+		//show recovered document, keeping its file as save target
+		this.setDocument(recovery.document);
+		targetFile=recovery.file;
+		if(targetFile!=null)
+		{
+			recovery.document.putProperty(Document.StreamDescriptionProperty, targetFile);
+		}
+		//text differs from its file if any edits were replayed, empty text differs if it is not empty
+		modified=recovery.edits>0||(targetFile==null&&recovery.document.getLength()>0);
+		
+		//if last session did not close cleanly, tell user their changes were recovered, unless run unattended
+		if(!recovery.clean&&!AgilitextClient.isUnattended())
+		{
+			JOptionPane.showMessageDialog(null, "Agilitext did not close properly last time, \nyour unsaved changes have been recovered.", "Attention", JOptionPane.INFORMATION_MESSAGE);
+		}
+	}
+	
+	/**
+	 * closeSession: Commits the edit journal so that text can be restored on next start,
+	 * or deletes it if there is no text to restore
+	 * @param keep: true to restore text even if it is saved, as the first window does with the last session
+	 */
+	protected void closeSession(boolean keep)
+	{
+		//finish saves still writing, whose results are applied before the journal closes, and stop other tasks
+		scheduler.close();
+		closed=true;
+		metrics.unregister();
+		
+		//if text area contains no text, or only the saved text of a later window, there is nothing to restore
+		if(getDocument().getLength()==0||(!keep&&!modified))
+		{
+			journal.discard();
+		}
+		else
+		{
+			journal.close();
+		}
 	}
 	
 	/**
@@ -303,12 +747,13 @@ public class AgilitextTextArea extends JTextArea
 	 */
 	protected void getStats()
 	{
-		//capture current text in String text
-		String text=this.getText();
-		//initialize tokenizer using text using new lines and tabs as delimiters
-    	tokenizer=new StringTokenizer(text,"\n\t ");
+		//read counts kept up to date by document edits
+		long start=System.nanoTime();
+		AgilitextStats stats=getBuffer().getStats();
+		String summary="Word Count: "+stats.getWordCount()+"\nCharacter Count: "+stats.getCharCount()+"\nCharacter Count Without Spaces: "+stats.getNonSpaceCount()+"\nLine Count: "+lineIndex.getLineCount();
+		metrics.record(AgilitextMetrics.STATS, System.nanoTime()-start);
     	//display dialog containing document statistics
-    	JOptionPane.showMessageDialog(null, "Word Count: "+tokenizer.countTokens()+"\nCharacter Count: "+text.toCharArray().length+"\nCharacter Count Without Spaces: "+text.replaceAll(" ", "").replaceAll("\n", "").replaceAll("\t", "").toCharArray().length, "Document Stats", JOptionPane.INFORMATION_MESSAGE);
+    	JOptionPane.showMessageDialog(null, summary, "Document Stats", JOptionPane.INFORMATION_MESSAGE);
 	}
 	
 	/**
@@ -316,15 +761,13 @@ public class AgilitextTextArea extends JTextArea
 	 */
 	protected void deleteSelected()
 	{
-		try
-    	{
-    		//attempt to remove currently highlighted text
-    		this.setText(this.getText().replace(this.getSelectedText(),""));
-    	}
-    	catch(NullPointerException ex)
-    	{
-    		//if there is no highlighted text, do nothing
-    	}
+		//if there is no highlighted text, do nothing
+		if(getSelectionStart()==getSelectionEnd())
+		{
+			return;
+		}
+		//remove only the highlighted range, as one edit
+		this.replaceSelection("");
 	}
 	
 	/**
@@ -333,8 +776,20 @@ public class AgilitextTextArea extends JTextArea
 	 */
 	protected boolean doUndo()
 	{
+		//if a file is loading, history belongs to the document shown before it, which is not edited
+		if(loader!=null)
+		{
+			return false;
+		}
+		
 		//initialize undone boolean to false
 		boolean undone=false;
+		//record undo for flight recordings, if the recorder has started
+		AgilitextEvents.Undo event=AgilitextEvents.isRecording()? new AgilitextEvents.Undo() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
 		
 		try
     	{
@@ -353,6 +808,12 @@ public class AgilitextTextArea extends JTextArea
     		//if an error occurs, print stack trace
     		e.printStackTrace();
     	}
+		if(event!=null)
+		{
+			event.redo=false;
+			event.applied=undone;
+			event.commit();
+		}
 		return undone;
 	}
 	
@@ -362,8 +823,20 @@ public class AgilitextTextArea extends JTextArea
 	 */
 	protected boolean doRedo()
 	{
+		//if a file is loading, history belongs to the document shown before it, which is not edited
+		if(loader!=null)
+		{
+			return false;
+		}
+		
 		//initialize redone to false
 		boolean redone=false;
+		//record redo for flight recordings, if the recorder has started
+		AgilitextEvents.Undo event=AgilitextEvents.isRecording()? new AgilitextEvents.Undo() : null;
+		if(event!=null)
+		{
+			event.begin();
+		}
 		
 		try
     	{
@@ -382,9 +855,39 @@ public class AgilitextTextArea extends JTextArea
     		//if an error occurs, print stack trace
     		e.printStackTrace();
     	}
+		if(event!=null)
+		{
+			event.redo=true;
+			event.applied=redone;
+			event.commit();
+		}
 		return redone;
 	}
 	
+	/**
+	 * replaceAsSingleEdit: Replaces every match of a planned replacement under one document lock,
+	 * undone in a single step
+	 * @param plan: Replacement planned for the current text
+	 */
+	protected void replaceAsSingleEdit(AgilitextSearchEngine.Replacement plan)
+	{
+		//collect edits of each remove and insert into one undo step
+		undoMan.beginGroup();
+		try
+		{
+			setCaretPosition(((AgilitextDocument)getDocument()).replaceAll(plan));
+		}
+		catch(BadLocationException e)
+		{
+			//offsets come from a plan of current text, if an error occurs print stack trace
+			e.printStackTrace();
+		}
+		finally
+		{
+			undoMan.endGroup();
+		}
+	}
+	
 	/**
 	 * insertDate: Used to insert current date into text area
 	 */
@@ -404,20 +907,12 @@ public class AgilitextTextArea extends JTextArea
 	}
 	
 	/**
-	 * changesMade: Checks to see if current text is the same as initially loaded text
+	 * changesMade: Checks to see if current text has been modified since it was loaded or saved
 	 * @return: Change as true or false
 	 */
 	private boolean changesMade()
 	{
-		//set initial change to true
-		boolean change=true;
-		//if current text area text equals initial text
-		if(this.getText().equals(initialText))
-		{
-			//set change to false
-			change=false;
-		}
-		return change;
+		return modified;
 	}
 	
 	
@@ -0,0 +1,1054 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * AgilitextTextBuffer: Editable text stored as a piece table over a read-only mapped
+ * original file and an append-only add buffer, with no dependency on Swing
+ *
+ * Text always ends with an implied newline that cannot be removed, which length() counts and
+ * snapshots leave out. Offsets outside the text raise IndexOutOfBoundsException. Subclasses
+ * tracking positions are told of every change through inserted() and removed(), which are
+ * called while the buffer is locked.
+ *
+ * Pieces are kept as parallel arrays that form the current version of the table. Taking a
+ * snapshot shares those arrays instead of copying them, and the next edit copies them before
+ * changing anything, so a snapshot costs the same however many pieces there are and the
+ * buffers it reads are never written again. A version is reclaimed once the buffer has moved
+ * on and no snapshot refers to it.
+ *
+ * Between snapshots the arrays hold a gap at the last edit, with the pieces after it packed at
+ * the end of the arrays and their starts kept as distances from the end of the text. An edit
+ * only moves the pieces between the gap and itself, so a run of edits moving through the text
+ * in either direction, eg. replacing every occurrence of a word and undoing it, costs the same
+ * however many pieces follow it. Taking a snapshot closes the gap.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextTextBuffer
+{
+	//size of chars read at a time when a file cannot be mapped
+	private static final int READ_CHARS=65536;
+
+	//initial number of pieces the arrays hold
+	private static final int INITIAL_PIECES=16;
+
+	//private objects
+
+	//original buffer, null if content did not come from a file
+	private AgilitextMappedBuffer original;
+
+	//append-only add buffer
+	private char[] add;
+	private int addLength;
+
+	//pieces in document order, piece n spans offsets start(n) to start(n+1) and is read
+	//from bufferStart(n) in the add buffer if isAdd(n) is true, otherwise in the original buffer
+	private int[] starts;
+	private int[] bufferStarts;
+	private boolean[] adds;
+	private int pieceCount;
+	private int length;
+
+	//index of first piece stored after the gap, pieceCount+1 once the end of the text is before it
+	private int gap;
+
+	//true while a snapshot shares the piece arrays, which must then be copied before an edit
+	private boolean shared;
+
+	//number of changes made so far, identifying the current version of the text
+	private long version;
+
+	//word and char counts
+	private AgilitextStats stats;
+
+	/**
+	 * AgilitextTextBuffer: Constructor
+	 */
+	public AgilitextTextBuffer()
+	{
+		this(null);
+	}
+
+	/**
+	 * AgilitextTextBuffer: Constructor
+	 * @param original: The mapped file to use as original buffer, or null
+	 */
+	public AgilitextTextBuffer(AgilitextMappedBuffer original)
+	{
+		//initialize buffers
+		this.original=original;
+		add=new char[1024];
+		addLength=0;
+		starts=new int[INITIAL_PIECES+1];
+		bufferStarts=new int[INITIAL_PIECES];
+		adds=new boolean[INITIAL_PIECES];
+		pieceCount=0;
+		length=0;
+
+		//if original buffer is present, start with a single piece spanning it
+		if(original!=null&&original.length()>0)
+		{
+			length=original.length();
+			starts[1]=length;
+			pieceCount=1;
+		}
+
+		//text ends with an implied newline
+		appendAdd("\n");
+		bufferStarts[pieceCount]=addLength-1;
+		adds[pieceCount]=true;
+		pieceCount++;
+		length++;
+		starts[pieceCount]=length;
+		gap=pieceCount+1;
+
+		//count initial content
+		stats=new AgilitextStats(this);
+	}
+
+	/**
+	 * load: Reads a whole file into a new buffer, mapping it where the charset allows
+	 * @param file: The file to read
+	 * @param charset: The charset used to decode the file
+	 * @return: Buffer holding the file's text
+	 * @throws IOException: If the file cannot be read
+	 */
+	public static AgilitextTextBuffer load(File file, Charset charset) throws IOException
+	{
+		//if file can be mapped, index it and use it as original buffer
+		if(AgilitextMappedBuffer.isMappable(charset)&&file.length()<=Integer.MAX_VALUE)
+		{
+			AgilitextMappedBuffer original=new AgilitextMappedBuffer(file, charset);
+			original.index();
+			return new AgilitextTextBuffer(original);
+		}
+
+		//otherwise decode it into the add buffer
+		AgilitextTextBuffer buffer=new AgilitextTextBuffer();
+		Reader in=new InputStreamReader(new FileInputStream(file), charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE));
+		try
+		{
+			char[] chars=new char[READ_CHARS];
+			int n;
+			while((n=in.read(chars))!=-1)
+			{
+				buffer.insert(buffer.length()-1, new String(chars, 0, n));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return buffer;
+	}
+
+	/**
+	 * getOriginal: Used to get the mapped original buffer
+	 * @return: Original buffer, or null
+	 */
+	public AgilitextMappedBuffer getOriginal()
+	{
+		return original;
+	}
+
+	/**
+	 * getStats: Used to get the word and char counts of the content, kept up to date by every edit
+	 * @return: Content statistics
+	 */
+	public AgilitextStats getStats()
+	{
+		return stats;
+	}
+
+	/**
+	 * length: Used to get the length of the content, including implied newline
+	 * @return: Content length
+	 */
+	public synchronized int length()
+	{
+		return length;
+	}
+
+	/**
+	 * getVersion: Used to get the number of changes made to the content, which a snapshot
+	 * still matches if it has the same version
+	 * @return: Content version
+	 */
+	public synchronized long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * getPieceCount: Used to get the number of pieces in the table
+	 * @return: Piece count
+	 */
+	public synchronized int getPieceCount()
+	{
+		return pieceCount;
+	}
+
+	/**
+	 * getHeapBytes: Used to estimate the heap held by the add buffer, the piece arrays and the
+	 * original's index, counting arrays shared with snapshots once
+	 * @return: Estimated bytes
+	 */
+	public synchronized long getHeapBytes()
+	{
+		long bytes=2L*add.length+4L*(starts.length+bufferStarts.length)+adds.length;
+		return (original==null)? bytes : bytes+original.getHeapBytes();
+	}
+
+	/**
+	 * insert: Inserts a String into the content
+	 * @param where: Offset to insert at, before the implied newline
+	 * @param str: String to insert
+	 */
+	public synchronized void insert(int where, String str)
+	{
+		//if where is outside of content, throw exception
+		if(where<0||where>=length)
+		{
+			throw new IndexOutOfBoundsException("Insert at "+where+" of "+length);
+		}
+		int n=str.length();
+		//if nothing is inserted, do nothing
+		if(n==0)
+		{
+			return;
+		}
+
+		unshare();
+
+		//if inserting right after an add piece that ends the add buffer, extend it
+		int i=findPiece(where);
+		if(start(i)==where&&i>0&&isAdd(i-1)&&bufferStart(i-1)+where-start(i-1)==addLength)
+		{
+			appendAdd(str);
+			moveGap(i);
+			finishInsert(where, n);
+			return;
+		}
+
+		//append chars to add buffer and create a piece for them, splitting the piece at where
+		int start=addLength;
+		appendAdd(str);
+		i=split(where);
+		openSlots(i, 1);
+		bufferStarts[i]=start;
+		adds[i]=true;
+		moveGap(i+1);
+		finishInsert(where, n);
+	}
+
+	/**
+	 * delete: Removes a range of chars from the content
+	 * @param where: Offset to start removing at
+	 * @param n: Number of chars to remove, leaving the implied newline in place
+	 */
+	public synchronized void delete(int where, int n)
+	{
+		//if range is outside of content, throw exception
+		if(where<0||n<0||where+n>=length)
+		{
+			throw new IndexOutOfBoundsException("Delete "+where+" to "+(where+n)+" of "+length);
+		}
+		//if nothing is removed, do nothing
+		if(n==0)
+		{
+			return;
+		}
+
+		//uncount removed chars while they are still present
+		stats.removing(where, n);
+		unshare();
+
+		//split pieces at both ends of range so that it covers whole pieces, then remove them
+		int first=split(where);
+		int last=split(where+n);
+		closeSlots(first, last-first);
+		moveGap(first);
+		length-=n;
+		version++;
+		removed(where, n);
+	}
+
+	/**
+	 * appendOriginal: Extends the content with newly indexed chars of the original buffer,
+	 * placing them before the implied newline
+	 * @param originalLength: Number of original chars now covered by the content
+	 */
+	public synchronized void appendOriginal(int originalLength)
+	{
+		//find how much of the original buffer is already covered
+		int where=length-1;
+		int covered=0;
+		for(int i=0;i<pieceCount;i++)
+		{
+			if(!isAdd(i))
+			{
+				covered=Math.max(covered, bufferStart(i)+start(i+1)-start(i));
+			}
+		}
+		int n=originalLength-covered;
+		//if nothing new has been indexed, do nothing
+		if(n<=0)
+		{
+			return;
+		}
+		unshare();
+
+		//if last text piece ends the covered original range, extend it, otherwise add a piece
+		int last=pieceCount-2;
+		if(last>=0&&!isAdd(last)&&bufferStart(last)+start(last+1)-start(last)==covered)
+		{
+			moveGap(last+1);
+		}
+		else
+		{
+			openSlots(pieceCount-1, 1);
+			bufferStarts[pieceCount-2]=covered;
+			adds[pieceCount-2]=false;
+			moveGap(pieceCount-1);
+		}
+		finishInsert(where, n);
+	}
+
+	/**
+	 * getText: Used to get a range of chars as a String
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @return: String of chars
+	 */
+	public synchronized String getText(int where, int len)
+	{
+		char[] dest=new char[len];
+		getChars(where, len, dest, 0);
+		return new String(dest);
+	}
+
+	/**
+	 * getChars: Used to copy a range of chars into a caller's array without allocating
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @param dest: Destination array
+	 * @param destPos: Starting position in destination array
+	 */
+	public synchronized void getChars(int where, int len, char[] dest, int destPos)
+	{
+		//if range is outside of content, throw exception
+		if(where<0||len<0||where+len>length)
+		{
+			throw new IndexOutOfBoundsException("Range "+where+" to "+(where+len)+" of "+length);
+		}
+		copyChars(where, len, dest, destPos);
+	}
+
+	/**
+	 * read: Used to read a range of chars, sharing the add buffer instead of copying where possible
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @param partial: true to stop early at the end of a piece or decoded chunk rather than copy
+	 * @return: Buffer holding the chars read, which must not be modified
+	 */
+	public synchronized CharBuffer read(int where, int len, boolean partial)
+	{
+		//if range is outside of content, throw exception
+		if(where<0||len<0||where+len>length)
+		{
+			throw new IndexOutOfBoundsException("Range "+where+" to "+(where+len)+" of "+length);
+		}
+
+		//locate piece containing where
+		int i=findPiece(where);
+		int inPiece=where-start(i);
+		int pieceLength=start(i+1)-start(i);
+
+		//if range lies inside a single add piece, share the add buffer directly
+		if(isAdd(i)&&(inPiece+len<=pieceLength||partial))
+		{
+			return CharBuffer.wrap(add, bufferStart(i)+inPiece, Math.min(len, pieceLength-inPiece));
+		}
+
+		//if a partial read is allowed, stop at end of piece and of the decoded chunk
+		if(partial)
+		{
+			int from=bufferStart(i)+inPiece;
+			len=Math.min(len, Math.min(pieceLength-inPiece, original.getChunkEnd(from)-from));
+		}
+
+		//copy chars from successive pieces
+		char[] dest=new char[len];
+		copyChars(where, len, dest, 0);
+		return CharBuffer.wrap(dest);
+	}
+
+	/**
+	 * snapshot: Captures the text, without the implied newline, so that it can be read by
+	 * other threads while the content keeps changing, without copying any of it
+	 * @return: Snapshot of current text
+	 */
+	public synchronized Snapshot snapshot()
+	{
+		//close gap so that the arrays list pieces in order
+		if(gap<=pieceCount)
+		{
+			unshare();
+			moveGap(pieceCount+1);
+		}
+		//share current version, the next edit copies it and the buffers it refers to are never overwritten
+		shared=true;
+		return new Snapshot(starts, bufferStarts, adds, pieceCount, add, original, length-1, version);
+	}
+
+	/**
+	 * inserted: Called after chars are inserted, while the buffer is locked
+	 * @param where: Offset of insert
+	 * @param n: Number of inserted chars
+	 */
+	protected void inserted(int where, int n)
+	{
+		//plain buffers track no positions
+	}
+
+	/**
+	 * removed: Called after chars are removed, while the buffer is locked
+	 * @param where: Offset of remove
+	 * @param n: Number of removed chars
+	 */
+	protected void removed(int where, int n)
+	{
+		//plain buffers track no positions
+	}
+
+	/**
+	 * savePieces: Captures the pieces of a range, so that it can be put back once removed
+	 * without copying its text
+	 * @param where: Starting offset
+	 * @param len: Length of range
+	 * @return: Spans of the buffers covering the range
+	 */
+	public synchronized Pieces savePieces(int where, int len)
+	{
+		//if range is outside of content, throw exception
+		if(where<0||len<0||where+len>length)
+		{
+			throw new IndexOutOfBoundsException("Range "+where+" to "+(where+len)+" of "+length);
+		}
+
+		//copy pieces overlapping range, trimmed to it
+		Pieces saved=new Pieces(1);
+		int end=where+len;
+		for(int i=findPiece(where);i<pieceCount&&start(i)<end;i++)
+		{
+			int from=Math.max(where, start(i));
+			int to=Math.min(end, start(i+1));
+			saved.add(isAdd(i), bufferStart(i)+from-start(i), to-from);
+		}
+		return saved;
+	}
+
+	/**
+	 * restorePieces: Reinserts pieces captured by savePieces()
+	 * @param where: Offset to reinsert at, before the implied newline
+	 * @param saved: Captured pieces
+	 */
+	public synchronized void restorePieces(int where, Pieces saved)
+	{
+		//if where is outside of content, throw exception
+		if(where<0||where>=length)
+		{
+			throw new IndexOutOfBoundsException("Insert at "+where+" of "+length);
+		}
+		//if nothing is inserted, do nothing
+		if(saved.length==0)
+		{
+			return;
+		}
+
+		unshare();
+		int i=split(where);
+		openSlots(i, saved.count);
+		//lay saved pieces out one after another from where
+		int offset=where;
+		for(int k=0;k<saved.count;k++)
+		{
+			starts[i]=offset;
+			bufferStarts[i]=saved.bufferStarts[k];
+			adds[i]=saved.adds[k];
+			offset+=saved.lengths[k];
+			i++;
+		}
+		moveGap(i);
+		finishInsert(where, saved.length);
+	}
+
+	/**
+	 * getChar: Used to read a char of captured pieces, which may no longer be in the content
+	 * @param pieces: Captured pieces
+	 * @param index: Index of char within the pieces
+	 * @return: Char at index
+	 */
+	public synchronized char getChar(Pieces pieces, int index)
+	{
+		//find span holding index
+		int k=0;
+		while(index>=pieces.lengths[k])
+		{
+			index-=pieces.lengths[k];
+			k++;
+		}
+		int from=pieces.bufferStarts[k]+index;
+		if(pieces.adds[k])
+		{
+			return add[from];
+		}
+		char[] c=new char[1];
+		original.getChars(from, 1, c, 0);
+		return c[0];
+	}
+
+	/**
+	 * copyChars: Copies chars from successive pieces into an array
+	 * @param where: Starting offset
+	 * @param len: Number of chars
+	 * @param dest: Destination array
+	 * @param destPos: Starting position in destination array
+	 */
+	private void copyChars(int where, int len, char[] dest, int destPos)
+	{
+		int i=findPiece(where);
+		int inPiece=where-start(i);
+		while(len>0)
+		{
+			int count=Math.min(len, start(i+1)-start(i)-inPiece);
+			//copy from add buffer or decode from original buffer
+			if(isAdd(i))
+			{
+				System.arraycopy(add, bufferStart(i)+inPiece, dest, destPos, count);
+			}
+			else
+			{
+				original.getChars(bufferStart(i)+inPiece, count, dest, destPos);
+			}
+			destPos+=count;
+			len-=count;
+			inPiece=0;
+			i++;
+		}
+	}
+
+	/**
+	 * finishInsert: Updates length and counts after an insert and notifies subclasses
+	 * @param where: Offset of insert
+	 * @param n: Number of inserted chars
+	 */
+	private void finishInsert(int where, int n)
+	{
+		length+=n;
+		version++;
+		stats.inserted(where, n);
+		inserted(where, n);
+	}
+
+	/**
+	 * split: Splits the piece containing an offset so that a piece starts at it
+	 * @param where: Offset to split at
+	 * @return: Index of piece starting at where
+	 */
+	private int split(int where)
+	{
+		int i=findPiece(where);
+		//if offset is already a piece boundary
+		if(start(i)==where)
+		{
+			return i;
+		}
+		//tail of piece becomes a piece of its own, ending where the piece ended, and lies before the gap
+		openSlots(i+1, 1);
+		starts[i+1]=where;
+		bufferStarts[i+1]=bufferStarts[i]+where-starts[i];
+		adds[i+1]=adds[i];
+		return i+1;
+	}
+
+	/**
+	 * findPiece: Binary searches for the piece containing an offset
+	 * @param where: Offset to locate
+	 * @return: Index of piece
+	 */
+	private int findPiece(int where)
+	{
+		//most lookups are near the last edit, so look through the few pieces either side of the gap first
+		int from=Math.max(gap-2, 0);
+		int to=Math.min(gap+2, pieceCount);
+		if(from<to&&where>=start(from)&&where<start(to))
+		{
+			while(where>=start(from+1))
+			{
+				from++;
+			}
+			return from;
+		}
+
+		//otherwise search the side of the gap holding where, the end of the text not being a piece
+		if(gap<pieceCount&&where>=start(gap))
+		{
+			int offset=adds.length-pieceCount;
+			return findPiece(starts, offset+gap, offset+pieceCount, where-length)-offset;
+		}
+		return findPiece(starts, 0, Math.min(gap, pieceCount), where);
+	}
+
+	/**
+	 * findPiece: Binary searches piece starts for the piece containing an offset
+	 * @param starts: Starting offsets of pieces
+	 * @param pieceCount: Number of pieces
+	 * @param where: Offset to locate
+	 * @return: Index of last piece starting at or before where
+	 */
+	private static int findPiece(int[] starts, int pieceCount, int where)
+	{
+		return findPiece(starts, 0, pieceCount, where);
+	}
+
+	/**
+	 * findPiece: Binary searches a run of piece starts for the piece containing an offset
+	 * @param starts: Starting offsets of pieces
+	 * @param from: Index of first piece of run
+	 * @param to: Index after last piece of run
+	 * @param where: Offset to locate, at or after the start of the run
+	 * @return: Index of last piece starting at or before where
+	 */
+	private static int findPiece(int[] starts, int from, int to, int where)
+	{
+		int low=from;
+		int high=to-1;
+		while(low<high)
+		{
+			int mid=(low+high+1)>>>1;
+			if(starts[mid]<=where)
+			{
+				low=mid;
+			}
+			else
+			{
+				high=mid-1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * openSlots: Makes room for new pieces at an index, which start where the piece at that index
+	 * started and lie before the gap, leaving other offsets unchanged
+	 * @param i: Index of first new piece
+	 * @param k: Number of new pieces
+	 */
+	private void openSlots(int i, int k)
+	{
+		//if arrays are full, grow them with the gap closed
+		if(pieceCount+k>adds.length)
+		{
+			moveGap(pieceCount+1);
+			int capacity=Math.max(adds.length*2, pieceCount+k);
+			starts=Arrays.copyOf(starts, capacity+1);
+			bufferStarts=Arrays.copyOf(bufferStarts, capacity);
+			adds=Arrays.copyOf(adds, capacity);
+		}
+		int from=start(i);
+		moveGap(i);
+		for(int j=i;j<i+k;j++)
+		{
+			starts[j]=from;
+		}
+		pieceCount+=k;
+		gap=i+k;
+	}
+
+	/**
+	 * closeSlots: Removes pieces, leaving offsets of the pieces after them unchanged
+	 * @param i: Index of first removed piece
+	 * @param k: Number of removed pieces
+	 */
+	private void closeSlots(int i, int k)
+	{
+		moveGap(i+k);
+		pieceCount-=k;
+		gap=i;
+	}
+
+	/**
+	 * moveGap: Moves the gap to an index, moving the pieces it passes over to the other side of it.
+	 * Pieces after the gap count back from the length, so an edit shifts the pieces after it by
+	 * moving the gap to the first of them and then changing the length
+	 * @param index: Index of first piece to store after the gap, up to pieceCount+1
+	 */
+	private void moveGap(int index)
+	{
+		int offset=adds.length-pieceCount;
+		//if pieces before index are after the gap, move them down and store their offsets again
+		if(index>gap)
+		{
+			System.arraycopy(starts, gap+offset, starts, gap, index-gap);
+			for(int i=gap;i<index;i++)
+			{
+				starts[i]+=length;
+			}
+			int pieces=Math.min(index, pieceCount)-gap;
+			if(pieces>0)
+			{
+				System.arraycopy(bufferStarts, gap+offset, bufferStarts, gap, pieces);
+				System.arraycopy(adds, gap+offset, adds, gap, pieces);
+			}
+		}
+		//if pieces from index are before the gap, move them up and store their distances from the end
+		else if(index<gap)
+		{
+			System.arraycopy(starts, index, starts, index+offset, gap-index);
+			for(int i=index+offset;i<gap+offset;i++)
+			{
+				starts[i]-=length;
+			}
+			int pieces=Math.min(gap, pieceCount)-index;
+			if(pieces>0)
+			{
+				System.arraycopy(bufferStarts, index, bufferStarts, index+offset, pieces);
+				System.arraycopy(adds, index, adds, index+offset, pieces);
+			}
+		}
+		gap=index;
+	}
+
+	/**
+	 * start: Used to get the starting offset of a piece, on either side of the gap
+	 * @param i: Index of piece, pieceCount for the end of the text
+	 * @return: Starting offset
+	 */
+	private int start(int i)
+	{
+		return (i<gap)? starts[i] : starts[i+adds.length-pieceCount]+length;
+	}
+
+	/**
+	 * bufferStart: Used to get the offset in its buffer a piece is read from
+	 * @param i: Index of piece
+	 * @return: Offset in add or original buffer
+	 */
+	private int bufferStart(int i)
+	{
+		return (i<gap)? bufferStarts[i] : bufferStarts[i+adds.length-pieceCount];
+	}
+
+	/**
+	 * isAdd: Used to determine if a piece is read from the add buffer
+	 * @param i: Index of piece
+	 * @return: true if piece is in the add buffer, false if it is in the original buffer
+	 */
+	private boolean isAdd(int i)
+	{
+		return (i<gap)? adds[i] : adds[i+adds.length-pieceCount];
+	}
+
+	/**
+	 * unshare: Copies the piece arrays if a snapshot shares them, so that an edit leaves the snapshot intact
+	 */
+	private void unshare()
+	{
+		if(shared)
+		{
+			starts=starts.clone();
+			bufferStarts=bufferStarts.clone();
+			adds=adds.clone();
+			shared=false;
+		}
+	}
+
+	/**
+	 * appendAdd: Appends chars to the add buffer, growing it when needed
+	 * @param str: Chars to append
+	 */
+	private void appendAdd(String str)
+	{
+		int n=str.length();
+		//if add buffer is full, grow it
+		if(addLength+n>add.length)
+		{
+			char[] tmp=new char[Math.max(add.length*2, addLength+n)];
+			System.arraycopy(add, 0, tmp, 0, addLength);
+			add=tmp;
+		}
+		str.getChars(0, n, add, addLength);
+		addLength+=n;
+	}
+
+	/**
+	 * Snapshot: Immutable copy of the piece list at one point in time, read without locking.
+	 * A snapshot is not thread safe itself, each thread reads through its own copy.
+	 */
+	public static class Snapshot
+	{
+		//piece n spans document offsets starts[n] to starts[n+1]
+		private int[] starts;
+		private int[] bufferStarts;
+		private boolean[] adds;
+		private int pieceCount;
+
+		//buffers the pieces refer to, and this snapshot's own reader of the original buffer,
+		//created on first use as the original buffer is only indexed further in the meantime
+		private char[] add;
+		private AgilitextMappedBuffer original;
+		private AgilitextMappedBuffer.Reader reader;
+
+		//text length and version, and last located piece
+		private int length;
+		private long version;
+		private int cachedPiece;
+
+		private Snapshot(int[] starts, int[] bufferStarts, boolean[] adds, int pieceCount, char[] add, AgilitextMappedBuffer original, int length, long version)
+		{
+			this.starts=starts;
+			this.bufferStarts=bufferStarts;
+			this.adds=adds;
+			this.pieceCount=pieceCount;
+			this.add=add;
+			this.original=original;
+			this.length=length;
+			this.version=version;
+			cachedPiece=0;
+		}
+
+		/**
+		 * copy: Creates another view of the same text, for use by another thread
+		 * @return: New snapshot sharing this one's pieces
+		 */
+		public Snapshot copy()
+		{
+			return new Snapshot(starts, bufferStarts, adds, pieceCount, add, original, length, version);
+		}
+
+		/**
+		 * getVersion: Used to get the version of the buffer captured
+		 * @return: Buffer version when snapshot was taken
+		 */
+		public long getVersion()
+		{
+			return version;
+		}
+
+		/**
+		 * length: Used to get the length of the captured text
+		 * @return: Text length
+		 */
+		public int length()
+		{
+			return length;
+		}
+
+		/**
+		 * getChars: Copies a range of the captured text into an array
+		 * @param where: Starting offset
+		 * @param len: Number of chars
+		 * @param dest: Destination array
+		 * @param destPos: Starting position in destination array
+		 */
+		public void getChars(int where, int len, char[] dest, int destPos)
+		{
+			//if range is outside of text, throw exception
+			if(where<0||len<0||where+len>length)
+			{
+				throw new IndexOutOfBoundsException("Range "+where+" to "+(where+len)+" of "+length);
+			}
+
+			//locate piece containing where, starting from the last located piece
+			int i=cachedPiece;
+			if(where<starts[i]||where>=starts[i+1])
+			{
+				i=findPiece(starts, pieceCount, where);
+			}
+
+			//copy from successive pieces
+			int inPiece=where-starts[i];
+			while(len>0)
+			{
+				int count=Math.min(len, starts[i+1]-starts[i]-inPiece);
+				if(adds[i])
+				{
+					System.arraycopy(add, bufferStarts[i]+inPiece, dest, destPos, count);
+				}
+				else
+				{
+					if(reader==null)
+					{
+						reader=original.newReader();
+					}
+					reader.getChars(bufferStarts[i]+inPiece, count, dest, destPos);
+				}
+				destPos+=count;
+				len-=count;
+				inPiece=0;
+				if(len>0)
+				{
+					i++;
+				}
+			}
+			cachedPiece=i;
+		}
+	}
+
+	/**
+	 * Pieces: Spans of the add and original buffers that made up a range of text, which stay
+	 * valid after the range is removed, as neither buffer is ever overwritten
+	 */
+	public static class Pieces
+	{
+		//span k is read from bufferStarts[k] in the add buffer if adds[k] is true, otherwise in the original buffer
+		private int[] bufferStarts;
+		private int[] lengths;
+		private boolean[] adds;
+		private int count;
+		private int length;
+
+		private Pieces(int capacity)
+		{
+			bufferStarts=new int[capacity];
+			lengths=new int[capacity];
+			adds=new boolean[capacity];
+		}
+
+		/**
+		 * length: Used to get the number of chars the pieces hold
+		 * @return: Total length of spans
+		 */
+		public int length()
+		{
+			return length;
+		}
+
+		/**
+		 * getHeapBytes: Used to estimate the heap held by the pieces
+		 * @return: Estimated bytes
+		 */
+		public long getHeapBytes()
+		{
+			return 64+9L*adds.length;
+		}
+
+		/**
+		 * add: Appends a span, extending the last one if it continues in the same buffer
+		 * @param add: true if span is in the add buffer
+		 * @param start: Offset of span in its buffer
+		 * @param len: Length of span
+		 */
+		private void add(boolean add, int start, int len)
+		{
+			//if span continues the last one, extend it
+			if(count>0&&adds[count-1]==add&&bufferStarts[count-1]+lengths[count-1]==start)
+			{
+				lengths[count-1]+=len;
+				length+=len;
+				return;
+			}
+			//if arrays are full, grow them
+			if(count==adds.length)
+			{
+				int capacity=Math.max(count*2, 1);
+				bufferStarts=Arrays.copyOf(bufferStarts, capacity);
+				lengths=Arrays.copyOf(lengths, capacity);
+				adds=Arrays.copyOf(adds, capacity);
+			}
+			bufferStarts[count]=start;
+			lengths[count]=len;
+			adds[count]=add;
+			count++;
+			length+=len;
+		}
+
+		/**
+		 * join: Creates the pieces of this range followed by another
+		 * @param after: Pieces of the range that follows
+		 * @return: New pieces spanning both ranges
+		 */
+		public Pieces join(Pieces after)
+		{
+			Pieces joined=new Pieces(count+after.count);
+			for(int k=0;k<count;k++)
+			{
+				joined.add(adds[k], bufferStarts[k], lengths[k]);
+			}
+			for(int k=0;k<after.count;k++)
+			{
+				joined.add(after.adds[k], after.bufferStarts[k], after.lengths[k]);
+			}
+			return joined;
+		}
+
+		/**
+		 * write: Writes the spans to a stream
+		 * @param out: The stream to write to
+		 * @throws IOException: If the stream cannot be written
+		 */
+		public void write(DataOutput out) throws IOException
+		{
+			out.writeInt(count);
+			for(int k=0;k<count;k++)
+			{
+				out.writeBoolean(adds[k]);
+				out.writeInt(bufferStarts[k]);
+				out.writeInt(lengths[k]);
+			}
+		}
+
+		/**
+		 * read: Reads spans written by write
+		 * @param in: The stream to read from
+		 * @return: Pieces read
+		 * @throws IOException: If the stream cannot be read
+		 */
+		public static Pieces read(DataInput in) throws IOException
+		{
+			int n=in.readInt();
+			Pieces pieces=new Pieces(n);
+			for(int k=0;k<n;k++)
+			{
+				boolean add=in.readBoolean();
+				int start=in.readInt();
+				pieces.add(add, start, in.readInt());
+			}
+			return pieces;
+		}
+	}
+}
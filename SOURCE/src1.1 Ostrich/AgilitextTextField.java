@@ -19,7 +19,6 @@
 import javax.swing.JTextField;
 import javax.swing.border.EmptyBorder;
 import java.awt.Color;
-import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Insets;
@@ -32,10 +31,13 @@ import java.awt.RenderingHints;
  * @version 1.1
  * 
  * Date Created: 08/05/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class AgilitextTextField extends JTextField
 {
+	//cached background gradient
+	private AgilitextGradient background=new AgilitextGradient();
+	
 	//initialize serialization long
 	private static final long serialVersionUID = 1L;
 	
@@ -87,13 +89,8 @@ public class AgilitextTextField extends JTextField
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
         
-        //create new GradientPaint object with gradient options
-        GradientPaint gp = new GradientPaint(0, 0,
-                getBackground().brighter(), 0, getHeight(),
-                getBackground().darker().darker());
-        //set paint object to GradientPAint object and paint
-        g2d.setPaint(gp);
-        g2d.fillRect(0, 0, getWidth(), getHeight());
+        //paint cached gradient over area being repainted
+        background.paint(g2d, this);
         
         //call superclass paintComponment to repaint component
         super.paintComponent(graphics);
@@ -0,0 +1,171 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AgilitextTimeline: Startup timing report, recording named startup phases and steps with
+ * nanosecond times and printing them to standard error once startup is done
+ *
+ * Recording is off unless the application is run with --timeline or -Dagilitext.timing=true.
+ * Each record is printed as a line of the form "timeline AT TOOK NAME", where AT is the
+ * nanoseconds from virtual machine start to the end of the phase, TOOK is the nanoseconds the
+ * phase took, or "-" for a step that only marks a point in time, and NAME is the phase.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextTimeline
+{
+	//prefix of each printed record
+	public static final String PREFIX="timeline";
+
+	//initialize enabled to true if timing was requested by property, flags may enable it later
+	private static volatile boolean enabled=Boolean.getBoolean("agilitext.timing");
+
+	//true if application should close itself once startup is done
+	private static volatile boolean exitAfterStartup;
+
+	//private objects
+
+	//time this class was loaded, in both clocks, to place records relative to virtual machine start
+	private static final long originNanos=System.nanoTime();
+	private static final long originMillis=System.currentTimeMillis();
+
+	//recorded names, end times and durations, guarded by names
+	private static final List<String> names=new ArrayList<String>();
+	private static final List<Long> ends=new ArrayList<Long>();
+	private static final List<Long> durations=new ArrayList<Long>();
+
+	/**
+	 * parseFlags: Applies timing flags among the command line arguments
+	 * @param args: Command line arguments
+	 */
+	public static void parseFlags(String[] args)
+	{
+		for(String arg : args)
+		{
+			if(arg.equals("--timeline"))
+			{
+				enabled=true;
+			}
+			else if(arg.equals("--exit-after-startup"))
+			{
+				exitAfterStartup=true;
+			}
+		}
+	}
+
+	/**
+	 * isEnabled: Used to determine if startup timing was requested
+	 * @return: true if phases are recorded
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * isExitAfterStartup: Used to determine if application is run unattended, closing once started
+	 * @return: true if application should not wait on the user and close once startup is done
+	 */
+	public static boolean isExitAfterStartup()
+	{
+		return exitAfterStartup;
+	}
+
+	/**
+	 * begin: Used to get the start time of a phase
+	 * @return: Current time in nanoseconds, passed to end() once the phase is done
+	 */
+	public static long begin()
+	{
+		return System.nanoTime();
+	}
+
+	/**
+	 * end: Records a phase ending now, only the first time it ends
+	 * @param phase: Name of the phase
+	 * @param start: Time returned by begin() when the phase started
+	 */
+	public static void end(String phase, long start)
+	{
+		if(enabled)
+		{
+			long now=System.nanoTime();
+			record(phase, now, now-start);
+		}
+	}
+
+	/**
+	 * mark: Records a step happening now, only the first time it is marked
+	 * @param step: Name of the step
+	 */
+	public static void mark(String step)
+	{
+		if(enabled)
+		{
+			record(step, System.nanoTime(), -1);
+		}
+	}
+
+	/**
+	 * record: Adds a record if its name is not recorded yet
+	 * @param name: Name of the phase or step
+	 * @param end: Time it ended at
+	 * @param duration: Time it took, or -1 for a step
+	 */
+	private static void record(String name, long end, long duration)
+	{
+		synchronized(names)
+		{
+			if(!names.contains(name))
+			{
+				names.add(name);
+				ends.add(end);
+				durations.add(duration);
+			}
+		}
+	}
+
+	/**
+	 * report: Prints every record in the order recorded
+	 */
+	public static void report()
+	{
+		if(!enabled)
+		{
+			return;
+		}
+		//find virtual machine start only now, as loading management classes takes time of its own
+		long vmStart=originNanos-(originMillis-ManagementFactory.getRuntimeMXBean().getStartTime())*1000000L;
+		synchronized(names)
+		{
+			for(int i=0;i<names.size();i++)
+			{
+				long duration=durations.get(i);
+				System.err.println(PREFIX+" "+(ends.get(i)-vmStart)+" "+(duration<0? "-" : ""+duration)+" "+names.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AgilitextTiming: Count, total, maximum and log2 histogram of the durations of one kind of operation
+ *
+ * Bucket 0 counts durations under 1/8 ms and bucket b>0 durations of 2^(b-1) to 2^b eighths of a
+ * millisecond, so that paints of a fraction of a millisecond and saves of seconds share one scale.
+ * Durations are recorded from any thread. The getters read a copy, which is how metrics hand a
+ * consistent view of a timing to JMX clients, where each getter becomes an item of its composite value.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextTiming
+{
+	//number of histogram buckets, the last counting durations of 4096 ms and over
+	private static final int BUCKETS=17;
+
+	//nanoseconds in the unit of bucket 1
+	private static final long UNIT=125000;
+
+	//private objects
+	private long count;
+	private long total;
+	private long max;
+	private long last;
+	private long[] histogram;
+
+	/**
+	 * AgilitextTiming: Constructor
+	 */
+	public AgilitextTiming()
+	{
+		histogram=new long[BUCKETS];
+	}
+
+	/**
+	 * record: Adds the duration of one operation
+	 * @param nanos: Duration in nanoseconds
+	 */
+	public synchronized void record(long nanos)
+	{
+		long units=nanos/UNIT;
+		int bucket=(units==0)? 0 : Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(units));
+		histogram[bucket]++;
+		count++;
+		total+=nanos;
+		max=Math.max(max, nanos);
+		last=nanos;
+	}
+
+	/**
+	 * reset: Forgets every recorded duration
+	 */
+	public synchronized void reset()
+	{
+		count=0;
+		total=0;
+		max=0;
+		last=0;
+		histogram=new long[BUCKETS];
+	}
+
+	/**
+	 * copy: Used to get the durations recorded so far, unaffected by later ones
+	 * @return: Copy of timing
+	 */
+	public synchronized AgilitextTiming copy()
+	{
+		AgilitextTiming copy=new AgilitextTiming();
+		copy.count=count;
+		copy.total=total;
+		copy.max=max;
+		copy.last=last;
+		copy.histogram=histogram.clone();
+		return copy;
+	}
+
+	/**
+	 * getCount: Used to get the number of operations recorded
+	 * @return: Operation count
+	 */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * getTotalMillis: Used to get the time spent in all recorded operations
+	 * @return: Total duration in milliseconds
+	 */
+	public synchronized double getTotalMillis()
+	{
+		return total/1e6;
+	}
+
+	/**
+	 * getMeanMillis: Used to get the average duration of an operation
+	 * @return: Mean duration in milliseconds, 0 if none were recorded
+	 */
+	public synchronized double getMeanMillis()
+	{
+		return (count==0)? 0 : total/1e6/count;
+	}
+
+	/**
+	 * getMaxMillis: Used to get the longest duration recorded
+	 * @return: Maximum duration in milliseconds
+	 */
+	public synchronized double getMaxMillis()
+	{
+		return max/1e6;
+	}
+
+	/**
+	 * getLastMillis: Used to get the duration of the most recent operation
+	 * @return: Last duration in milliseconds
+	 */
+	public synchronized double getLastMillis()
+	{
+		return last/1e6;
+	}
+
+	/**
+	 * getMedianMillis: Used to get the duration half of the operations finished within
+	 * @return: Upper bound of the bucket holding the median, in milliseconds
+	 */
+	public synchronized double getMedianMillis()
+	{
+		return percentile(0.5);
+	}
+
+	/**
+	 * getP95Millis: Used to get the duration 95% of the operations finished within
+	 * @return: Upper bound of the bucket holding the 95th percentile, in milliseconds
+	 */
+	public synchronized double getP95Millis()
+	{
+		return percentile(0.95);
+	}
+
+	/**
+	 * getP99Millis: Used to get the duration 99% of the operations finished within
+	 * @return: Upper bound of the bucket holding the 99th percentile, in milliseconds
+	 */
+	public synchronized double getP99Millis()
+	{
+		return percentile(0.99);
+	}
+
+	/**
+	 * getHistogram: Used to describe the non-empty histogram buckets
+	 * @return: Lines of the form "0.5-1 ms: count", shortest durations first
+	 */
+	public synchronized String[] getHistogram()
+	{
+		List<String> lines=new ArrayList<String>();
+		for(int b=0;b<BUCKETS;b++)
+		{
+			if(histogram[b]>0)
+			{
+				String range=(b==0)? "< "+format(bound(0)) : (b==BUCKETS-1)? ">= "+format(bound(b-1)) : format(bound(b-1))+"-"+format(bound(b));
+				lines.add(range+" ms: "+histogram[b]);
+			}
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * percentile: Finds the bucket holding a fraction of the recorded operations
+	 * @param fraction: Fraction of operations, eg. 0.95
+	 * @return: Upper bound of the bucket in milliseconds, or the maximum for the last bucket
+	 */
+	private double percentile(double fraction)
+	{
+		//if nothing is recorded, there is no percentile
+		if(count==0)
+		{
+			return 0;
+		}
+		long rank=(long)Math.ceil(count*fraction);
+		long seen=0;
+		for(int b=0;b<BUCKETS-1;b++)
+		{
+			seen+=histogram[b];
+			if(seen>=rank)
+			{
+				//no recorded duration exceeds the maximum, which may be below the bucket bound
+				return Math.min(bound(b), max/1e6);
+			}
+		}
+		return max/1e6;
+	}
+
+	/**
+	 * bound: Used to get the upper bound of a bucket
+	 * @param bucket: Bucket index below the last
+	 * @return: Bound in milliseconds
+	 */
+	private static double bound(int bucket)
+	{
+		return (1L<<bucket)*UNIT/1e6;
+	}
+
+	/**
+	 * format: Formats a bucket bound without trailing zeros
+	 * @param millis: Bound in milliseconds
+	 * @return: Formatted bound, eg. "0.125" or "64"
+	 */
+	private static String format(double millis)
+	{
+		return (millis==Math.rint(millis))? Long.toString((long)millis) : Double.toString(millis);
+	}
+}
@@ -0,0 +1,712 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * AgilitextUndoManager: Undo history kept as text inserts and removes instead of document
+ * edit objects, merging typed chars into word sized steps and holding steps within a byte budget
+ *
+ * An operation holds the pieces of the add and original buffers its text spans rather than the
+ * text, so removing any amount of text records no more than the pieces it covered. Steps are kept
+ * in memory around the next step to undo or redo. Once they exceed the budget, the steps farthest
+ * from it are written to two logs used as stacks, older steps to the undo log and undone steps to
+ * the redo log, and read back as undo or redo reaches them. A log only ever holds the steps that
+ * can still be reached, as reading a step back truncates it and a new edit empties the redo log.
+ *
+ * A step whose operation fails to apply has the operations applied before it reverted, so the
+ * document is never left part way through a step.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextUndoManager implements UndoableEditListener
+{
+	//default number of bytes of history held in memory
+	public static final long DEFAULT_BUDGET=16L<<20;
+
+	//estimated bytes held by a step and by an operation besides its pieces
+	private static final int STEP_BYTES=40;
+	private static final int OP_BYTES=40;
+
+	//longest run of typing merged into one step
+	private static final int MAX_TYPED=100;
+
+	//size of buffers steps are written and read through
+	private static final int LOG_BUFFER=65536;
+
+	//private objects
+
+	//document edited by recorded steps
+	private AgilitextDocument doc;
+
+	//steps in memory, the first being step number first, of which the first done can be undone and the rest redone
+	private ArrayList<Step> steps;
+	private int first;
+	private int done;
+
+	//step that typing may extend, and group collecting operations, or null
+	private Step typing;
+	private Step group;
+
+	//bytes held in memory and budget
+	private long retained;
+	private long budget;
+
+	//true while undoing or redoing, so that resulting edits are not recorded
+	private boolean applying;
+
+	//steps before and after those in memory, the nearest on top
+	private Log undoLog;
+	private Log redoLog;
+
+	/**
+	 * AgilitextUndoManager: Constructor
+	 */
+	public AgilitextUndoManager()
+	{
+		this(DEFAULT_BUDGET);
+	}
+
+	/**
+	 * AgilitextUndoManager: Constructor
+	 * @param budget: Number of bytes of history held in memory before old steps are spilled
+	 */
+	public AgilitextUndoManager(long budget)
+	{
+		this.budget=budget;
+		steps=new ArrayList<Step>();
+		undoLog=new Log();
+		redoLog=new Log();
+	}
+
+	/**
+	 * getRetainedBytes: Used to get the estimated bytes held in memory by the history
+	 * @return: Retained bytes
+	 */
+	public long getRetainedBytes()
+	{
+		return retained;
+	}
+
+	/**
+	 * undoableEditHappened: Records an insert or remove made to a document
+	 * @param e: Undoable edit event, whose edit is the document change
+	 */
+	public void undoableEditHappened(UndoableEditEvent e)
+	{
+		//if edit is being made by an undo or redo, or is not a text change, ignore it
+		if(applying||!(e.getEdit() instanceof DocumentEvent))
+		{
+			return;
+		}
+		DocumentEvent event=(DocumentEvent)e.getEdit();
+		boolean insert=event.getType()==DocumentEvent.EventType.INSERT;
+		if(!insert&&event.getType()!=DocumentEvent.EventType.REMOVE)
+		{
+			return;
+		}
+		//if document cannot give the pieces of its text, history cannot be kept consistent
+		if(!(event.getDocument() instanceof AgilitextDocument))
+		{
+			discardAllEdits();
+			return;
+		}
+		//pieces only mean something in the document they came from, so history of another one is dropped
+		if(event.getDocument()!=doc)
+		{
+			if(doc!=null)
+			{
+				discardAllEdits();
+			}
+			doc=(AgilitextDocument)event.getDocument();
+		}
+		int offset=event.getOffset();
+		int length=event.getLength();
+
+		//inserted text is read from the document, removed text has to be captured by the document as it goes
+		AgilitextTextBuffer.Pieces pieces=insert? doc.getPieceTable().savePieces(offset, length) : doc.getRemovedPieces();
+		if(pieces==null)
+		{
+			discardAllEdits();
+			return;
+		}
+
+		//a new edit drops any steps that could have been redone
+		dropRedo();
+
+		//if edit continues typing, extend last step
+		if(group==null&&typing!=null&&length==1&&extend(typing, insert, offset, pieces))
+		{
+			spill();
+			return;
+		}
+
+		//otherwise record a new operation
+		Op op=new Op(insert, offset, length, pieces);
+		op.lastDelimiter=length==1&&isDelimiter(doc.getPieceTable().getChar(pieces, 0));
+		if(group!=null)
+		{
+			group.add(op);
+		}
+		else
+		{
+			Step step=new Step();
+			step.add(op);
+			steps.add(step);
+			done++;
+			retained+=STEP_BYTES;
+			//single chars may be extended by further typing
+			typing=(length==1)? step : null;
+		}
+		retained+=op.getBytes();
+		spill();
+	}
+
+	/**
+	 * beginGroup: Starts collecting following edits into a single step, until endGroup is called
+	 */
+	public void beginGroup()
+	{
+		group=new Step();
+		typing=null;
+	}
+
+	/**
+	 * endGroup: Adds the edits collected since beginGroup as a single step
+	 */
+	public void endGroup()
+	{
+		Step collected=group;
+		group=null;
+		//if any edits were collected, they are undone together
+		if(collected!=null&&!collected.ops.isEmpty())
+		{
+			steps.add(collected);
+			done++;
+			retained+=STEP_BYTES;
+		}
+		spill();
+	}
+
+	/**
+	 * canUndo: Used to determine if there is a step to undo
+	 * @return: true if a step can be undone
+	 */
+	public boolean canUndo()
+	{
+		return group==null&&done>0;
+	}
+
+	/**
+	 * canRedo: Used to determine if there is a step to redo
+	 * @return: true if a step can be redone
+	 */
+	public boolean canRedo()
+	{
+		return group==null&&done<first+steps.size()+redoLog.count;
+	}
+
+	/**
+	 * undo: Undoes the last step, reverting its operations in reverse order
+	 * @throws CannotUndoException: If there is no step or it no longer fits the document
+	 */
+	public void undo() throws CannotUndoException
+	{
+		//if there is nothing to undo, throw exception
+		if(!canUndo())
+		{
+			throw new CannotUndoException();
+		}
+		try
+		{
+			apply(load(done-1), false);
+		}
+		catch(BadLocationException e)
+		{
+			//if step does not fit the document, it cannot be undone
+			throw new CannotUndoException();
+		}
+		catch(IOException e)
+		{
+			//if spilled step cannot be read, it cannot be undone
+			throw new CannotUndoException();
+		}
+		done--;
+		typing=null;
+		spill();
+	}
+
+	/**
+	 * redo: Redoes the last undone step, applying its operations in order
+	 * @throws CannotRedoException: If there is no step or it no longer fits the document
+	 */
+	public void redo() throws CannotRedoException
+	{
+		//if there is nothing to redo, throw exception
+		if(!canRedo())
+		{
+			throw new CannotRedoException();
+		}
+		try
+		{
+			apply(load(done), true);
+		}
+		catch(BadLocationException e)
+		{
+			//if step does not fit the document, it cannot be redone
+			throw new CannotRedoException();
+		}
+		catch(IOException e)
+		{
+			//if spilled step cannot be read, it cannot be redone
+			throw new CannotRedoException();
+		}
+		done++;
+		typing=null;
+		spill();
+	}
+
+	/**
+	 * discardAllEdits: Empties the history and its logs
+	 */
+	public void discardAllEdits()
+	{
+		steps.clear();
+		first=0;
+		done=0;
+		typing=null;
+		group=null;
+		retained=0;
+		undoLog.clear();
+		redoLog.clear();
+	}
+
+	/**
+	 * apply: Applies the operations of a step in order, or reverts them in reverse order,
+	 * reverting those already applied if one fails
+	 * @param step: Step to apply
+	 * @param forward: true to redo step, false to undo it
+	 * @throws BadLocationException: If an operation does not fit the document
+	 */
+	private void apply(Step step, boolean forward) throws BadLocationException
+	{
+		int n=step.ops.size();
+		int applied=0;
+		applying=true;
+		try
+		{
+			for(;applied<n;applied++)
+			{
+				apply(step.ops.get(forward? applied : n-1-applied), forward);
+			}
+		}
+		catch(BadLocationException e)
+		{
+			//put back the operations already applied so that the step is undone or redone whole or not at all
+			try
+			{
+				for(int i=applied-1;i>=0;i--)
+				{
+					apply(step.ops.get(forward? i : n-1-i), !forward);
+				}
+			}
+			catch(BadLocationException ex)
+			{
+				//if they cannot be put back either, history no longer fits the document
+				discardAllEdits();
+			}
+			throw e;
+		}
+		finally
+		{
+			applying=false;
+		}
+	}
+
+	/**
+	 * apply: Applies or reverts a single operation
+	 * @param op: Operation to apply
+	 * @param forward: true to apply operation, false to revert it
+	 * @throws BadLocationException: If the operation does not fit the document
+	 */
+	private void apply(Op op, boolean forward) throws BadLocationException
+	{
+		//applying an insert or reverting a remove puts the pieces back, the others remove them
+		if(op.insert==forward)
+		{
+			doc.insertPieces(op.offset, op.pieces);
+		}
+		else
+		{
+			doc.remove(op.offset, op.length);
+		}
+	}
+
+	/**
+	 * load: Used to get a step, reading it back from its log if it was spilled
+	 * @param index: Number of step, next to those in memory
+	 * @return: The step
+	 * @throws IOException: If the log cannot be read
+	 */
+	private Step load(int index) throws IOException
+	{
+		//if step is older than those in memory, it is on top of the undo log
+		if(index<first)
+		{
+			Step step=undoLog.pop();
+			steps.add(0, step);
+			first--;
+			retained+=step.bytes;
+			return step;
+		}
+		//if step is newer than those in memory, it is on top of the redo log
+		if(index>=first+steps.size())
+		{
+			Step step=redoLog.pop();
+			steps.add(step);
+			retained+=step.bytes;
+			return step;
+		}
+		return steps.get(index-first);
+	}
+
+	/**
+	 * dropRedo: Drops steps that were undone, which can no longer be redone after a new edit
+	 */
+	private void dropRedo()
+	{
+		int from=done-first;
+		for(int i=from;i<steps.size();i++)
+		{
+			retained-=steps.get(i).bytes;
+		}
+		steps.subList(from, steps.size()).clear();
+		redoLog.clear();
+	}
+
+	/**
+	 * extend: Adds a typed char to a typing step if it continues the same word
+	 * @param step: Typing step
+	 * @param insert: true if char was inserted, false if removed
+	 * @param offset: Offset of char
+	 * @param pieces: Piece of the char
+	 * @return: true if step was extended
+	 */
+	private boolean extend(Step step, boolean insert, int offset, AgilitextTextBuffer.Pieces pieces)
+	{
+		//a word char following a delimiter starts a new word, and steps stay short
+		Op op=step.ops.get(0);
+		boolean delimiter=isDelimiter(doc.getPieceTable().getChar(pieces, 0));
+		if(op.insert!=insert||op.length>=MAX_TYPED||(!delimiter&&op.lastDelimiter))
+		{
+			return false;
+		}
+
+		long bytes=op.getBytes();
+		//typing continues at end of insert
+		if(insert&&offset==op.offset+op.length)
+		{
+			op.pieces=op.pieces.join(pieces);
+		}
+		//backspace removes char before removed text
+		else if(!insert&&offset==op.offset-1)
+		{
+			op.pieces=pieces.join(op.pieces);
+			op.offset--;
+		}
+		//delete removes char after it
+		else if(!insert&&offset==op.offset)
+		{
+			op.pieces=op.pieces.join(pieces);
+		}
+		else
+		{
+			return false;
+		}
+		op.length++;
+		op.lastDelimiter=delimiter;
+		step.bytes+=op.getBytes()-bytes;
+		retained+=op.getBytes()-bytes;
+		return true;
+	}
+
+	/**
+	 * spill: Writes the steps farthest from the next undo and redo to the logs until retained bytes
+	 * fit the budget, going a quarter below it so that steps are spilled in batches
+	 */
+	private void spill()
+	{
+		//if history fits budget, nothing is spilled
+		if(retained<=budget)
+		{
+			return;
+		}
+		long target=budget-budget/4;
+		try
+		{
+			//spill oldest steps, oldest first, keeping the next step to undo
+			int n=0;
+			try
+			{
+				while(retained>target&&n<done-first-1)
+				{
+					undoLog.push(steps.get(n));
+					retained-=steps.get(n).bytes;
+					n++;
+				}
+			}
+			finally
+			{
+				steps.subList(0, n).clear();
+				first+=n;
+			}
+
+			//then undone steps, newest first, keeping the next step to redo
+			int end=steps.size();
+			try
+			{
+				while(retained>target&&end>done-first+1)
+				{
+					redoLog.push(steps.get(end-1));
+					retained-=steps.get(end-1).bytes;
+					end--;
+				}
+			}
+			finally
+			{
+				steps.subList(end, steps.size()).clear();
+			}
+		}
+		catch(IOException e)
+		{
+			//if log cannot be written, keep steps in memory
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * isDelimiter: Used to determine if a char separates words
+	 * @param c: Char to check
+	 * @return: true if char is a space, tab or newline
+	 */
+	private static boolean isDelimiter(char c)
+	{
+		return c==' '||c=='\t'||c=='\n';
+	}
+
+	/**
+	 * Step: Operations undone and redone together
+	 */
+	private static class Step
+	{
+		private ArrayList<Op> ops=new ArrayList<Op>();
+
+		//estimated bytes held by step and its operations
+		private long bytes=STEP_BYTES;
+
+		/**
+		 * add: Adds an operation to the step
+		 * @param op: Operation to add
+		 */
+		private void add(Op op)
+		{
+			ops.add(op);
+			bytes+=op.getBytes();
+		}
+
+		/**
+		 * write: Writes the step to a stream
+		 * @param out: The stream to write to
+		 * @throws IOException: If the stream cannot be written
+		 */
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(ops.size());
+			for(Op op : ops)
+			{
+				out.writeBoolean(op.insert);
+				out.writeBoolean(op.lastDelimiter);
+				out.writeInt(op.offset);
+				out.writeInt(op.length);
+				op.pieces.write(out);
+			}
+		}
+
+		/**
+		 * read: Reads a step written by write
+		 * @param in: The stream to read from
+		 * @return: Step read
+		 * @throws IOException: If the stream cannot be read
+		 */
+		private static Step read(DataInputStream in) throws IOException
+		{
+			Step step=new Step();
+			int n=in.readInt();
+			step.ops.ensureCapacity(n);
+			for(int i=0;i<n;i++)
+			{
+				boolean insert=in.readBoolean();
+				boolean lastDelimiter=in.readBoolean();
+				int offset=in.readInt();
+				int length=in.readInt();
+				Op op=new Op(insert, offset, length, AgilitextTextBuffer.Pieces.read(in));
+				op.lastDelimiter=lastDelimiter;
+				step.add(op);
+			}
+			return step;
+		}
+	}
+
+	/**
+	 * Op: Insert or remove of text, held as the pieces its text spans
+	 */
+	private static class Op
+	{
+		private boolean insert;
+		private int offset;
+		private int length;
+		private AgilitextTextBuffer.Pieces pieces;
+		private boolean lastDelimiter;
+
+		private Op(boolean insert, int offset, int length, AgilitextTextBuffer.Pieces pieces)
+		{
+			this.insert=insert;
+			this.offset=offset;
+			this.length=length;
+			this.pieces=pieces;
+		}
+
+		/**
+		 * getBytes: Used to estimate the heap held by the operation
+		 * @return: Estimated bytes
+		 */
+		private long getBytes()
+		{
+			return OP_BYTES+pieces.getHeapBytes();
+		}
+	}
+
+	/**
+	 * Log: Temporary file holding spilled steps as a stack, each step followed by the offset it starts at
+	 */
+	private static class Log
+	{
+		//log file and its channel, created on first push
+		private File file;
+		private FileChannel channel;
+
+		//number of steps held
+		private int count;
+
+		/**
+		 * push: Writes a step on top of the log, through a bounded buffer
+		 * @param step: Step to write
+		 * @throws IOException: If the log cannot be written
+		 */
+		private void push(Step step) throws IOException
+		{
+			if(channel==null)
+			{
+				file=File.createTempFile("agilitext", ".undo");
+				file.deleteOnExit();
+				channel=new RandomAccessFile(file, "rw").getChannel();
+			}
+			long start=channel.size();
+			try
+			{
+				//stream is only flushed, closing it would close the channel
+				DataOutputStream out=new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel.position(start)), LOG_BUFFER));
+				step.write(out);
+				out.writeLong(start);
+				out.flush();
+			}
+			catch(IOException e)
+			{
+				//if step is written in part, cut it off
+				channel.truncate(start);
+				throw e;
+			}
+			count++;
+		}
+
+		/**
+		 * pop: Reads the step on top of the log and removes it, through a bounded buffer
+		 * @return: Step read
+		 * @throws IOException: If the log cannot be read
+		 */
+		private Step pop() throws IOException
+		{
+			//read offset of top step from its end
+			ByteBuffer trailer=ByteBuffer.allocate(8);
+			long end=channel.size()-8;
+			while(trailer.hasRemaining())
+			{
+				if(channel.read(trailer, end+trailer.position())<0)
+				{
+					throw new IOException("Undo log is truncated");
+				}
+			}
+			long start=trailer.getLong(0);
+			Step step=Step.read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(start)), LOG_BUFFER)));
+			channel.truncate(start);
+			count--;
+			return step;
+		}
+
+		/**
+		 * clear: Empties the log
+		 */
+		private void clear()
+		{
+			count=0;
+			//if steps have been spilled, empty log
+			if(channel!=null)
+			{
+				try
+				{
+					channel.truncate(0);
+				}
+				catch(IOException e)
+				{
+					//if an error occurs, print stack trace
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,519 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import javax.swing.SwingUtilities;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AgilitextWatchdog: Event thread responsiveness monitor, timing every dispatched event and
+ * sampling the event thread's stack whenever it stops responding
+ *
+ * Monitoring is off unless the application is run with --watchdog or -Dagilitext.watchdog=true.
+ * The stall threshold in milliseconds is read from -Dagilitext.watchdog.threshold, 200 if unset.
+ *
+ * A daemon thread posts a heartbeat to the event thread and, while a heartbeat has waited longer
+ * than the threshold, samples the event thread's stack every few milliseconds. Samples are
+ * aggregated by frame, counting each frame once per sample it appears in and separately when it
+ * is the frame running, so the frames under a stalled action rank by the time spent in them.
+ * Each stall is appended to watchdog.log in the settings directory as it ends.
+ *
+ * Events are dispatched through a timing event queue, recording a histogram of dispatch times
+ * and, for each kind of event, its count, total and longest time. Buttons and menu items fire
+ * their actions from within the mouse or key event that triggered them, which the queue times as
+ * a whole, so AgilitextHandler times each action it handles with beginAction and endAction. Actions
+ * are listed by command next to the events, each button and menu item on its own row, and are
+ * left out of the histogram as the event running them is already counted there. An event or
+ * action that runs a modal dialog dispatches other events until the dialog closes, so it is
+ * listed as modal and left out of the histogram rather than counted as blocking for that long.
+ *
+ * The whole report is shown from the tools menu on demand and appended to the log on exit.
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextWatchdog
+{
+	//initialize enabled to true if monitoring was requested by property, flags may enable it later
+	private static volatile boolean enabled=Boolean.getBoolean("agilitext.watchdog");
+
+	//time a heartbeat may wait before the event thread is stalled, in milliseconds
+	private static final long THRESHOLD=Long.getLong("agilitext.watchdog.threshold", 200);
+
+	//time between heartbeats, and between stack samples during a stall, in milliseconds
+	private static final long HEARTBEAT_INTERVAL=100;
+	private static final long SAMPLE_INTERVAL=10;
+
+	//number of histogram buckets, bucket b>0 counting dispatches of 2^(b-1) to 2^b milliseconds
+	private static final int BUCKETS=13;
+
+	//number of frames and event kinds listed in a report
+	private static final int REPORT_ROWS=30;
+
+	//log file, in the same directory as Appsistant's settings files but found without loading
+	//Appsistant, so that logging never depends on the desktop or graphics state it reads
+	private static final File LOG=new File(new File(System.getProperty("user.home"), ".agilitext"), "watchdog.log");
+
+	//private objects
+
+	//time monitoring started
+	private static long startMillis;
+
+	//dispatch time histogram, written by the event thread
+	private static final AtomicLongArray histogram=new AtomicLongArray(BUCKETS);
+
+	//event being dispatched, read by the watchdog thread
+	private static volatile String dispatching;
+
+	//number of dispatches started, counted by the event thread
+	private static long dispatches;
+
+	//count, total and longest nanoseconds of each kind of event, guarded by events
+	private static final HashMap<String, long[]> events=new HashMap<String, long[]>();
+
+	//sampled frames with the number of samples they appear in and are running in, guarded by frames
+	private static final HashMap<String, long[]> frames=new HashMap<String, long[]>();
+
+	//number of stalls and samples, and longest stall in milliseconds, guarded by frames
+	private static long stalls;
+	private static long samples;
+	private static long longestStall;
+
+	//event thread, as last seen by a heartbeat
+	private static volatile Thread eventThread;
+
+	//time the outstanding heartbeat was posted, and time it ran, 0 when not set
+	private static volatile long posted;
+	private static volatile long arrived;
+
+	/**
+	 * parseFlags: Applies monitoring flags among the command line arguments
+	 * @param args: Command line arguments
+	 */
+	public static void parseFlags(String[] args)
+	{
+		for(String arg : args)
+		{
+			if(arg.equals("--watchdog"))
+			{
+				enabled=true;
+			}
+		}
+	}
+
+	/**
+	 * isEnabled: Used to determine if monitoring was requested
+	 * @return: true if event thread is monitored
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * start: Installs the timing event queue and starts the watchdog thread, if monitoring was requested
+	 */
+	public static void start()
+	{
+		if(!enabled)
+		{
+			return;
+		}
+		startMillis=System.currentTimeMillis();
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimingQueue());
+
+		//heartbeats keep the event thread from shutting itself down, the application exits once its last window closes
+		Thread watchdog=new Thread(new Runnable()
+		{
+			public void run()
+			{
+				watch();
+			}
+		}, "Agilitext Watchdog");
+		watchdog.setDaemon(true);
+		watchdog.start();
+
+		//append report to log on exit
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			public void run()
+			{
+				log(report());
+			}
+		}));
+	}
+
+	/**
+	 * watch: Posts heartbeats and samples the event thread while one is late, forever
+	 */
+	private static void watch()
+	{
+		Runnable heartbeat=new Runnable()
+		{
+			public void run()
+			{
+				eventThread=Thread.currentThread();
+				arrived=System.nanoTime();
+			}
+		};
+		long stallStart=0;
+		String stalledEvent=null;
+		while(true)
+		{
+			long now=System.nanoTime();
+			//if last heartbeat has run, close any stall it ended and post the next one
+			if(arrived!=0||posted==0)
+			{
+				if(stallStart!=0)
+				{
+					endStall(stalledEvent, (arrived-posted)/1000000);
+					stallStart=0;
+				}
+				arrived=0;
+				posted=now;
+				SwingUtilities.invokeLater(heartbeat);
+				pause(HEARTBEAT_INTERVAL);
+			}
+			//if heartbeat is late, event thread is stalled, sample it
+			else if(now-posted>=THRESHOLD*1000000)
+			{
+				if(stallStart==0)
+				{
+					stallStart=now;
+					stalledEvent=dispatching;
+				}
+				sample();
+				pause(SAMPLE_INTERVAL);
+			}
+			else
+			{
+				pause(SAMPLE_INTERVAL);
+			}
+		}
+	}
+
+	/**
+	 * pause: Sleeps the watchdog thread
+	 * @param millis: Time to sleep in milliseconds
+	 */
+	private static void pause(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch(InterruptedException e)
+		{
+			//watchdog runs until exit, keep watching
+		}
+	}
+
+	/**
+	 * sample: Adds the event thread's current stack to the frame counts
+	 */
+	private static void sample()
+	{
+		Thread thread=eventThread;
+		//if no heartbeat has run yet, event thread is not known
+		if(thread==null)
+		{
+			return;
+		}
+		StackTraceElement[] stack=thread.getStackTrace();
+		synchronized(frames)
+		{
+			samples++;
+			//count each frame once per sample, however deeply it recurses
+			HashSet<String> seen=new HashSet<String>();
+			for(int i=0;i<stack.length;i++)
+			{
+				String frame=stack[i].toString();
+				long[] counts=frames.get(frame);
+				if(counts==null)
+				{
+					counts=new long[2];
+					frames.put(frame, counts);
+				}
+				if(seen.add(frame))
+				{
+					counts[0]++;
+				}
+				if(i==0)
+				{
+					counts[1]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * endStall: Records a stall that has ended and appends it to the log
+	 * @param event: Event being dispatched when the stall was noticed, or null
+	 * @param millis: Time the heartbeat waited in milliseconds
+	 */
+	private static void endStall(String event, long millis)
+	{
+		synchronized(frames)
+		{
+			stalls++;
+			longestStall=Math.max(longestStall, millis);
+		}
+		log(new Date()+" stall of "+millis+" ms during "+((event!=null)? event : "unknown event")+"\n");
+	}
+
+	/**
+	 * beginAction: Starts timing an action handled by AgilitextHandler, on the event thread
+	 * @param event: The action event
+	 * @return: Timing to pass to endAction, or null if monitoring is off
+	 */
+	public static ActionTiming beginAction(ActionEvent event)
+	{
+		//if monitoring is off, do nothing
+		if(!enabled)
+		{
+			return null;
+		}
+		//name action while it runs, so that a stall during it is logged against it
+		ActionTiming timing=new ActionTiming();
+		timing.kind="Action "+event.getActionCommand();
+		timing.outer=dispatching;
+		dispatching=timing.kind;
+		timing.started=dispatches;
+		timing.start=System.nanoTime();
+		return timing;
+	}
+
+	/**
+	 * endAction: Records the time an action took, once AgilitextHandler has handled it
+	 * @param timing: Timing returned by beginAction, or null if monitoring is off
+	 */
+	public static void endAction(ActionTiming timing)
+	{
+		//if monitoring is off, do nothing
+		if(timing==null)
+		{
+			return;
+		}
+		dispatching=timing.outer;
+		record(timing.kind, System.nanoTime()-timing.start, dispatches!=timing.started);
+	}
+
+	/**
+	 * dispatched: Records the time an event took to dispatch
+	 * @param event: Kind of event
+	 * @param nanos: Dispatch time in nanoseconds
+	 * @param modal: true if other events were dispatched before it returned
+	 */
+	private static void dispatched(String event, long nanos, boolean modal)
+	{
+		//if event ran a modal dialog, time spent waiting on the user is not a stall
+		if(!modal)
+		{
+			long millis=nanos/1000000;
+			int bucket=(millis==0)? 0 : Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(millis));
+			histogram.incrementAndGet(bucket);
+		}
+		record(event, nanos, modal);
+	}
+
+	/**
+	 * record: Adds a time to the count, total and longest time of a kind of event or action
+	 * @param event: Kind of event or action
+	 * @param nanos: Time in nanoseconds
+	 * @param modal: true if other events were dispatched before it returned
+	 */
+	private static void record(String event, long nanos, boolean modal)
+	{
+		if(modal)
+		{
+			event+=" (modal)";
+		}
+		synchronized(events)
+		{
+			long[] stats=events.get(event);
+			if(stats==null)
+			{
+				stats=new long[3];
+				events.put(event, stats);
+			}
+			stats[0]++;
+			stats[1]+=nanos;
+			stats[2]=Math.max(stats[2], nanos);
+		}
+	}
+
+	/**
+	 * describe: Used to name the kind of an event
+	 * @param event: Dispatched event
+	 * @return: Event kind, eg. "MouseEvent"
+	 */
+	private static String describe(AWTEvent event)
+	{
+		return event.getClass().getSimpleName();
+	}
+
+	/**
+	 * report: Used to describe everything recorded since monitoring started
+	 * @return: Report text
+	 */
+	public static String report()
+	{
+		StringWriter out=new StringWriter();
+		PrintWriter report=new PrintWriter(out);
+		if(!enabled)
+		{
+			report.println("Event thread monitoring is off, run with --watchdog to turn it on");
+			return out.toString();
+		}
+		report.println("Event thread report from "+new Date(startMillis)+" to "+new Date()+", stall threshold "+THRESHOLD+" ms");
+
+		//print dispatch time histogram
+		report.println();
+		report.println(String.format("%-16s %10s", "dispatch time", "events"));
+		for(int b=0;b<BUCKETS;b++)
+		{
+			String range=(b==0)? "< 1 ms" : (b==BUCKETS-1)? ">= "+(1L<<(b-1))+" ms" : (1L<<(b-1))+"-"+(1L<<b)+" ms";
+			report.println(String.format("%-16s %10d", range, histogram.get(b)));
+		}
+
+		//print event kinds by total dispatch time
+		report.println();
+		report.println(String.format("%-40s %10s %10s %10s", "event", "count", "total ms", "max ms"));
+		synchronized(events)
+		{
+			for(Map.Entry<String, long[]> entry : top(events, 1))
+			{
+				long[] stats=entry.getValue();
+				report.println(String.format("%-40s %10d %10d %10d", entry.getKey(), stats[0], stats[1]/1000000, stats[2]/1000000));
+			}
+		}
+
+		//print stalls and frames by samples they appear in
+		report.println();
+		synchronized(frames)
+		{
+			report.println(stalls+" stalls, longest "+longestStall+" ms, "+samples+" stack samples every "+SAMPLE_INTERVAL+" ms");
+			report.println(String.format("%10s %10s  %s", "samples", "running", "frame"));
+			for(Map.Entry<String, long[]> entry : top(frames, 0))
+			{
+				report.println(String.format("%10d %10d  %s", entry.getValue()[0], entry.getValue()[1], entry.getKey()));
+			}
+		}
+		report.flush();
+		return out.toString();
+	}
+
+	/**
+	 * top: Used to get the entries of a map with the largest value at an index
+	 * @param map: Map of counts, locked by the caller
+	 * @param index: Index of the count to sort by
+	 * @return: At most REPORT_ROWS entries, largest first
+	 */
+	private static List<Map.Entry<String, long[]>> top(HashMap<String, long[]> map, final int index)
+	{
+		List<Map.Entry<String, long[]>> entries=new ArrayList<Map.Entry<String, long[]>>(map.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>()
+		{
+			public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b)
+			{
+				//break ties by the last count, so that of frames in every sample the running ones come first
+				int order=Long.compare(b.getValue()[index], a.getValue()[index]);
+				int last=a.getValue().length-1;
+				return (order!=0)? order : Long.compare(b.getValue()[last], a.getValue()[last]);
+			}
+		});
+		return entries.subList(0, Math.min(REPORT_ROWS, entries.size()));
+	}
+
+	/**
+	 * log: Appends text to the watchdog log in the settings directory
+	 * @param text: Text to append
+	 */
+	private static void log(String text)
+	{
+		LOG.getParentFile().mkdirs();
+		try(FileWriter out=new FileWriter(LOG, true))
+		{
+			out.write(text);
+		}
+		catch(IOException e)
+		{
+			//if an error occurs, print error and keep monitoring
+			System.err.println("Watchdog log could not be written: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * ActionTiming: An action being timed, the event it runs within and the dispatch count when it started
+	 */
+	public static class ActionTiming
+	{
+		private String kind;
+		private String outer;
+		private long started;
+		private long start;
+	}
+
+	/**
+	 * TimingQueue: Event queue timing the dispatch of every event
+	 */
+	private static class TimingQueue extends EventQueue
+	{
+		/**
+		 * dispatchEvent: Dispatches an event, recording its kind while it runs and the time it took
+		 * @param event: Event to dispatch
+		 */
+		protected void dispatchEvent(AWTEvent event)
+		{
+			String kind=describe(event);
+			//events dispatched from within this one, eg. by a modal dialog, are timed on their own
+			String outer=dispatching;
+			dispatching=kind;
+			long started=++dispatches;
+			long start=System.nanoTime();
+			try
+			{
+				super.dispatchEvent(event);
+			}
+			finally
+			{
+				dispatching=outer;
+				dispatched(kind, System.nanoTime()-start, dispatches!=started);
+			}
+		}
+	}
+}
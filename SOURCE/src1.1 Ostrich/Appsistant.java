@@ -26,6 +26,7 @@ import java.util.Date;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.net.URI;
+import java.io.File;
 import java.io.InputStream;
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -39,7 +40,7 @@ import javax.swing.JOptionPane;
  * @version 1.1
  * 
  * Date Created: 06/13/13
- * Last Updated: 08/18/13
+ * Last Updated: 10/18/26
  */
 public class Appsistant
 {
@@ -75,8 +76,10 @@ public class Appsistant
 	private static final String RUN_PATH=Appsistant.class.getResource("Appsistant.class").toString();
 	//initialize inArchive to true if RUN_PATH contains an acceptable archive file extension, otherwise set to false
 	private static final boolean inArchive=(RUN_PATH.contains(".jar")||RUN_PATH.contains(".exe"));
-	//initialize system font array to graphics's fonts
-	private static Font[] systemFonts=graphics.getAllFonts();
+	//initialize settings directory in user's home directory
+	private static final File SETTINGS_DIR=new File(System.getProperty("user.home"), ".agilitext");
+	//initialize font family catalog, filled in the background from its cache file once started
+	private static final AgilitextFontCatalog fontCatalog=new AgilitextFontCatalog(graphics, new AgilitextFontCache(getSettingsFile("fonts.cache")));
 	//initialize date and time formats
 	private static DateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy");
 	private static DateFormat timeFormat = new SimpleDateFormat("hh:mm:ss");
@@ -146,12 +149,12 @@ public class Appsistant
 	}
 	
 	/**
-	 * getSystemFonts: Used to obtain an array of local graphics environment fonts
-	 * @return: Font object array of all system fonts
+	 * getFontCatalog: Used to obtain the catalog of local graphics environment font families
+	 * @return: Font family catalog, which may still be filling
 	 */
-	public static Font[] getSystemFonts()
+	public static AgilitextFontCatalog getFontCatalog()
 	{
-		return systemFonts;
+		return fontCatalog;
 	}
 	
 	/**
@@ -165,8 +168,8 @@ public class Appsistant
 		{
 			//register font object in local graphics environment
 			graphics.registerFont(f);
-			//update system fonts array
-			systemFonts=graphics.getAllFonts();
+			//list its family without enumerating fonts again
+			fontCatalog.add(f.getFamily());
 		}
 	}
 	
@@ -180,6 +183,7 @@ public class Appsistant
 	{
 		//declare null Font object
 		Font f=null;
+		long start=AgilitextTimeline.begin();
 		try
 		{
 			if(inArchive)
@@ -198,6 +202,7 @@ public class Appsistant
 			System.err.println("Fontface failed to load!");
 			e.printStackTrace();
 		}
+		AgilitextTimeline.end("jar font "+fileName, start);
 		return f;
 	}
 	
@@ -211,6 +216,7 @@ public class Appsistant
 		//declare null Image and ImageIcon objects
 		ImageIcon imageIcon=null;
 		Image image=null;
+		long start=AgilitextTimeline.begin();
 		try
 		{
 			if(inArchive)
@@ -229,9 +235,31 @@ public class Appsistant
 			System.err.println("Icon failed to load!");
 			e.printStackTrace();
 		}
+		AgilitextTimeline.end("jar image "+fileName, start);
 		return image;
 	}
 	
+	/**
+	 * getSettingsFile: Used to obtain a file in the application settings directory, creating the directory if needed
+	 * @param fileName: Specifies the name of the file, eg. "session.journal"
+	 * @return: File object inside settings directory
+	 */
+	public static File getSettingsFile(String fileName)
+	{
+		return new File(getSettingsDir(), fileName);
+	}
+	
+	/**
+	 * getSettingsDir: Used to obtain the application settings directory, creating it if needed
+	 * @return: File object of settings directory
+	 */
+	public static File getSettingsDir()
+	{
+		//create settings directory on first use
+		SETTINGS_DIR.mkdirs();
+		return SETTINGS_DIR;
+	}
+	
 	/**
 	 * isInArchive: Used to determine if application is running from an archive file
 	 * @return: true if running from archive, false if not
@@ -0,0 +1,163 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright Gannon McGibbon 2013
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * AgilitextJournalTest: Checks that edits made while a save runs survive a crash, by saving a
+ * snapshot while editing continues, crashing a child process and recovering its journal
+ *
+ * The child edits a document journaled against a base file, takes a snapshot and journal mark as
+ * a save does, edits again before writing the snapshot over the base file, rebases the journal
+ * on the saved file, edits once more and halts without closing the journal. The parent then
+ * recovers the journal and compares the recovered text with the text the child had.
+ *
+ * Kept apart from the application sources so it is not built into the jar. Compile it against
+ * the classes built from src1.1 Ostrich and run it with them on the class path:
+ *
+ * Usage: java -cp CLASSES:TEST_CLASSES AgilitextJournalTest, exits with status 1 if the check fails
+ *
+ * @author Gannon McGibbon
+ * @version 1.1
+ *
+ * Date Created: 10/18/26
+ * Last Updated: 10/18/26
+ */
+public class AgilitextJournalTest
+{
+	//charset of base file
+	private static final Charset CHARSET=StandardCharsets.UTF_8;
+
+	//time waited for the journal's group commit before crashing, in milliseconds
+	private static final int COMMIT_WAIT=1000;
+
+	/**
+	 * main: Runs the check, or the crashing child when given its directory
+	 * @param args: Nothing, or "--crash" and the directory the child works in
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length==2&&args[0].equals("--crash"))
+		{
+			crash(new File(args[1]));
+			return;
+		}
+
+		File dir=Files.createTempDirectory("agilitext-journal").toFile();
+		File base=new File(dir, "base.txt");
+		File journal=new File(dir, "session.journal");
+		File expected=new File(dir, "expected.txt");
+		try
+		{
+			//run child in a new JVM, so that its crash leaves the journal as a real one would
+			Process child=new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+					"-Djava.awt.headless=true", "-cp", System.getProperty("java.class.path"),
+					AgilitextJournalTest.class.getName(), "--crash", dir.getPath()).inheritIO().start();
+			if(child.waitFor()!=0||!expected.exists())
+			{
+				fail("child did not finish its edits");
+			}
+
+			//recover journal left by the crash
+			AgilitextJournal recovering=new AgilitextJournal(journal);
+			if(!recovering.open())
+			{
+				fail("journal could not be opened");
+			}
+			AgilitextJournal.Recovery recovery=recovering.recover(CHARSET);
+			if(recovery==null)
+			{
+				fail("journal was not recovered");
+			}
+			String text=recovery.document.getText(0, recovery.document.getLength());
+			String wanted=new String(Files.readAllBytes(expected.toPath()), CHARSET);
+			recovering.discard();
+			if(!text.equals(wanted))
+			{
+				fail("recovered \""+text+"\", expected \""+wanted+"\"");
+			}
+			if(!recovery.file.getCanonicalFile().equals(base.getCanonicalFile()))
+			{
+				fail("recovered against "+recovery.file);
+			}
+			System.out.println("OK, recovered "+recovery.edits+" edits made during and after the save");
+		}
+		finally
+		{
+			base.delete();
+			journal.delete();
+			expected.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * crash: Edits and saves a journaled document, then halts without closing the journal
+	 * @param dir: Directory holding the base file and journal
+	 */
+	private static void crash(File dir) throws Exception
+	{
+		File base=new File(dir, "base.txt");
+		Files.write(base.toPath(), "first line\nsecond line\n".getBytes(CHARSET));
+
+		//open base file with a journal following its edits
+		AgilitextDocument document=new AgilitextDocument(base, CHARSET);
+		AgilitextJournal journal=new AgilitextJournal(new File(dir, "session.journal"));
+		if(!journal.open())
+		{
+			throw new IOException("Journal could not be opened");
+		}
+		document.addDocumentListener(journal);
+		journal.startFile(base);
+
+		//edit before the save
+		document.insertString(0, "zeroth line\n", null);
+
+		//take snapshot and mark as a save does, then edit while it is being written
+		AgilitextTextBuffer.Snapshot snapshot=document.snapshot();
+		AgilitextJournal.Mark mark=journal.mark();
+		document.insertString(document.getLength(), "typed during save\n", null);
+		document.remove(0, 7);
+
+		//write snapshot over base file, changing its length and modification time
+		new AgilitextFileSaver(CHARSET).save(snapshot, base);
+		journal.rebase(base, mark);
+
+		//edit after the save, then give the journal time to commit
+		document.insertString(0, "after ", null);
+		Thread.sleep(COMMIT_WAIT);
+
+		//record text the parent should recover, then crash
+		Files.write(new File(dir, "expected.txt").toPath(), document.getText(0, document.getLength()).getBytes(CHARSET));
+		Runtime.getRuntime().halt(0);
+	}
+
+	/**
+	 * fail: Reports a failed check and exits
+	 * @param message: Description of the failure
+	 */
+	private static void fail(String message)
+	{
+		System.err.println("FAILED: "+message);
+		System.exit(1);
+	}
+}